@@ -0,0 +1,130 @@
+/* Class name: ArchiveBenchmark
+ * File name:  ArchiveBenchmark.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures reading archives from the benchmark corpus:
+ * <ul>
+ *   <li><code>list</code> - reading the entries of the archive with Commons
+ *   Compress without examining their content, which is the cost of the
+ *   archive format itself.</li>
+ *   <li><code>expand</code> - investigating the archive and each of its
+ *   entries through <code>Investigation</code>.</li>
+ * </ul>
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.CorpusGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArchiveBenchmark
+{
+  /** The archive within the corpus */
+  @Param({"archive/texts.zip", "archive/texts.tar", "archive/texts.tar.bz2"})
+  public String document;
+
+  private File file;
+  private byte[] content;
+  private ScanOptions options;
+
+  /**
+   * Loads the parsers and reads the archive into memory.
+   * @throws IOException If the archive can't be read.
+   */
+  @Setup
+  public void setUp() throws IOException
+  {
+    ParserRegistry.getInstance();
+    file = new File(CorpusGenerator.getCorpus(), document);
+    content = Files.readAllBytes(file.toPath());
+    options = new ScanOptions();
+    options.setLog(null);
+    options.setParallelism(1);
+  }
+
+  /**
+   * Reads the name and size of every entry in the archive.
+   * @return The total size of the entries.
+   * @throws IOException If the archive can't be read.
+   * @throws ArchiveException If the archive format isn't recognised.
+   * @throws CompressorException If the archive can't be decompressed.
+   */
+  @Benchmark
+  public long list() throws IOException, ArchiveException, CompressorException
+  {
+    InputStream in = new BufferedInputStream(new ByteArrayInputStream(content));
+    if (document.endsWith(".bz2"))
+    {
+      in = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(
+          CompressorStreamFactory.BZIP2, in));
+    }
+    long total = 0;
+    try (ArchiveInputStream ais = new ArchiveStreamFactory().createArchiveInputStream(in))
+    {
+      ArchiveEntry ae = ais.getNextEntry();
+      while (ae != null)
+      {
+        total = total + ae.getSize() + ae.getName().length();
+        ae = ais.getNextEntry();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Investigates the archive and every entry within it.
+   * @return The number of errors, which should be 0.
+   */
+  @Benchmark
+  public int expand()
+  {
+    Investigation inv = new Investigation(file, new NullSink(), options);
+    inv.run();
+    return inv.getErrors();
+  }
+}
@@ -0,0 +1,389 @@
+/* Class name: CorpusGenerator
+ * File name:  CorpusGenerator.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * This class writes the corpus of documents used by the benchmarks.
+ * <p>The corpus is checked in under <code>benchmarks/corpus</code> so that
+ * every run measures the same bytes. It is generated from fixed word lists
+ * and a fixed random seed, so running this class again reproduces it exactly
+ * if it ever needs to change. It holds:
+ * <ul>
+ *   <li><code>text/</code> - plain text in English, German, French and Spanish.</li>
+ *   <li><code>html/</code>, <code>xml/</code>, <code>rtf/</code>,
+ *   <code>pdf/</code> and <code>office/</code> - one small document of each
+ *   format, with English text.</li>
+ *   <li><code>archive/</code> - the text files in a zip, a tar and a bzip2
+ *   compressed tar.</li>
+ *   <li><code>tree/</code> - a directory tree of small files of every format
+ *   for the end-to-end scan.</li>
+ * </ul>
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ */
+public class CorpusGenerator
+{
+  /** The system property naming the corpus directory */
+  public static final String CORPUS_PROPERTY = "tikatest.corpus";
+  /** The modification time given to archive entries, so archives don't change */
+  private static final long ENTRY_TIME = 1349049600000L;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String[] ENGLISH = {"the", "and", "of", "to", "in", "that",
+    "document", "which", "with", "for", "was", "this", "they", "have", "from", "report",
+    "would", "their", "there", "been", "about", "should", "through", "between", "where"};
+  private static final String[] GERMAN = {"der", "die", "und", "das", "nicht", "ist",
+    "mit", "sich", "auch", "auf", "eine", "werden", "nach", "durch", "zwischen", "gegen",
+    "schon", "wurde", "über", "können", "müssen", "Bericht", "wichtig", "noch", "beide"};
+  private static final String[] FRENCH = {"le", "la", "les", "et", "des", "une", "est",
+    "dans", "que", "pour", "avec", "sont", "mais", "nous", "cette", "être", "aussi",
+    "rapport", "entre", "leurs", "toujours", "après", "où", "déjà", "même"};
+  private static final String[] SPANISH = {"el", "los", "las", "que", "del", "una",
+    "por", "con", "para", "está", "pero", "sobre", "también", "entre", "cuando", "muy",
+    "informe", "desde", "todos", "durante", "según", "año", "había", "donde", "sí"};
+
+  private Random random;
+
+  /**
+   * Instantiate the class.
+   */
+  public CorpusGenerator()
+  {
+    random = new Random(20121028L);
+  }
+
+  /**
+   * Returns the corpus directory, which is <code>benchmarks/corpus</code>
+   * unless the <code>tikatest.corpus</code> system property names another.
+   * @return The corpus directory.
+   */
+  public static File getCorpus()
+  {
+    return new File(System.getProperty(CORPUS_PROPERTY, "benchmarks" + File.separator + "corpus"));
+  }
+
+  /**
+   * Writes the corpus.
+   * @param args The directory to write to, or none for the default.
+   * @throws IOException If a file can't be written.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    File dir = args.length > 0 ? new File(args[0]) : getCorpus();
+    new CorpusGenerator().generate(dir);
+    System.out.println("Corpus written to " + dir.getAbsolutePath());
+  }
+
+  /**
+   * Writes every file of the corpus.
+   * @param dir The corpus directory.
+   * @throws IOException If a file can't be written.
+   */
+  public void generate(File dir) throws IOException
+  {
+    String en = text(ENGLISH, 8192);
+    String de = text(GERMAN, 8192);
+    String fr = text(FRENCH, 8192);
+    String es = text(SPANISH, 8192);
+    write(new File(dir, "text/en.txt"), en.getBytes(UTF8));
+    write(new File(dir, "text/de.txt"), de.getBytes(UTF8));
+    write(new File(dir, "text/fr.txt"), fr.getBytes(UTF8));
+    write(new File(dir, "text/es.txt"), es.getBytes(UTF8));
+    String doc = text(ENGLISH, 4096);
+    write(new File(dir, "html/page.html"), html(doc));
+    write(new File(dir, "xml/data.xml"), xml(doc));
+    write(new File(dir, "rtf/letter.rtf"), rtf(doc));
+    write(new File(dir, "pdf/simple.pdf"), pdf(doc));
+    write(new File(dir, "office/report.docx"), docx(doc));
+    String[] names = {"en.txt", "de.txt", "fr.txt", "es.txt"};
+    byte[][] texts = {en.getBytes(UTF8), de.getBytes(UTF8), fr.getBytes(UTF8), es.getBytes(UTF8)};
+    write(new File(dir, "archive/texts.zip"), zip(names, texts));
+    byte[] tar = tar(names, texts);
+    write(new File(dir, "archive/texts.tar"), tar);
+    write(new File(dir, "archive/texts.tar.bz2"), bzip2(tar));
+    // Small files spread over a few directories, as a typical scan meets them
+    String[][] languages = {ENGLISH, GERMAN, FRENCH, SPANISH};
+    for (int i = 0; i < 120; i++)
+    {
+      File sub = new File(dir, "tree/d" + (i % 6) + "/s" + (i % 4));
+      String t = text(languages[i % 4], 512 + random.nextInt(1536));
+      switch (i % 5)
+      {
+        case 0:
+          write(new File(sub, "page" + i + ".html"), html(t));
+          break;
+        case 1:
+          write(new File(sub, "data" + i + ".xml"), xml(t));
+          break;
+        case 2:
+          write(new File(sub, "letter" + i + ".rtf"), rtf(t));
+          break;
+        case 3:
+          write(new File(sub, "files" + i + ".zip"), zip(new String[] {"a.txt", "b.txt"},
+              new byte[][] {t.getBytes(UTF8), text(ENGLISH, 256).getBytes(UTF8)}));
+          break;
+        default:
+          write(new File(sub, "note" + i + ".txt"), t.getBytes(UTF8));
+      }
+    }
+  }
+
+  /**
+   * Returns text made of words chosen from a list, in sentences and lines.
+   * @param words The words of the language.
+   * @param length The approximate number of characters.
+   * @return The text.
+   */
+  private String text(String[] words, int length)
+  {
+    StringBuilder sb = new StringBuilder(length + 64);
+    int line = 0;
+    int sentence = 0;
+    while (sb.length() < length)
+    {
+      String w = words[random.nextInt(words.length)];
+      if (sentence == 0)
+      {
+        w = Character.toUpperCase(w.charAt(0)) + w.substring(1);
+      }
+      sb.append(w);
+      line = line + w.length() + 1;
+      sentence++;
+      if (sentence > 6 + random.nextInt(10))
+      {
+        sb.append('.');
+        sentence = 0;
+      }
+      if (line > 70)
+      {
+        sb.append('\n');
+        line = 0;
+      }
+      else
+      {
+        sb.append(' ');
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Replaces the characters which have a meaning in markup.
+   * @param s The text.
+   * @return The escaped text.
+   */
+  private static String escape(String s)
+  {
+    return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  private byte[] html(String t)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n");
+    sb.append("<title>Benchmark page</title>\n<meta name=\"author\" content=\"TikaTest\">\n");
+    sb.append("</head>\n<body>\n");
+    for (String paragraph : t.split("\\.\\s*"))
+    {
+      sb.append("<p>").append(escape(paragraph)).append(".</p>\n");
+    }
+    sb.append("</body>\n</html>\n");
+    return sb.toString().getBytes(UTF8);
+  }
+
+  private byte[] xml(String t)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<records>\n");
+    int n = 0;
+    for (String paragraph : t.split("\\.\\s*"))
+    {
+      sb.append("  <record id=\"").append(n++).append("\">").append(escape(paragraph))
+          .append("</record>\n");
+    }
+    sb.append("</records>\n");
+    return sb.toString().getBytes(UTF8);
+  }
+
+  private byte[] rtf(String t)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\\rtf1\\ansi\\deff0{\\fonttbl{\\f0 Times New Roman;}}\n");
+    sb.append("{\\info{\\title Benchmark letter}{\\author TikaTest}}\n\\f0\\fs24\n");
+    for (char c : t.toCharArray())
+    {
+      if (c == '\n')
+      {
+        sb.append("\\par\n");
+      }
+      else if (c == '\\' || c == '{' || c == '}')
+      {
+        sb.append('\\').append(c);
+      }
+      else if (c > 127)
+      {
+        // Accented letters are written as Unicode escapes
+        sb.append("\\u").append((int) c).append('?');
+      }
+      else
+      {
+        sb.append(c);
+      }
+    }
+    sb.append("}\n");
+    return sb.toString().getBytes(UTF8);
+  }
+
+  /**
+   * Returns a minimal PDF with the text on a single page, one line per row.
+   * @param t The text, which must be ASCII.
+   * @return The PDF.
+   */
+  private byte[] pdf(String t)
+  {
+    StringBuilder content = new StringBuilder("BT /F1 10 Tf 40 800 Td 12 TL\n");
+    for (String line : t.split("\n"))
+    {
+      content.append('(').append(line.replace("\\", "\\\\").replace("(", "\\(")
+          .replace(")", "\\)")).append(") '\n");
+    }
+    content.append("ET\n");
+    String[] objects = {
+      "<< /Type /Catalog /Pages 2 0 R >>",
+      "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+      "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] /Contents 4 0 R"
+          + " /Resources << /Font << /F1 5 0 R >> >> >>",
+      "<< /Length " + content.length() + " >>\nstream\n" + content + "endstream",
+      "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>",
+      "<< /Title (Benchmark document) /Author (TikaTest) >>"};
+    StringBuilder sb = new StringBuilder("%PDF-1.4\n");
+    int[] offsets = new int[objects.length];
+    for (int i = 0; i < objects.length; i++)
+    {
+      offsets[i] = sb.length();
+      sb.append(i + 1).append(" 0 obj\n").append(objects[i]).append("\nendobj\n");
+    }
+    int xref = sb.length();
+    sb.append("xref\n0 ").append(objects.length + 1).append("\n0000000000 65535 f \n");
+    for (int offset : offsets)
+    {
+      sb.append(String.format("%010d 00000 n \n", offset));
+    }
+    sb.append("trailer\n<< /Size ").append(objects.length + 1)
+        .append(" /Root 1 0 R /Info 6 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+    return sb.toString().getBytes(Charset.forName("US-ASCII"));
+  }
+
+  /**
+   * Returns a minimal Word document with one paragraph per line of text.
+   * @param t The text.
+   * @return The document.
+   * @throws IOException Never, as it is written to memory.
+   */
+  private byte[] docx(String t) throws IOException
+  {
+    StringBuilder body = new StringBuilder();
+    body.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+    body.append("<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>");
+    for (String line : t.split("\n"))
+    {
+      body.append("<w:p><w:r><w:t>").append(escape(line)).append("</w:t></w:r></w:p>");
+    }
+    body.append("</w:body></w:document>");
+    String types = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+        + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+        + "</Types>";
+    String rels = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+        + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"word/document.xml\"/>"
+        + "</Relationships>";
+    return zip(new String[] {"[Content_Types].xml", "_rels/.rels", "word/document.xml"},
+        new byte[][] {types.getBytes(UTF8), rels.getBytes(UTF8), body.toString().getBytes(UTF8)});
+  }
+
+  private static byte[] zip(String[] names, byte[][] contents) throws IOException
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ZipOutputStream zos = new ZipOutputStream(baos))
+    {
+      for (int i = 0; i < names.length; i++)
+      {
+        ZipEntry ze = new ZipEntry(names[i]);
+        ze.setTime(ENTRY_TIME);
+        zos.putNextEntry(ze);
+        zos.write(contents[i]);
+        zos.closeEntry();
+      }
+    }
+    return baos.toByteArray();
+  }
+
+  private static byte[] tar(String[] names, byte[][] contents) throws IOException
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream tos = new TarArchiveOutputStream(baos))
+    {
+      for (int i = 0; i < names.length; i++)
+      {
+        TarArchiveEntry te = new TarArchiveEntry(names[i]);
+        te.setSize(contents[i].length);
+        te.setModTime(ENTRY_TIME);
+        tos.putArchiveEntry(te);
+        tos.write(contents[i]);
+        tos.closeArchiveEntry();
+      }
+    }
+    return baos.toByteArray();
+  }
+
+  private static byte[] bzip2(byte[] data) throws IOException
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (BZip2CompressorOutputStream bos = new BZip2CompressorOutputStream(baos))
+    {
+      bos.write(data);
+    }
+    return baos.toByteArray();
+  }
+
+  private static void write(File f, byte[] data) throws IOException
+  {
+    f.getParentFile().mkdirs();
+    try (OutputStream os = new FileOutputStream(f))
+    {
+      os.write(data);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/* Class name: LanguageBenchmark
+ * File name:  LanguageBenchmark.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures identifying the language of the text in the benchmark
+ * corpus, both with the default settings (which stop once the closest
+ * language is clearly ahead) and examining the whole sample.
+ * <p>The text is passed to the <code>LanguageDetector</code> in the same size
+ * of pieces as a parser passes it to the content handler.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.LanguageDetector
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanguageBenchmark
+{
+  /** The number of characters passed to the detector at once */
+  private static final int CHUNK = 4096;
+
+  /** The text within the corpus */
+  @Param({"text/en.txt", "text/de.txt", "text/fr.txt", "text/es.txt"})
+  public String document;
+
+  private LanguageModel model;
+  private ScanOptions options;
+  private char[] text;
+
+  /**
+   * Loads the language profiles and reads the text into memory.
+   * @throws IOException If the text can't be read.
+   */
+  @Setup
+  public void setUp() throws IOException
+  {
+    model = ParserRegistry.getInstance().getLanguageModel();
+    options = new ScanOptions();
+    File f = new File(CorpusGenerator.getCorpus(), document);
+    text = new String(Files.readAllBytes(f.toPath()), "UTF-8").toCharArray();
+  }
+
+  private String identify(double margin)
+  {
+    LanguageDetector ld = new LanguageDetector(model, options.getLanguageSample(), margin);
+    for (int start = 0; start < text.length && !ld.isSettled(); start = start + CHUNK)
+    {
+      ld.write(text, start, Math.min(CHUNK, text.length - start));
+    }
+    return ld.getLanguage();
+  }
+
+  /**
+   * Identifies the language with the default margin, stopping early.
+   * @return The language.
+   */
+  @Benchmark
+  public String identifyEarly()
+  {
+    return identify(options.getLanguageMargin());
+  }
+
+  /**
+   * Identifies the language from the whole sample.
+   * @return The language.
+   */
+  @Benchmark
+  public String identifyFullSample()
+  {
+    return identify(1.0);
+  }
+}
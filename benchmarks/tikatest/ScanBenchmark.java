@@ -0,0 +1,90 @@
+/* Class name: ScanBenchmark
+ * File name:  ScanBenchmark.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures a complete scan of the directory tree in the benchmark
+ * corpus, from walking the directories to writing a record for every file and
+ * archive entry, as <code>BatchScan</code> runs it with
+ * <code>--format none</code>. The score is scans per second; each scan
+ * investigates the same files.
+ * <p>The scan is measured with one thread and with one thread per processor.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.CorpusGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark
+{
+  /** The number of threads, where 0 means one per processor */
+  @Param({"1", "0"})
+  public int threads;
+
+  private File tree;
+  private ScanOptions options;
+
+  /**
+   * Loads the parsers and sets up the scan.
+   */
+  @Setup
+  public void setUp()
+  {
+    ParserRegistry.getInstance();
+    tree = new File(CorpusGenerator.getCorpus(), "tree");
+    options = new ScanOptions();
+    options.setLog(null);
+    if (threads > 0)
+    {
+      options.setParallelism(threads);
+    }
+  }
+
+  /**
+   * Scans the whole tree.
+   * @return The number of files investigated.
+   */
+  @Benchmark
+  public int scan()
+  {
+    AsyncSink sink = new AsyncSink(new NullSink(), 10000);
+    Investigation inv = new Investigation(tree, sink, options);
+    inv.run();
+    sink.close();
+    return inv.getProgress();
+  }
+}
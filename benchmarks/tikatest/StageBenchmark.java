@@ -0,0 +1,176 @@
+/* Class name: StageBenchmark
+ * File name:  StageBenchmark.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.004  17-Oct-2026 Corrected the description of the parse benchmark.
+ * 0.003  17-Oct-2026 Uses the LanguageSampleHandler.
+ * 0.002  17-Oct-2026 The parse benchmark no longer passes a content limit.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+
+/**
+ * This class measures each stage of investigating a single file, so that a
+ * change to the code or an upgrade of Tika can be traced to the stage it
+ * affects. Each benchmark repeats the work <code>Investigation</code> does for
+ * one document of the benchmark corpus:
+ * <ul>
+ *   <li><code>open</code> - opening the file and reading the bytes used for
+ *   detection.</li>
+ *   <li><code>detect</code> - detecting the MIME type.</li>
+ *   <li><code>parse</code> - parsing the document with the type known, as the
+ *   investigation does, passing the text to a language detector which stops
+ *   taking text once it has the default language sample.</li>
+ *   <li><code>investigate</code> - all of the above through
+ *   <code>Investigation</code> itself, including the language.</li>
+ * </ul>
+ * <p>Documents other than the one being opened are held in memory, so only
+ * the stage itself is measured. Languages and archives are measured by
+ * <code>LanguageBenchmark</code> and <code>ArchiveBenchmark</code>.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.004
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.CorpusGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark
+{
+  /** The document within the corpus, one of each format */
+  @Param({"text/en.txt", "html/page.html", "xml/data.xml", "rtf/letter.rtf",
+    "pdf/simple.pdf", "office/report.docx"})
+  public String document;
+
+  private ParserRegistry registry;
+  private ScanOptions options;
+  private File file;
+  private byte[] content;
+  private MediaType type;
+
+  /**
+   * Loads the parsers and reads the document into memory.
+   * @throws IOException If the document can't be read.
+   */
+  @Setup
+  public void setUp() throws IOException
+  {
+    registry = ParserRegistry.getInstance();
+    options = new ScanOptions();
+    options.setLog(null);
+    options.setParallelism(1);
+    file = new File(CorpusGenerator.getCorpus(), document);
+    content = Files.readAllBytes(file.toPath());
+    type = registry.getDetector().detect(new BufferedInputStream(
+        new ByteArrayInputStream(content)), metadata());
+  }
+
+  private Metadata metadata()
+  {
+    Metadata meta = new Metadata();
+    meta.set(Metadata.RESOURCE_NAME_KEY, file.getName());
+    meta.set(Metadata.CONTENT_LENGTH, Integer.toString(content.length));
+    return meta;
+  }
+
+  /**
+   * Opens the file and reads the bytes the detector examines.
+   * @return The number of bytes read.
+   * @throws IOException If the file can't be read.
+   */
+  @Benchmark
+  public int open() throws IOException
+  {
+    Path p = file.toPath();
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(p)))
+    {
+      byte[] magic = new byte[8192];
+      return is.read(magic);
+    }
+  }
+
+  /**
+   * Detects the MIME type of the document.
+   * @return The type.
+   * @throws IOException If the document can't be read.
+   */
+  @Benchmark
+  public MediaType detect() throws IOException
+  {
+    return registry.getDetector().detect(new BufferedInputStream(
+        new ByteArrayInputStream(content)), metadata());
+  }
+
+  /**
+   * Parses the document with its type already detected.
+   * @param bh Consumes the text so it isn't optimised away.
+   * @throws IOException If the document can't be read.
+   * @throws SAXException If the document can't be parsed.
+   * @throws TikaException If the document can't be parsed.
+   */
+  @Benchmark
+  public void parse(Blackhole bh) throws IOException, SAXException, TikaException
+  {
+    Metadata meta = metadata();
+    meta.set(Metadata.CONTENT_TYPE, type.toString());
+    LanguageDetector ld = new LanguageDetector(registry.getLanguageModel(),
+        options.getLanguageSample(), options.getLanguageMargin());
+    LanguageSampleHandler lsh = new LanguageSampleHandler(ld);
+    registry.getParser().parse(new BufferedInputStream(new ByteArrayInputStream(content)),
+        lsh, meta, new ParseContext());
+    bh.consume(lsh.getCharacterCount());
+    bh.consume(meta);
+  }
+
+  /**
+   * Investigates the file from start to finish, as a scan does.
+   * @return The number of files investigated.
+   */
+  @Benchmark
+  public int investigate()
+  {
+    Investigation inv = new Investigation(file, new NullSink(), options);
+    inv.run();
+    return inv.getProgress();
+  }
+}
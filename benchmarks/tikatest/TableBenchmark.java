@@ -0,0 +1,126 @@
+/* Class name: TableBenchmark
+ * File name:  TableBenchmark.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures adding the rows of an investigation to the tables shown
+ * by the GUI, both one at a time to a <code>GenericTable</code> and in
+ * batches to a <code>ColumnarTable</code> as the <code>InvestigationWorker</code>
+ * does. The rows are those of a scan of many small files in a few directories.
+ * <p>No table is displayed, so only the cost of storing the rows and firing
+ * the events is measured. The scores are rows per second.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ColumnarTable
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark
+{
+  /** The number of rows added by each invocation */
+  private static final int ROWS = 10000;
+  /** The number of rows added at once to the ColumnarTable */
+  private static final int BATCH = 500;
+
+  private ArrayList<String> columns;
+  private ArrayList<Object[]> rows;
+
+  /**
+   * Creates the rows to be added.
+   */
+  @Setup
+  public void setUp()
+  {
+    columns = new ArrayList<String>();
+    columns.add("File Name");
+    columns.add("File Path");
+    columns.add("MIME Type");
+    columns.add("MIME Main Type");
+    columns.add("MIME Sub-type");
+    columns.add("Parameters Present?");
+    columns.add("Meta-data Present?");
+    columns.add("Language");
+    String[][] types = {{"text/plain; charset=UTF-8", "text", "plain", "Yes"},
+      {"application/pdf", "application", "pdf", "No"},
+      {"text/html; charset=UTF-8", "text", "html", "Yes"},
+      {"application/zip", "application", "zip", "No"}};
+    String[] languages = {"en", "de", "fr", "es", "?"};
+    rows = new ArrayList<Object[]>(ROWS);
+    for (int i = 0; i < ROWS; i++)
+    {
+      String name = "file" + i + ".dat";
+      String[] t = types[i % types.length];
+      rows.add(new Object[] {name, "/data/scan/d" + (i % 50) + "/" + name, t[0], t[1], t[2],
+        t[3], "Yes", languages[i % languages.length]});
+    }
+  }
+
+  /**
+   * Adds every row to a new <code>GenericTable</code>, one at a time.
+   * @return The table.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public GenericTable genericAddRow()
+  {
+    GenericTable gt = new GenericTable();
+    gt.setData(columns, new ArrayList());
+    for (Object[] row : rows)
+    {
+      gt.addRow(row);
+    }
+    return gt;
+  }
+
+  /**
+   * Adds every row to a new <code>ColumnarTable</code> in batches.
+   * @return The table.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public ColumnarTable columnarAddRows()
+  {
+    ColumnarTable ct = new ColumnarTable(columns, new int[] {ColumnarTable.PLAIN, ColumnarTable.PATH,
+        ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY,
+        ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY});
+    for (int i = 0; i < ROWS; i = i + BATCH)
+    {
+      ct.addRows(rows.subList(i, Math.min(ROWS, i + BATCH)));
+    }
+    return ct;
+  }
+}
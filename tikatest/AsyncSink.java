@@ -0,0 +1,240 @@
+/* Class name: AsyncSink
+ * File name:  AsyncSink.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.003  17-Oct-2026 A failure to flush the other sink no longer stops the writer thread.
+ * 0.002  17-Oct-2026 The other sink is flushed after a number of results, a second, or an idle wait rather than whenever the queue empties.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class passes results to another <code>ResultSink</code> on a
+ * dedicated writer thread, so the threads investigating files never wait for
+ * output to be written.
+ * <p>Results are added to a lock-free queue and written by the writer thread
+ * in the order they arrive. The other sink is only ever called by the writer
+ * thread, so its output can be buffered heavily. It is flushed once
+ * <code>FLUSH_RECORDS</code> results have been written since the last flush,
+ * once a second while results keep arriving, or when the writer thread has
+ * waited with nothing new to write, so records still appear promptly without
+ * a separate write to the output for every record.
+ * <p>The queue holds a limited number of results. If the output can't keep up
+ * and the queue is full, <code>write()</code> waits for space rather than
+ * letting the queue grow without limit. The number of times this happens is
+ * counted so a slow output can be recognised.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.003
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ResultSink
+ */
+public class AsyncSink implements ResultSink, Runnable
+{
+  /** How long the writer thread sleeps when there is nothing to write */
+  private static final long IDLE_NANOS = 50000000L;
+  /** How long a thread waits before checking for space in a full queue */
+  private static final long FULL_NANOS = 100000L;
+  /** The number of results written before the other sink is flushed */
+  private static final int FLUSH_RECORDS = 1024;
+  /** The longest the other sink is left unflushed while results keep arriving */
+  private static final long FLUSH_NANOS = 1000000000L;
+
+  private ResultSink delegate;
+  private ConcurrentLinkedQueue<InvestigationResult> queue;
+  /** The number of results in the queue */
+  private AtomicInteger queued;
+  private int capacity;
+  private Thread writer;
+  /** Set while the writer thread is waiting for results */
+  private volatile boolean idle;
+  private volatile boolean closed;
+  private AtomicLong written;
+  private AtomicLong stalls;
+
+  /**
+   * Instantiate the class and start the writer thread.
+   * @param rs The sink which the results are passed to.
+   * @param queueCapacity The number of results which may wait to be written.
+   */
+  public AsyncSink(ResultSink rs, int queueCapacity)
+  {
+    delegate = rs;
+    capacity = Math.max(1, queueCapacity);
+    queue = new ConcurrentLinkedQueue<InvestigationResult>();
+    queued = new AtomicInteger(0);
+    written = new AtomicLong(0);
+    stalls = new AtomicLong(0);
+    writer = new Thread(this, "ResultSink writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queues a result to be written. This only waits if the queue is full.
+   * @param result The details found for the file.
+   */
+  public void write(InvestigationResult result)
+  {
+    if (queued.get() >= capacity)
+    {
+      stalls.incrementAndGet();
+      while (queued.get() >= capacity && writer.isAlive())
+      {
+        LockSupport.parkNanos(this, FULL_NANOS);
+      }
+    }
+    queue.offer(result);
+    queued.incrementAndGet();
+    if (idle)
+    {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * Does nothing, as the writer thread flushes the output itself.
+   */
+  public void flush()
+  {
+  }
+
+  /**
+   * Waits for every queued result to be written and then closes the other sink.
+   */
+  public void close()
+  {
+    closed = true;
+    LockSupport.unpark(writer);
+    try
+    {
+      writer.join();
+    }
+    catch (InterruptedException iX)
+    {
+      Thread.currentThread().interrupt();
+    }
+    delegate.close();
+  }
+
+  /**
+   * Writes queued results until the sink is closed. This is run by the writer
+   * thread.
+   */
+  public void run()
+  {
+    // The number of results written since the other sink was last flushed
+    int unflushed = 0;
+    long flushed = System.nanoTime();
+    while (true)
+    {
+      InvestigationResult result = queue.poll();
+      if (result != null)
+      {
+        queued.decrementAndGet();
+        try
+        {
+          delegate.write(result);
+        }
+        catch (RuntimeException rX)
+        {
+          // One bad record shouldn't stop the rest being written
+          rX.printStackTrace();
+        }
+        written.incrementAndGet();
+        unflushed++;
+        if (unflushed >= FLUSH_RECORDS || System.nanoTime() - flushed >= FLUSH_NANOS)
+        {
+          flushDelegate();
+          unflushed = 0;
+          flushed = System.nanoTime();
+        }
+        continue;
+      }
+      if (closed)
+      {
+        if (queue.isEmpty())
+        {
+          flushDelegate();
+          return;
+        }
+        continue;
+      }
+      idle = true;
+      boolean waited = false;
+      // Check again in case a result was queued before the flag was seen
+      if (queue.isEmpty())
+      {
+        LockSupport.parkNanos(this, IDLE_NANOS);
+        waited = true;
+      }
+      idle = false;
+      // Nothing new arrived while waiting, so write out what was held back
+      if (waited && unflushed > 0 && queue.isEmpty())
+      {
+        flushDelegate();
+        unflushed = 0;
+        flushed = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Flushes the other sink, so a failure to flush doesn't stop the writer
+   * thread and leave later results unwritten.
+   */
+  private void flushDelegate()
+  {
+    try
+    {
+      delegate.flush();
+    }
+    catch (RuntimeException rX)
+    {
+      rX.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the number of results written so far.
+   * @return The number of results.
+   */
+  public long getWritten()
+  {
+    return written.get();
+  }
+
+  /**
+   * Returns the number of results waiting to be written.
+   * @return The number of results in the queue.
+   */
+  public int getQueued()
+  {
+    return queued.get();
+  }
+
+  /**
+   * Returns the number of times a result had to wait because the queue was
+   * full, which shows the output is slower than the investigation.
+   * @return The number of waits.
+   */
+  public long getStalls()
+  {
+    return stalls.get();
+  }
+}
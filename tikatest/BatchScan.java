@@ -0,0 +1,688 @@
+/* Class name: BatchScan
+ * File name:  BatchScan.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.015  17-Oct-2026 Removed --content-limit, as text is no longer captured.
+ * 0.014  17-Oct-2026 Added the staged pipeline options.
+ * 0.013  17-Oct-2026 Added the result store and queries.
+ * 0.012  17-Oct-2026 Added sharding the scan between worker processes.
+ * 0.011  17-Oct-2026 Added the scheduling options.
+ * 0.010  17-Oct-2026 Added the memory mapping threshold option.
+ * 0.009  17-Oct-2026 Added the detection-only options.
+ * 0.008  17-Oct-2026 The latencies of each stage and MIME type are printed at the end and available through JMX.
+ * 0.007  17-Oct-2026 Added the options for investigating files in separate processes.
+ * 0.006  17-Oct-2026 Added the parse time limit options.
+ * 0.005  17-Oct-2026 Records are written by an AsyncSink; added the text and none formats.
+ * 0.004  17-Oct-2026 Added the archive expansion options.
+ * 0.003  17-Oct-2026 Added the duplicate file cache option.
+ * 0.002  17-Oct-2026 Added the scan index options.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * This class runs investigations from the command line without any GUI, so
+ * that scans can be scheduled and their output passed to other programs.
+ * <p>Each path given is investigated in turn and a record written for every
+ * file as soon as it has been investigated, as JSON Lines, CSV or text and
+ * either to standard output or to a file. Records are written by an
+ * <code>AsyncSink</code> so the investigation never waits for the output. A summary of the throughput
+ * and the time taken by each stage and the slowest MIME types is printed to
+ * standard error at the end; the same timings are available through JMX while
+ * the scan runs. No Swing or AWT classes are used.
+ * <p>The exit status is 0 if every file was investigated, 1 if some files
+ * couldn't be and 2 if the arguments or output were invalid.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.015
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.Investigation
+ */
+public class BatchScan
+{
+  /** The usage message printed for invalid arguments */
+  private static final String USAGE =
+      "Usage: java tikatest.Main [options] path...\n"
+    + "Investigates each path and writes one record per file.\n"
+    + "  --format FORMAT         jsonl, csv, text or none (default jsonl)\n"
+    + "  --output FILE           Write records to FILE instead of standard output\n"
+    + "  --threads N             Number of parser threads (default: processors)\n"
+    + "  --language-sample N     Maximum characters used to identify the language\n"
+    + "  --language-margin X     Lead needed to stop language detection early\n"
+    + "  --index FILE            Skip files unchanged since they were recorded in FILE\n"
+    + "  --index-hash            Also compare a content hash before skipping a file\n"
+    + "  --store DIR             Also keep the results in a searchable store in DIR\n"
+    + "  --query QUERY           Print the results in the store matching QUERY instead of\n"
+    + "                          scanning, e.g. \"type=application/pdf language=de size>10m\"\n"
+    + "  --archive-depth N       Levels of nested archives to expand (default 5)\n"
+    + "  --expansion-ratio X     Abandon archives expanding over X times their size\n"
+    + "  --timeout MS            Abandon documents taking longer to parse (0 for no limit)\n"
+    + "  --timeout-for TYPE=MS   Time limit for a MIME type or main type, e.g. image=5000\n"
+    + "  --dedup N               Reuse the results of up to N files for identical copies\n"
+    + "  --detect-only           Only detect MIME types, from a prefix of each file\n"
+    + "  --detect-prefix N       Bytes examined to detect the type (default 65536)\n"
+    + "  --parse-type TYPE       Still parse TYPE (e.g. application/pdf or text) in full\n"
+    + "  --schedule ORDER        found, shortest or longest (estimated time) first\n"
+    + "  --schedule-window N     Files ordered by the schedule at once (default 10000)\n"
+    + "  --map-threshold N       Memory map files over N bytes (default 16777216, 0 never)\n"
+    + "  --pipeline              Read files on separate threads ahead of the parsers\n"
+    + "  --read-threads N        Threads reading files in the pipeline (default 64)\n"
+    + "  --readahead N           Bytes read from the start of each file (default 1048576)\n"
+    + "  --read-budget N         Bytes read ahead of the parsers at once (default 268435456)\n"
+    + "  --fork N                Parse files in N separate Java processes\n"
+    + "  --fork-heap SIZE        Maximum heap of each process, e.g. 512m\n"
+    + "  --fork-recycle N        Replace each process after N files (default 1000)\n"
+    + "  --fork-hang MS          Stop a process spending longer on one file (default 120000)\n"
+    + "  --shards N              Share the scan between N worker processes\n"
+    + "  --shard-heap SIZE       Maximum heap of each worker process, e.g. 512m\n"
+    + "  --shard-remote N        Also wait for N workers started on other machines\n"
+    + "  --shard-listen H:P      Address workers connect to (default loopback)\n"
+    + "  --verbose               Print notes about the investigation to standard error\n";
+
+  /** The number of records which may wait to be written */
+  private static final int QUEUE_CAPACITY = 10000;
+  /** The size of the buffer for the output */
+  private static final int BUFFER_SIZE = 1 << 20;
+  /** The number of MIME types listed in the timings printed at the end */
+  private static final int REPORT_TYPES = 10;
+
+  private ScanOptions options;
+  private ResultStore store;
+  private ArrayList<File> roots;
+  private String format;
+  private String output;
+  private String indexFile;
+  /** The directory of the result store, or null if there isn't one */
+  private String storeDirectory;
+  /** The query run against the store, or null to scan the paths */
+  private ResultStore.Query query;
+  /** The number of parser processes, or 0 to parse files in this process */
+  private int forkProcesses;
+  private String forkHeap;
+  private int forkRecycle;
+  private long forkHang;
+  /** The number of local worker processes, or 0 to scan in this process */
+  private int shardWorkers;
+  /** The number of workers started by hand on other machines */
+  private int shardRemote;
+  private String shardHeap;
+  /** The address the coordinator listens on for workers */
+  private InetSocketAddress shardAddress;
+
+  /**
+   * Instantiate the class with the default settings.
+   */
+  public BatchScan()
+  {
+    options = new ScanOptions();
+    options.setLog(null);
+    roots = new ArrayList<File>();
+    format = "jsonl";
+    output = null;
+    indexFile = null;
+    storeDirectory = null;
+    query = null;
+    forkProcesses = 0;
+    forkHeap = null;
+    forkRecycle = 1000;
+    forkHang = 120000;
+    shardWorkers = 0;
+    shardRemote = 0;
+    shardHeap = null;
+    shardAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+  }
+
+  /**
+   * Reads the command line arguments.
+   * @param args The command line arguments.
+   * @throws IllegalArgumentException If an argument isn't recognised or is invalid.
+   */
+  public void parseArguments(String[] args)
+  {
+    for (int i = 0; i < args.length; i++)
+    {
+      String arg = args[i];
+      if (arg.equals("--format"))
+      {
+        format = value(args, ++i);
+        if (!format.equals("jsonl") && !format.equals("csv") && !format.equals("text")
+            && !format.equals("none"))
+        {
+          throw new IllegalArgumentException("Unknown format: " + format);
+        }
+      }
+      else if (arg.equals("--output"))
+      {
+        output = value(args, ++i);
+      }
+      else if (arg.equals("--threads"))
+      {
+        options.setParallelism(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--language-sample"))
+      {
+        options.setLanguageSample(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--language-margin"))
+      {
+        options.setLanguageMargin(Double.parseDouble(value(args, ++i)));
+      }
+      else if (arg.equals("--index"))
+      {
+        indexFile = value(args, ++i);
+      }
+      else if (arg.equals("--index-hash"))
+      {
+        options.setIndexHash(true);
+      }
+      else if (arg.equals("--store"))
+      {
+        storeDirectory = value(args, ++i);
+      }
+      else if (arg.equals("--query"))
+      {
+        query = ResultStore.Query.parse(value(args, ++i));
+      }
+      else if (arg.equals("--archive-depth"))
+      {
+        options.setArchiveDepth(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--expansion-ratio"))
+      {
+        options.setExpansionRatio(Double.parseDouble(value(args, ++i)));
+      }
+      else if (arg.equals("--timeout"))
+      {
+        options.setParseTimeout(Long.parseLong(value(args, ++i)));
+      }
+      else if (arg.equals("--timeout-for"))
+      {
+        String v = value(args, ++i);
+        int eq = v.indexOf('=');
+        if (eq <= 0)
+        {
+          throw new IllegalArgumentException("Expected TYPE=MS: " + v);
+        }
+        options.setParseTimeout(v.substring(0, eq), Long.parseLong(v.substring(eq + 1)));
+      }
+      else if (arg.equals("--dedup"))
+      {
+        options.setDedupCache(new DedupCache(Integer.parseInt(value(args, ++i))));
+      }
+      else if (arg.equals("--detect-only"))
+      {
+        options.setDetectOnly(true);
+      }
+      else if (arg.equals("--detect-prefix"))
+      {
+        options.setDetectPrefix(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--parse-type"))
+      {
+        options.addFullParse(value(args, ++i));
+      }
+      else if (arg.equals("--schedule"))
+      {
+        String order = value(args, ++i);
+        if (order.equals("found"))
+        {
+          options.setSchedule(ScanOptions.SCHEDULE_FOUND);
+        }
+        else if (order.equals("shortest"))
+        {
+          options.setSchedule(ScanOptions.SCHEDULE_SHORTEST);
+        }
+        else if (order.equals("longest"))
+        {
+          options.setSchedule(ScanOptions.SCHEDULE_LONGEST);
+        }
+        else
+        {
+          throw new IllegalArgumentException("Unknown schedule: " + order);
+        }
+      }
+      else if (arg.equals("--schedule-window"))
+      {
+        options.setScheduleWindow(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--map-threshold"))
+      {
+        options.setMapThreshold(Long.parseLong(value(args, ++i)));
+      }
+      else if (arg.equals("--pipeline"))
+      {
+        options.setPipeline(true);
+      }
+      else if (arg.equals("--read-threads"))
+      {
+        options.setReadThreads(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--readahead"))
+      {
+        options.setReadahead(Integer.parseInt(value(args, ++i)));
+      }
+      else if (arg.equals("--read-budget"))
+      {
+        options.setReadBudget(Long.parseLong(value(args, ++i)));
+      }
+      else if (arg.equals("--fork"))
+      {
+        forkProcesses = Integer.parseInt(value(args, ++i));
+      }
+      else if (arg.equals("--fork-heap"))
+      {
+        forkHeap = value(args, ++i);
+      }
+      else if (arg.equals("--fork-recycle"))
+      {
+        forkRecycle = Integer.parseInt(value(args, ++i));
+      }
+      else if (arg.equals("--fork-hang"))
+      {
+        forkHang = Long.parseLong(value(args, ++i));
+      }
+      else if (arg.equals("--shards"))
+      {
+        shardWorkers = Integer.parseInt(value(args, ++i));
+      }
+      else if (arg.equals("--shard-heap"))
+      {
+        shardHeap = value(args, ++i);
+      }
+      else if (arg.equals("--shard-remote"))
+      {
+        shardRemote = Integer.parseInt(value(args, ++i));
+      }
+      else if (arg.equals("--shard-listen"))
+      {
+        String v = value(args, ++i);
+        int colon = v.lastIndexOf(':');
+        if (colon < 0)
+        {
+          throw new IllegalArgumentException("Expected HOST:PORT: " + v);
+        }
+        shardAddress = new InetSocketAddress(v.substring(0, colon),
+            Integer.parseInt(v.substring(colon + 1)));
+      }
+      else if (arg.equals("--verbose"))
+      {
+        options.setLog(System.err);
+      }
+      else if (arg.startsWith("--"))
+      {
+        throw new IllegalArgumentException("Unknown option: " + arg);
+      }
+      else
+      {
+        roots.add(new File(arg));
+      }
+    }
+    if (query != null)
+    {
+      if (storeDirectory == null || !roots.isEmpty())
+      {
+        throw new IllegalArgumentException("--query needs --store and no paths to investigate");
+      }
+      return;
+    }
+    if (roots.isEmpty())
+    {
+      throw new IllegalArgumentException("No paths to investigate");
+    }
+    if (shardWorkers + shardRemote > 0
+        && (indexFile != null || options.getDedupCache() != null || forkProcesses > 0))
+    {
+      // Each worker would need its own copy of the index or cache
+      throw new IllegalArgumentException("--shards can't be used with --index, --dedup or --fork");
+    }
+    if (options.isPipeline()
+        && (shardWorkers + shardRemote > 0 || options.getSchedule() != ScanOptions.SCHEDULE_FOUND))
+    {
+      // Files are investigated in the order they are read
+      throw new IllegalArgumentException("--pipeline can't be used with --shards or --schedule");
+    }
+  }
+
+  /**
+   * Returns the value following an option.
+   * @param args The command line arguments.
+   * @param i The position of the value.
+   * @return The value.
+   * @throws IllegalArgumentException If there is no value.
+   */
+  private static String value(String[] args, int i)
+  {
+    if (i >= args.length)
+    {
+      throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+    }
+    return args[i];
+  }
+
+  /**
+   * Returns the settings used for each investigation.
+   * @return The settings read from the command line.
+   */
+  public ScanOptions getOptions()
+  {
+    return options;
+  }
+
+  /**
+   * Creates the sink which writes records in the chosen format, and stores
+   * them first if there is a result store.
+   * @return The sink for the results.
+   * @throws IOException If the output file or store can't be opened, with a
+   * message saying which.
+   */
+  private AsyncSink createSink() throws IOException
+  {
+    ResultSink rs;
+    try
+    {
+      rs = createOutput();
+    }
+    catch (IOException ioX)
+    {
+      throw new IOException("Unable to write to " + output + ": " + ioX.getMessage(), ioX);
+    }
+    if (storeDirectory != null)
+    {
+      try
+      {
+        store = new ResultStore(Paths.get(storeDirectory), rs);
+      }
+      catch (IOException ioX)
+      {
+        rs.close();
+        throw new IOException("Unable to open the store " + storeDirectory + ": " + ioX.getMessage(), ioX);
+      }
+      rs = store;
+    }
+    // The store is written by the writer thread along with the output
+    return new AsyncSink(rs, QUEUE_CAPACITY);
+  }
+
+  /**
+   * Creates the sink which writes records in the chosen format.
+   * @return The sink for the records.
+   * @throws IOException If the output file can't be created.
+   */
+  private ResultSink createOutput() throws IOException
+  {
+    if (format.equals("none"))
+    {
+      return new NullSink();
+    }
+    // Only the writer thread uses the output, so it can be buffered heavily
+    Writer w;
+    if (output == null)
+    {
+      w = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), BUFFER_SIZE);
+    }
+    else
+    {
+      w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"), BUFFER_SIZE);
+    }
+    ResultSink rs;
+    if (format.equals("csv"))
+    {
+      rs = new CsvSink(w);
+    }
+    else if (format.equals("text"))
+    {
+      rs = new ConsoleSink(w);
+    }
+    else
+    {
+      rs = new JsonLinesSink(w);
+    }
+    return rs;
+  }
+
+  /**
+   * Prints the results in the store which match the query.
+   * @return The exit status.
+   */
+  private int query()
+  {
+    ResultSink out;
+    try
+    {
+      out = createOutput();
+    }
+    catch (IOException ioX)
+    {
+      System.err.println("Unable to write to " + output + ": " + ioX.getMessage());
+      return 2;
+    }
+    try
+    {
+      store = new ResultStore(Paths.get(storeDirectory), out);
+      long start = System.nanoTime();
+      long matched = store.query(query, out);
+      System.err.printf("Query: %d of %d files matched in %.1f ms\n", matched, store.size(),
+          (System.nanoTime() - start) / 1e6);
+      store.close();
+      return 0;
+    }
+    catch (IOException ioX)
+    {
+      System.err.println("Unable to query the store " + storeDirectory + ": " + ioX.getMessage());
+      out.close();
+      return 2;
+    }
+  }
+
+  /**
+   * Investigates each of the paths and prints a summary of the throughput.
+   * @return The exit status.
+   */
+  public int scan()
+  {
+    if (query != null)
+    {
+      return query();
+    }
+    AsyncSink sink;
+    try
+    {
+      sink = createSink();
+    }
+    catch (IOException ioX)
+    {
+      System.err.println(ioX.getMessage());
+      return 2;
+    }
+    ScanIndex index = null;
+    if (indexFile != null)
+    {
+      try
+      {
+        index = new ScanIndex(Paths.get(indexFile));
+        options.setIndex(index);
+      }
+      catch (IOException ioX)
+      {
+        System.err.println("Unable to open the index " + indexFile + ": " + ioX.getMessage());
+        sink.close();
+        return 2;
+      }
+    }
+    ChildParserPool pool = null;
+    if (forkProcesses > 0)
+    {
+      pool = new ChildParserPool(options, forkProcesses, forkHeap, forkRecycle, forkHang);
+      options.setChildPool(pool);
+    }
+    ScanMetrics metrics = options.getMetrics();
+    metrics.setOutput(sink);
+    metrics.register();
+    long start = System.nanoTime();
+    int files = 0;
+    int errors = 0;
+    int timeouts = 0;
+    long bytes = 0;
+    ShardCoordinator coordinator = null;
+    if (shardWorkers + shardRemote > 0)
+    {
+      try
+      {
+        coordinator = new ShardCoordinator(options, sink, shardWorkers, shardRemote,
+            shardHeap, shardAddress);
+        for (File root : roots)
+        {
+          coordinator.run(root);
+        }
+      }
+      catch (IOException ioX)
+      {
+        System.err.println("Unable to share the scan between workers: " + ioX.getMessage());
+        sink.close();
+        if (coordinator != null)
+        {
+          coordinator.close();
+        }
+        return 2;
+      }
+      coordinator.close();
+      files = coordinator.getFiles();
+      errors = coordinator.getErrors();
+      timeouts = coordinator.getTimeouts();
+      bytes = coordinator.getBytes();
+    }
+    ArrayList<String> pipelines = new ArrayList<String>();
+    for (int i = 0; coordinator == null && i < roots.size(); i++)
+    {
+      Investigation inv = new Investigation(roots.get(i), sink, options);
+      inv.run();
+      if (inv.getPipeline() != null)
+      {
+        pipelines.add(inv.getPipeline().getSummary());
+      }
+      files = files + inv.getProgress();
+      errors = errors + inv.getErrors();
+      timeouts = timeouts + inv.getTimeouts();
+      bytes = bytes + inv.getBytes();
+    }
+    sink.close();
+    if (pool != null)
+    {
+      pool.close();
+    }
+    printSummary(System.err, files, errors, bytes, System.nanoTime() - start);
+    if (coordinator == null)
+    {
+      // The timings are recorded by the workers rather than this process
+      System.err.print(metrics.getReport(REPORT_TYPES));
+    }
+    if (timeouts > 0)
+    {
+      System.err.printf("Timeouts: %d documents took too long to parse and were abandoned\n",
+          timeouts);
+    }
+    if (sink.getStalls() > 0)
+    {
+      System.err.printf("Output: investigation waited %d times for records to be written\n",
+          sink.getStalls());
+    }
+    for (String summary : pipelines)
+    {
+      System.err.println(summary);
+    }
+    if (pool != null)
+    {
+      System.err.println(pool.getSummary());
+    }
+    if (coordinator != null)
+    {
+      System.err.println(coordinator.getSummary());
+    }
+    if (options.getDedupCache() != null)
+    {
+      System.err.println(options.getDedupCache().getSummary());
+    }
+    if (store != null)
+    {
+      System.err.printf("Store: %d files, %d MIME types, %d languages, %d metadata keys\n",
+          store.size(), store.getTerms(ResultStore.TYPE), store.getTerms(ResultStore.LANGUAGE),
+          store.getTerms(ResultStore.KEY));
+    }
+    if (index != null)
+    {
+      System.err.printf("Index: %d files unchanged, %d new or changed, %d files recorded\n",
+          index.getHits(), index.getMisses(), index.size());
+      try
+      {
+        index.close();
+      }
+      catch (IOException ioX)
+      {
+        System.err.println("Unable to close the index " + indexFile + ": " + ioX.getMessage());
+        return 2;
+      }
+    }
+    return errors == 0 ? 0 : 1;
+  }
+
+  /**
+   * Prints the number of files and bytes investigated and the rate at which
+   * they were investigated.
+   * @param ps Where the summary is printed.
+   * @param files The number of files investigated.
+   * @param errors The number of files which couldn't be investigated.
+   * @param bytes The number of bytes in the files.
+   * @param nanos The time taken in nanoseconds.
+   */
+  static void printSummary(PrintStream ps, int files, int errors, long bytes, long nanos)
+  {
+    double seconds = Math.max(nanos / 1e9, 1e-9);
+    double megabytes = bytes / (1024.0 * 1024.0);
+    ps.printf("Investigated %d files (%d errors), %.1f MB in %.1f s: %.1f files/s, %.2f MB/s\n",
+        files, errors, megabytes, seconds, files / seconds, megabytes / seconds);
+  }
+
+  /**
+   * Runs a batch scan with the given command line arguments.
+   * @param args The command line arguments.
+   * @return The exit status.
+   */
+  public static int run(String[] args)
+  {
+    BatchScan bs = new BatchScan();
+    try
+    {
+      bs.parseArguments(args);
+    }
+    catch (IllegalArgumentException iaX)
+    {
+      // NumberFormatException is also an IllegalArgumentException
+      System.err.println(iaX.getMessage());
+      System.err.print(USAGE);
+      return 2;
+    }
+    return bs.scan();
+  }
+}
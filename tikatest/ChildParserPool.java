@@ -0,0 +1,319 @@
+/* Class name: ChildParserPool
+ * File name:  ChildParserPool.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 A result read in full before the watchdog fires is no longer discarded.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class investigates files in a pool of separate Java processes, each
+ * running a <code>ParserChild</code>, so that a document which exhausts the
+ * heap, crashes the parser or never finishes only loses that document rather
+ * than the whole scan.
+ * <p>Each process is started with its own maximum heap size and is given one
+ * file at a time through a pipe. If a process dies while investigating a file,
+ * or takes longer than the hang time limit and is stopped, the file is
+ * recorded with an error and a new process is started for the next file.
+ * Processes are also replaced after investigating a set number of files, so
+ * memory leaked by a parser is given back regularly.
+ * <p>Processes are started when they are first needed and reused, and the
+ * methods may be called from several threads at once; each thread waits for
+ * a free process.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ParserChild
+ */
+public class ChildParserPool
+{
+  /** The command which starts a process */
+  private ArrayList<String> command;
+  /** The number of files a process investigates before it is replaced */
+  private int recycleAfter;
+  /** The time a process may spend on one file before it is stopped */
+  private long hangTimeout;
+  /** Processes waiting for a file */
+  private LinkedBlockingQueue<Child> idle;
+  /** Limits the number of processes running at once */
+  private Semaphore available;
+  /** Stops processes which take too long */
+  private ScheduledExecutorService watchdog;
+  private AtomicInteger started;
+  private AtomicInteger died;
+  private AtomicInteger hung;
+  private AtomicInteger recycled;
+
+  /**
+   * Instantiate the class. No processes are started until they are needed.
+   * @param so The settings passed on to each process.
+   * @param processes The maximum number of processes running at once.
+   * @param maxHeap The maximum heap size of each process, such as "512m", or
+   * <code>null</code> for the Java default.
+   * @param files The number of files a process investigates before it is
+   * replaced, or 0 to keep it until it dies.
+   * @param hangMillis The time in milliseconds a process may spend on one file
+   * before it is stopped, which should be longer than the parse time limit.
+   */
+  public ChildParserPool(ScanOptions so, int processes, String maxHeap, int files, long hangMillis)
+  {
+    command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    if (maxHeap != null)
+    {
+      command.add("-Xmx" + maxHeap);
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(ParserChild.class.getName());
+    command.addAll(ParserChild.getArguments(so));
+    recycleAfter = Math.max(0, files);
+    hangTimeout = Math.max(1, hangMillis);
+    idle = new LinkedBlockingQueue<Child>();
+    available = new Semaphore(Math.max(1, processes), true);
+    watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "ChildParserPool watchdog");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    started = new AtomicInteger(0);
+    died = new AtomicInteger(0);
+    hung = new AtomicInteger(0);
+    recycled = new AtomicInteger(0);
+  }
+
+  /**
+   * Investigates a file in one of the processes. The results for any archive
+   * entries are passed to the given sink as they arrive and the result for the
+   * file itself is returned.
+   * @param file The result for the file, holding its name, path and size.
+   * @param entries Receives the results for the entries of archives.
+   * @return The result for the file. If the process died or was stopped this
+   * is the given result with an error.
+   * @throws IOException If a process can't be started.
+   * @throws InterruptedException If the thread is interrupted while waiting
+   * for a free process.
+   */
+  public InvestigationResult investigate(InvestigationResult file, ResultSink entries)
+      throws IOException, InterruptedException
+  {
+    available.acquire();
+    try
+    {
+      Child c = idle.poll();
+      if (c == null)
+      {
+        c = new Child();
+      }
+      InvestigationResult result = c.investigate(file, entries);
+      if (!c.isAlive())
+      {
+        c.stop();
+      }
+      else if (recycleAfter > 0 && c.parses >= recycleAfter)
+      {
+        recycled.incrementAndGet();
+        c.finish();
+      }
+      else
+      {
+        idle.add(c);
+      }
+      return result;
+    }
+    finally
+    {
+      available.release();
+    }
+  }
+
+  /**
+   * Ends every process once the pool is no longer needed.
+   */
+  public void close()
+  {
+    Child c = idle.poll();
+    while (c != null)
+    {
+      c.finish();
+      c = idle.poll();
+    }
+    watchdog.shutdownNow();
+  }
+
+  /**
+   * Returns a summary of the processes used.
+   * @return The number of processes started, replaced, died and stopped.
+   */
+  public String getSummary()
+  {
+    return String.format("Parser processes: %d started, %d recycled, %d died, %d hung and stopped",
+        started.get(), recycled.get(), died.get(), hung.get());
+  }
+
+  /**
+   * A single process and the pipes to and from it.
+   */
+  private class Child
+  {
+    private Process process;
+    private DataOutputStream toChild;
+    private DataInputStream fromChild;
+    private int parses;
+    private boolean alive;
+
+    Child() throws IOException
+    {
+      ProcessBuilder pb = new ProcessBuilder(command);
+      // Stack traces from the parsers appear alongside the parent's
+      pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+      process = pb.start();
+      toChild = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      fromChild = new DataInputStream(new BufferedInputStream(process.getInputStream(), 65536));
+      alive = true;
+      started.incrementAndGet();
+    }
+
+    boolean isAlive()
+    {
+      return alive;
+    }
+
+    /**
+     * Sends a file to the process and reads its results.
+     */
+    InvestigationResult investigate(InvestigationResult file, ResultSink entries)
+    {
+      parses++;
+      ScheduledFuture<?> timer = watchdog.schedule(new Runnable()
+      {
+        public void run()
+        {
+          process.destroy();
+        }
+      }, hangTimeout, TimeUnit.MILLISECONDS);
+      InvestigationResult result = null;
+      // Set once every result for the file has been read
+      boolean finished = false;
+      boolean cancelled = false;
+      try
+      {
+        ParserChild.writeString(toChild, file.getPath());
+        toChild.flush();
+        byte marker = fromChild.readByte();
+        while (marker == ParserChild.RESULT)
+        {
+          InvestigationResult r = ParserChild.readResult(fromChild);
+          if (r.getPath().equals(file.getPath()))
+          {
+            result = r;
+          }
+          else
+          {
+            entries.write(r);
+          }
+          marker = fromChild.readByte();
+        }
+        finished = true;
+      }
+      catch (IOException ioX)
+      {
+        alive = false;
+      }
+      finally
+      {
+        cancelled = timer.cancel(false);
+      }
+      if (!cancelled)
+      {
+        // The watchdog has fired, so the process has to be replaced, but
+        // results read in full before it fired are still good
+        alive = false;
+        if (!finished)
+        {
+          hung.incrementAndGet();
+          file.setError("Parser process stopped after " + hangTimeout + " ms");
+          file.setTimedOut(true);
+          return file;
+        }
+      }
+      else if (!alive)
+      {
+        died.incrementAndGet();
+        file.setError("Parser process died");
+        return file;
+      }
+      if (result == null)
+      {
+        file.setError("Unable to read the file");
+        return file;
+      }
+      return result;
+    }
+
+    /**
+     * Closes the input of the process, which then exits.
+     */
+    void finish()
+    {
+      try
+      {
+        toChild.close();
+        fromChild.close();
+      }
+      catch (IOException ioX)
+      {
+        process.destroy();
+      }
+    }
+
+    /**
+     * Ends a process which has died or been stopped.
+     */
+    void stop()
+    {
+      process.destroy();
+      try
+      {
+        toChild.close();
+        fromChild.close();
+      }
+      catch (IOException ioX)
+      {
+        // The pipes are already broken
+      }
+    }
+  }
+}
@@ -0,0 +1,440 @@
+/* Class name: ColumnarTable
+ * File name:  ColumnarTable.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Rows may be removed by path once the path column is indexed.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class holds the data for tables with a very large number of rows, such
+ * as the results of an investigation.
+ * <p>Unlike <code>GenericTable</code>, which keeps an <code>Object[]</code>
+ * for every row, the values are stored column by column. Each column is
+ * stored in one of three ways:
+ * <ul>
+ *   <li><code>PLAIN</code> - an array holding the value of each row.</li>
+ *   <li><code>DICTIONARY</code> - each distinct value is stored once and each
+ *   row holds the number of its value. This suits columns with few distinct
+ *   values, such as MIME types, languages and "Yes"/"No" flags.</li>
+ *   <li><code>PATH</code> - the directory part of each path is stored as for
+ *   <code>DICTIONARY</code> and only the last part of the path is kept for
+ *   each row, as files in the same directory share the rest.</li>
+ * </ul>
+ * <p>Rows are appended in batches and a single event is fired for the rows
+ * added, so the table isn't revalidated for every row. Values are always
+ * returned as <code>String</code>s and the table can't be edited.
+ * <p>If a <code>PATH</code> column is indexed with <code>setPathIndex()</code>
+ * the rows for a path, and for the files and archive entries beneath it, can
+ * be removed with <code>removePath()</code>. The last row is moved into the
+ * place of each row removed, so rows don't stay in the order they were added.
+ * <p>The table should only be changed on the Event Dispatch Thread.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.GenericTable
+ */
+public class ColumnarTable extends AbstractTableModel
+{
+  /** The value of each row is stored */
+  public static final int PLAIN = 0;
+  /** Each distinct value is stored once */
+  public static final int DICTIONARY = 1;
+  /** The directory is stored once and the last part of the path for each row */
+  public static final int PATH = 2;
+
+  /** The list of column names for the table */
+  private ArrayList<String> columnNames;
+  /** How each column is stored */
+  private int[] encodings;
+  /** The values of PLAIN columns and the last parts of PATH columns */
+  private String[][] strings;
+  /** The value numbers of DICTIONARY columns and the directories of PATH columns */
+  private int[][] codes;
+  /** The distinct values of DICTIONARY and PATH columns */
+  private StringDictionary[] dictionaries;
+  private int rows;
+  /** The indexed PATH column, or -1 */
+  private int pathColumn;
+  /** The row of each path in the indexed column, or null */
+  private TreeMap<String,Integer> pathIndex;
+
+  /**
+   * Creates a new, empty table.
+   * @param columns The names of the columns.
+   * @param columnEncodings How each column is stored: <code>PLAIN</code>,
+   * <code>DICTIONARY</code> or <code>PATH</code>.
+   */
+  public ColumnarTable(ArrayList<String> columns, int[] columnEncodings)
+  {
+    columnNames = columns;
+    encodings = columnEncodings;
+    int n = columns.size();
+    strings = new String[n][];
+    codes = new int[n][];
+    dictionaries = new StringDictionary[n];
+    pathColumn = -1;
+    for (int c = 0; c < n; c++)
+    {
+      if (encodings[c] != DICTIONARY)
+      {
+        strings[c] = new String[1024];
+      }
+      if (encodings[c] != PLAIN)
+      {
+        codes[c] = new int[1024];
+        dictionaries[c] = new StringDictionary();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of columns stored within the table.
+   * <p><i>Inherited method from the AbstractTableModel class.</i></p>
+   * @return The number of columns in the table
+   */
+  public int getColumnCount()
+  {
+    return columnNames.size();
+  }
+
+  /**
+   * Returns the number of rows stored within the table.
+   * <p><i>Inherited method from the AbstractTableModel class.</i></p>
+   * @return The number of rows in the table
+   */
+  public int getRowCount()
+  {
+    return rows;
+  }
+
+  /**
+   * Returns the name of a column given its index in the table.
+   * <p><i>Inherited method from the AbstractTableModel class.</i></p>
+   * @param col The column index
+   * @return The column name
+   */
+  public String getColumnName(int col)
+  {
+    return columnNames.get(col);
+  }
+
+  /**
+   * Returns the class of the column denoted by the supplied index, which is
+   * always <code>String</code>.
+   * <p><i>Inherited method from the AbstractTableModel class.</i></p>
+   * @param c The column index
+   * @return The class of the column
+   */
+  public Class getColumnClass(int c)
+  {
+    return String.class;
+  }
+
+  /**
+   * Returns the value stored within the table at the position denoted by the
+   * row and column index.
+   * <p><i>Inherited method from the AbstractTableModel class.</i></p>
+   * @param row The row index of the value to be returned
+   * @param col The column index of the value to be returned
+   * @return The value requested, which may be <code>null</code>
+   */
+  public Object getValueAt(int row, int col)
+  {
+    switch (encodings[col])
+    {
+      case DICTIONARY:
+        return dictionaries[col].get(codes[col][row]);
+      case PATH:
+        String directory = dictionaries[col].get(codes[col][row]);
+        if (directory == null)
+        {
+          return strings[col][row];
+        }
+        return directory + strings[col][row];
+      default:
+        return strings[col][row];
+    }
+  }
+
+  /**
+   * Adds a new row to the table. The supplied Object array must be in the same
+   * order as the columns of the table.
+   * <p>Adding many rows with <code>addRows()</code> is much quicker.
+   * @param aNewRow The new row to be added
+   */
+  public void addRow(Object[] aNewRow)
+  {
+    addRows(Collections.singletonList(aNewRow));
+  }
+
+  /**
+   * Adds new rows to the end of the table, firing a single event for all of
+   * them. Each Object array must be in the same order as the columns of the
+   * table; values are stored as <code>String</code>s.
+   * @param newRows The new rows to be added
+   */
+  public void addRows(List<Object[]> newRows)
+  {
+    if (newRows.isEmpty())
+    {
+      return;
+    }
+    int first = rows;
+    ensureCapacity(rows + newRows.size());
+    for (Object[] row : newRows)
+    {
+      for (int c = 0; c < encodings.length; c++)
+      {
+        String value = null;
+        if (c < row.length && row[c] != null)
+        {
+          value = row[c].toString();
+        }
+        store(rows, c, value);
+      }
+      if (pathIndex != null)
+      {
+        pathIndex.put((String) getValueAt(rows, pathColumn), rows);
+      }
+      rows++;
+    }
+    fireTableRowsInserted(first, rows - 1);
+  }
+
+  /**
+   * Indexes the rows by the value of a <code>PATH</code> column, so that they
+   * can be removed by path. The index holds a copy of every path, so it is
+   * only worth keeping if rows will be removed.
+   * @param col The column index
+   */
+  public void setPathIndex(int col)
+  {
+    pathColumn = col;
+    pathIndex = new TreeMap<String,Integer>();
+    for (int r = 0; r < rows; r++)
+    {
+      pathIndex.put((String) getValueAt(r, col), r);
+    }
+  }
+
+  /**
+   * Removes the row for a path along with the rows of any files beneath it,
+   * if it is a directory, or entries within it, if it is an archive. This
+   * needs the index set up by <code>setPathIndex()</code>.
+   * @param path The path
+   * @return The number of rows removed.
+   */
+  public int removePath(String path)
+  {
+    ArrayList<Integer> found = new ArrayList<Integer>();
+    Integer row = pathIndex.get(path);
+    if (row != null)
+    {
+      found.add(row);
+    }
+    for (String prefix : new String[] {path + "!/", path + File.separator})
+    {
+      found.addAll(pathIndex.subMap(prefix, prefix + '\uffff').values());
+    }
+    // Removing the last rows first means no row still to be removed is moved
+    Collections.sort(found, Collections.reverseOrder());
+    for (int r : found)
+    {
+      removeRow(r);
+    }
+    return found.size();
+  }
+
+  /**
+   * Removes a single row by moving the last row into its place.
+   * @param row The row index
+   */
+  private void removeRow(int row)
+  {
+    int last = rows - 1;
+    pathIndex.remove((String) getValueAt(row, pathColumn));
+    if (row != last)
+    {
+      for (int c = 0; c < encodings.length; c++)
+      {
+        if (strings[c] != null)
+        {
+          strings[c][row] = strings[c][last];
+        }
+        if (codes[c] != null)
+        {
+          codes[c][row] = codes[c][last];
+        }
+      }
+      pathIndex.put((String) getValueAt(row, pathColumn), row);
+    }
+    for (int c = 0; c < encodings.length; c++)
+    {
+      if (strings[c] != null)
+      {
+        strings[c][last] = null;
+      }
+    }
+    rows--;
+    if (row != last)
+    {
+      fireTableRowsUpdated(row, row);
+    }
+    fireTableRowsDeleted(last, last);
+  }
+
+  /**
+   * Stores a single value.
+   * @param row The row index
+   * @param col The column index
+   * @param value The value, which may be <code>null</code>
+   */
+  private void store(int row, int col, String value)
+  {
+    switch (encodings[col])
+    {
+      case DICTIONARY:
+        codes[col][row] = dictionaries[col].add(value);
+        break;
+      case PATH:
+        int split = value == null ? -1 : Math.max(value.lastIndexOf('/'),
+            value.lastIndexOf(File.separatorChar));
+        if (split < 0)
+        {
+          codes[col][row] = -1;
+          strings[col][row] = value;
+        }
+        else
+        {
+          codes[col][row] = dictionaries[col].add(value.substring(0, split + 1));
+          strings[col][row] = share(row, col, value.substring(split + 1));
+        }
+        break;
+      default:
+        strings[col][row] = value;
+    }
+  }
+
+  /**
+   * Returns an equal value already stored in an earlier <code>PLAIN</code>
+   * column of the same row, such as the file name held in both the name and
+   * path columns, so that only one copy is kept.
+   * @param row The row index
+   * @param col The column index
+   * @param value The value to be stored
+   * @return The value to store
+   */
+  private String share(int row, int col, String value)
+  {
+    for (int c = 0; c < col; c++)
+    {
+      if (encodings[c] == PLAIN && value.equals(strings[c][row]))
+      {
+        return strings[c][row];
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Grows the column arrays to hold at least the given number of rows.
+   * @param capacity The number of rows.
+   */
+  private void ensureCapacity(int capacity)
+  {
+    for (int c = 0; c < encodings.length; c++)
+    {
+      if (strings[c] != null && strings[c].length < capacity)
+      {
+        strings[c] = Arrays.copyOf(strings[c], Math.max(capacity, strings[c].length * 2));
+      }
+      if (codes[c] != null && codes[c].length < capacity)
+      {
+        codes[c] = Arrays.copyOf(codes[c], Math.max(capacity, codes[c].length * 2));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of distinct values stored for a column.
+   * @param col The column index
+   * @return The number of values (or directories for a <code>PATH</code>
+   * column), or the number of rows for a <code>PLAIN</code> column.
+   */
+  public int getDistinctValues(int col)
+  {
+    if (dictionaries[col] == null)
+    {
+      return rows;
+    }
+    return dictionaries[col].size();
+  }
+
+  /**
+   * The distinct values of a column, each of which is given a number in the
+   * order they are added.
+   */
+  private static class StringDictionary
+  {
+    private HashMap<String,Integer> numbers = new HashMap<String,Integer>();
+    private ArrayList<String> values = new ArrayList<String>();
+
+    /**
+     * Returns the number of a value, adding it if it is new.
+     * @param value The value, which may be <code>null</code>
+     * @return The number of the value, or -1 for <code>null</code>
+     */
+    int add(String value)
+    {
+      if (value == null)
+      {
+        return -1;
+      }
+      Integer n = numbers.get(value);
+      if (n == null)
+      {
+        n = values.size();
+        values.add(value);
+        numbers.put(value, n);
+      }
+      return n;
+    }
+
+    /**
+     * Returns the value with a given number.
+     * @param n The number of the value
+     * @return The value, or <code>null</code> for -1
+     */
+    String get(int n)
+    {
+      return n < 0 ? null : values.get(n);
+    }
+
+    int size()
+    {
+      return values.size();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/* Class name: ConsoleSink
+ * File name:  ConsoleSink.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.003  17-Oct-2026 Documented when an AsyncSink flushes the output.
+ * 0.002  17-Oct-2026 Removed files are listed as such.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Writes the details of each result as readable text, as the investigation
+ * used to print them on the command line.
+ * <p>The MIME type, any parameters, the metadata and the language are listed
+ * for each file. The text for a file is built up and written in one go, so it
+ * can't be mixed up with that of another file. The output is only flushed by
+ * <code>flush()</code>, so it should normally be wrapped in an
+ * <code>AsyncSink</code>, which flushes it after a number of results, at least
+ * once a second, and when no new results have arrived for a while.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.003
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.AsyncSink
+ */
+public class ConsoleSink implements ResultSink
+{
+  private Writer out;
+
+  /**
+   * Instantiate the class.
+   * @param w Where the details are written, e.g. standard output.
+   */
+  public ConsoleSink(Writer w)
+  {
+    out = w;
+  }
+
+  /**
+   * Writes the details of a result.
+   * @param result The details found for the file.
+   */
+  public synchronized void write(InvestigationResult result)
+  {
+    try
+    {
+      out.write(toText(result));
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes any buffered details.
+   */
+  public synchronized void flush()
+  {
+    try
+    {
+      out.flush();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Flushes and closes the output.
+   */
+  public synchronized void close()
+  {
+    try
+    {
+      out.close();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Describes a result as lines of text.
+   * @param result The details found for the file.
+   * @return The text, ending with a new line.
+   */
+  public static String toText(InvestigationResult result)
+  {
+    StringBuilder sb = new StringBuilder(512);
+    if (result.isRemoved())
+    {
+      return sb.append("Removed: ").append(result.getPath()).append('\n').toString();
+    }
+    sb.append("Investigated: ").append(result.getPath()).append('\n');
+    if (result.getError() != null)
+    {
+      sb.append("Error: ").append(result.getError()).append('\n');
+    }
+    MediaType mt = result.getMediaType();
+    if (mt != null)
+    {
+      sb.append("Detected type: ").append(mt).append('\n');
+      // Parameters aren't frequently used but if the file has them then list them
+      Map<String,String> params = mt.getParameters();
+      if (params.size() > 0)
+      {
+        sb.append("Parameters detected for ").append(result.getPath()).append(":\n");
+        for (Map.Entry<String,String> e : params.entrySet())
+        {
+          sb.append('\t').append(e.getKey()).append('\t').append(e.getValue()).append('\n');
+        }
+      }
+    }
+    if (result.hasMetadata())
+    {
+      Metadata meta = result.getMetadata();
+      sb.append("Metadata detected for ").append(result.getPath()).append(":\n");
+      for (String name : meta.names())
+      {
+        sb.append('\t').append(name).append(":\t").append(meta.get(name)).append('\n');
+      }
+    }
+    sb.append("Detected language: ").append(result.getLanguage()).append('\n');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,186 @@
+/* Class name: CostModel
+ * File name:  CostModel.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.util.HashMap;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class estimates how long a file will take to investigate from its size
+ * and extension, so the files waiting for a parser thread can be ordered by
+ * their expected cost.
+ * <p>The estimate is learned from the files already investigated. For each
+ * extension a straight line (a fixed cost plus a cost per byte) is fitted to
+ * the times taken. An extension seen only once borrows the line of the MIME
+ * type it was detected as, and an unseen extension uses the line for every
+ * file. Until anything has been learned a file is assumed to cost a
+ * millisecond plus 20 nanoseconds per byte, so files are ordered by size.
+ * <p>The model is kept in the <code>ScanOptions</code>, so an investigation
+ * also learns from earlier investigations using the same options.
+ * <p>The methods may be called from several threads at once.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanOptions#setSchedule(int)
+ */
+public class CostModel
+{
+  /** The assumed fixed cost of a file in nanoseconds before any are timed */
+  private static final double PRIOR_FIXED = 1000000.0;
+  /** The assumed cost of each byte in nanoseconds before any files are timed */
+  private static final double PRIOR_PER_BYTE = 20.0;
+
+  /** The line fitted for each extension, in lower case without the dot */
+  private HashMap<String,Fit> extensions;
+  /** The line fitted for each MIME type, without parameters */
+  private HashMap<String,Fit> mediaTypes;
+  /** The MIME type each extension was last detected as */
+  private HashMap<String,String> detectedAs;
+  /** The line fitted for every file */
+  private Fit all;
+
+  /**
+   * Instantiate the class with nothing learned.
+   */
+  public CostModel()
+  {
+    extensions = new HashMap<String,Fit>();
+    mediaTypes = new HashMap<String,Fit>();
+    detectedAs = new HashMap<String,String>();
+    all = new Fit();
+  }
+
+  /**
+   * Returns the extension of a file name, which is used to recognise files
+   * of the same kind before their type has been detected.
+   * @param name The file name.
+   * @return The extension in lower case without the dot, or "" if it has none.
+   */
+  public static String getExtension(String name)
+  {
+    int dot = name.lastIndexOf('.');
+    if (dot <= 0 || dot == name.length() - 1)
+    {
+      return "";
+    }
+    return name.substring(dot + 1).toLowerCase();
+  }
+
+  /**
+   * Records the time taken to investigate a file.
+   * @param name The name of the file.
+   * @param mt The MIME type detected, or null if it wasn't detected.
+   * @param size The size of the file in bytes.
+   * @param nanos The time taken in nanoseconds.
+   */
+  public synchronized void record(String name, MediaType mt, long size, long nanos)
+  {
+    String ext = getExtension(name);
+    fitFor(extensions, ext).add(size, nanos);
+    if (mt != null)
+    {
+      String type = mt.getBaseType().toString();
+      fitFor(mediaTypes, type).add(size, nanos);
+      detectedAs.put(ext, type);
+    }
+    all.add(size, nanos);
+  }
+
+  /**
+   * Returns the estimated time to investigate a file.
+   * @param name The name of the file.
+   * @param size The size of the file in bytes.
+   * @return The estimate in nanoseconds.
+   */
+  public synchronized double estimate(String name, long size)
+  {
+    String ext = getExtension(name);
+    Fit f = extensions.get(ext);
+    if (f == null || f.n < 2)
+    {
+      String type = detectedAs.get(ext);
+      Fit byType = type == null ? null : mediaTypes.get(type);
+      if (byType != null && byType.n >= 2)
+      {
+        f = byType;
+      }
+      else if (f == null)
+      {
+        f = all;
+      }
+    }
+    return f.estimate(size);
+  }
+
+  /**
+   * Returns the line for a key, adding an empty one if there isn't one.
+   * @param fits The lines by key.
+   * @param key The extension or MIME type.
+   * @return The line.
+   */
+  private static Fit fitFor(HashMap<String,Fit> fits, String key)
+  {
+    Fit f = fits.get(key);
+    if (f == null)
+    {
+      f = new Fit();
+      fits.put(key, f);
+    }
+    return f;
+  }
+
+  /**
+   * A least squares line through the times taken against the sizes of files.
+   */
+  private static class Fit
+  {
+    private long n;
+    private double sumSize;
+    private double sumTime;
+    private double sumSizeSquared;
+    private double sumSizeTime;
+
+    void add(long size, long nanos)
+    {
+      n++;
+      sumSize = sumSize + size;
+      sumTime = sumTime + nanos;
+      sumSizeSquared = sumSizeSquared + (double) size * size;
+      sumSizeTime = sumSizeTime + (double) size * nanos;
+    }
+
+    double estimate(long size)
+    {
+      if (n == 0)
+      {
+        return PRIOR_FIXED + PRIOR_PER_BYTE * size;
+      }
+      double spread = n * sumSizeSquared - sumSize * sumSize;
+      if (n < 2 || spread <= 0)
+      {
+        // Every file so far was the same size, so scale the mean time by size
+        double meanSize = sumSize / n;
+        return (sumTime / n) * (size + PRIOR_FIXED / PRIOR_PER_BYTE)
+            / (meanSize + PRIOR_FIXED / PRIOR_PER_BYTE);
+      }
+      double perByte = Math.max(0, (n * sumSizeTime - sumSize * sumTime) / spread);
+      double fixed = Math.max(0, (sumTime - perByte * sumSize) / n);
+      return fixed + perByte * size;
+    }
+  }
+}
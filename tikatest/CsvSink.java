@@ -0,0 +1,154 @@
+/* Class name: CsvSink
+ * File name:  CsvSink.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.003  17-Oct-2026 Documented when an AsyncSink flushes the output.
+ * 0.002  17-Oct-2026 Records are flushed by flush() rather than after each record.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes each result as a line of CSV (comma separated values).
+ * <p>The columns match those of the GUI table with the file size and any error
+ * added. A header line is written first. Records are buffered until
+ * <code>flush()</code> is called; when wrapped in an <code>AsyncSink</code>
+ * this happens after a number of records, at least once a second, and when
+ * no new results have arrived for a while, so the output can still be read
+ * while the investigation is running.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.003
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ResultSink
+ */
+public class CsvSink implements ResultSink
+{
+  /** The header line naming each column */
+  public static final String HEADER =
+      "File Name,File Path,Size,MIME Type,MIME Main Type,MIME Sub-type,Parameters Present?,Meta-data Present?,Language,Error";
+
+  private Writer out;
+  private boolean headerWritten;
+
+  /**
+   * Instantiate the class.
+   * @param w Where the records are written.
+   */
+  public CsvSink(Writer w)
+  {
+    out = w;
+    headerWritten = false;
+  }
+
+  /**
+   * Writes a result as a line of CSV, preceded by the header for the first.
+   * @param result The details found for the file.
+   */
+  public synchronized void write(InvestigationResult result)
+  {
+    try
+    {
+      if (!headerWritten)
+      {
+        out.write(HEADER);
+        out.write("\r\n");
+        headerWritten = true;
+      }
+      out.write(toCsv(result));
+      out.write("\r\n");
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes any buffered records.
+   */
+  public synchronized void flush()
+  {
+    try
+    {
+      out.flush();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Flushes and closes the output.
+   */
+  public synchronized void close()
+  {
+    try
+    {
+      out.close();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Converts a result into a line of CSV.
+   * @param result The details found for the file.
+   * @return The line without a line ending.
+   */
+  public static String toCsv(InvestigationResult result)
+  {
+    Object[] row = result.toRow();
+    StringBuilder sb = new StringBuilder(256);
+    field(sb, row[0]);
+    sb.append(',');
+    field(sb, row[1]);
+    sb.append(',').append(result.getSize());
+    for (int i = 2; i < row.length; i++)
+    {
+      sb.append(',');
+      field(sb, row[i]);
+    }
+    sb.append(',');
+    field(sb, result.getError());
+    return sb.toString();
+  }
+
+  /**
+   * Appends a value, quoting it if it contains a comma, quote or line break.
+   * @param sb Where the value is appended.
+   * @param value The value, which may be <code>null</code>.
+   */
+  private static void field(StringBuilder sb, Object value)
+  {
+    if (value == null)
+    {
+      return;
+    }
+    String s = value.toString();
+    if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0)
+    {
+      sb.append(s);
+    }
+    else
+    {
+      sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+    }
+  }
+}
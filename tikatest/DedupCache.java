@@ -0,0 +1,268 @@
+/* Class name: DedupCache
+ * File name:  DedupCache.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * This class remembers the results of recent investigations by the content of
+ * the file, so that identical copies of a file only need to be parsed once.
+ * <p>Results are keyed by the size of the file and a hash of its content. The
+ * cache holds a fixed number of results and discards the least recently used
+ * when it is full. The sizes of the cached files are also counted, so a file
+ * whose size doesn't match any cached file can't be a duplicate and needn't be
+ * hashed before it is parsed; its hash is calculated as it is parsed instead.
+ * <p>The number of duplicates found and the parsing time they saved are
+ * recorded so that the benefit of the cache can be reported.
+ * <p>The methods may be called from several threads at once.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ */
+public class DedupCache
+{
+  /** The cached results in order of use, oldest first */
+  private LinkedHashMap<Key,Cached> results;
+  /** The number of cached results for each file size */
+  private HashMap<Long,Integer> sizes;
+  private int capacity;
+  private long lookups;
+  private long hits;
+  /** The parsing time saved by the hits in nanoseconds */
+  private long saved;
+
+  /**
+   * Instantiate the class.
+   * @param entries The maximum number of results to keep.
+   */
+  public DedupCache(int entries)
+  {
+    capacity = Math.max(1, entries);
+    sizes = new HashMap<Long,Integer>();
+    results = new LinkedHashMap<Key,Cached>(16, 0.75f, true)
+    {
+      protected boolean removeEldestEntry(Map.Entry<Key,Cached> eldest)
+      {
+        if (size() > capacity)
+        {
+          forget(eldest.getKey().size);
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns whether a file of the given size could be a copy of a cached file.
+   * If not there is no need to hash the file before it is parsed.
+   * @param size The size of the file in bytes.
+   * @return <code>true</code> if a file of that size is cached.
+   */
+  public synchronized boolean mayContain(long size)
+  {
+    return sizes.containsKey(size);
+  }
+
+  /**
+   * Looks up the result for a copy of a file which has already been parsed.
+   * The result returned is for the given file, with the MIME type, metadata
+   * and language of the copy.
+   * @param name The name of the file.
+   * @param path The path of the file.
+   * @param size The size of the file in bytes.
+   * @param digest The hash of the file's content.
+   * @return The result, or <code>null</code> if no copy has been cached.
+   */
+  public InvestigationResult lookup(String name, String path, long size, byte[] digest)
+  {
+    Cached e;
+    synchronized (this)
+    {
+      lookups++;
+      e = results.get(new Key(size, digest));
+      if (e == null)
+      {
+        return null;
+      }
+      hits++;
+      saved = saved + e.nanos;
+    }
+    InvestigationResult copy = new InvestigationResult(name, path, size);
+    copy.setMediaType(e.result.getMediaType());
+    copy.setLanguage(e.result.getLanguage());
+    copy.setDigest(digest);
+    // The metadata is shared by other copies, so the name is changed in a copy
+    Metadata meta = new Metadata();
+    Metadata original = e.result.getMetadata();
+    if (original != null)
+    {
+      for (String n : original.names())
+      {
+        for (String v : original.getValues(n))
+        {
+          meta.add(n, v);
+        }
+      }
+    }
+    meta.set(Metadata.RESOURCE_NAME_KEY, name);
+    copy.setMetadata(meta);
+    return copy;
+  }
+
+  /**
+   * Records that a file was parsed without finding a copy in the cache.
+   * <p>This is counted as a lookup which missed.
+   */
+  public synchronized void countMiss()
+  {
+    lookups++;
+  }
+
+  /**
+   * Adds the result of parsing a file. Results with an error or without a
+   * content hash aren't cached.
+   * @param result The result for the file.
+   * @param nanos The time taken to investigate the file in nanoseconds.
+   */
+  public synchronized void put(InvestigationResult result, long nanos)
+  {
+    if (result.getError() != null || result.getDigest() == null)
+    {
+      return;
+    }
+    Key k = new Key(result.getSize(), result.getDigest());
+    if (results.put(k, new Cached(result, nanos)) == null)
+    {
+      Integer n = sizes.get(k.size);
+      sizes.put(k.size, n == null ? 1 : n + 1);
+    }
+  }
+
+  /**
+   * Reduces the count of cached results for a file size when one is discarded.
+   * @param size The size of the discarded file.
+   */
+  private void forget(long size)
+  {
+    Integer n = sizes.get(size);
+    if (n == null || n <= 1)
+    {
+      sizes.remove(size);
+    }
+    else
+    {
+      sizes.put(size, n - 1);
+    }
+  }
+
+  /**
+   * Returns the number of files looked up in the cache.
+   * @return The number of lookups, including files parsed without a lookup.
+   */
+  public synchronized long getLookups()
+  {
+    return lookups;
+  }
+
+  /**
+   * Returns the number of files found to be copies of a cached file.
+   * @return The number of hits.
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * Returns the proportion of files which were copies of a cached file.
+   * @return The hit rate between 0 and 1.
+   */
+  public synchronized double getHitRate()
+  {
+    return lookups == 0 ? 0.0 : (double) hits / lookups;
+  }
+
+  /**
+   * Returns the time which would have been spent parsing the copies.
+   * @return The time saved in milliseconds.
+   */
+  public synchronized long getTimeSaved()
+  {
+    return saved / 1000000L;
+  }
+
+  /**
+   * Returns a summary of how effective the cache has been.
+   * @return The number of duplicates, hit rate and parsing time saved.
+   */
+  public synchronized String getSummary()
+  {
+    return String.format("Duplicates: %d of %d files (%.1f%% hit rate), %.1f s of parsing saved",
+        hits, lookups, getHitRate() * 100.0, saved / 1e9);
+  }
+
+  /**
+   * The size and content hash of a file.
+   */
+  private static class Key
+  {
+    private long size;
+    private byte[] digest;
+
+    Key(long fileSize, byte[] hash)
+    {
+      size = fileSize;
+      digest = hash;
+    }
+
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Key))
+      {
+        return false;
+      }
+      Key k = (Key) o;
+      return size == k.size && Arrays.equals(digest, k.digest);
+    }
+
+    public int hashCode()
+    {
+      return Arrays.hashCode(digest) ^ (int) (size ^ (size >>> 32));
+    }
+  }
+
+  /**
+   * A cached result and the time taken to produce it.
+   */
+  private static class Cached
+  {
+    private InvestigationResult result;
+    private long nanos;
+
+    Cached(InvestigationResult r, long time)
+    {
+      result = r;
+      nanos = time;
+    }
+  }
+}
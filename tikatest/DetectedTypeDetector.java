@@ -0,0 +1,73 @@
+/* Class name: DetectedTypeDetector
+ * File name:  DetectedTypeDetector.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * A Tika <code>Detector</code> which re-uses a MIME type that has already been
+ * detected for the document.
+ * <p>The <code>AutoDetectParser</code> always runs its detector before parsing.
+ * When <code>Investigation</code> has already detected the type it stores it
+ * in the <code>Metadata</code> under <code>Content-Type</code> and this class
+ * simply hands it back, so the magic bytes are only examined once. If no type
+ * has been stored then detection is passed to the wrapped detector.
+ * <p>The class holds no per-document state so a single instance may be shared.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ */
+public class DetectedTypeDetector implements Detector
+{
+  private Detector fallback;
+
+  /**
+   * Instantiate the class.
+   * @param d The detector used when no type has already been detected.
+   */
+  public DetectedTypeDetector(Detector d)
+  {
+    fallback = d;
+  }
+
+  /**
+   * Returns the MIME type stored in the metadata, or detects it from the
+   * stream if none is present.
+   * @param input The document stream, which must support mark and reset.
+   * @param metadata The document metadata.
+   * @return The MIME type of the document.
+   * @throws IOException If the stream cannot be read by the fallback detector.
+   */
+  public MediaType detect(InputStream input, Metadata metadata) throws IOException
+  {
+    String known = metadata.get(Metadata.CONTENT_TYPE);
+    if (known != null)
+    {
+      MediaType mt = MediaType.parse(known);
+      if (mt != null)
+      {
+        return mt;
+      }
+    }
+    return fallback.detect(input, metadata);
+  }
+}
@@ -0,0 +1,318 @@
+/* Class name: DirectoryWatcher
+ * File name:  DirectoryWatcher.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.003  17-Oct-2026 The tree is registered before the investigation walks it and queued changes handled when run.
+ * 0.002  17-Oct-2026 Earlier results are always removed before a file is investigated again, and a file created then removed is reported as removed.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches a directory tree which is being investigated and passes
+ * each file which is created, changed or removed back to the
+ * <code>Investigation</code>, so its results stay up to date without the tree
+ * being scanned again.
+ * <p>Every directory in the tree is registered with a <code>WatchService</code>
+ * when the watcher is created, before the investigation walks the tree. The
+ * service queues the events until <code>run()</code> is called once the walk
+ * has finished, so changes made during a long investigation aren't missed; a
+ * file changed while the walk was reading it is simply investigated again.
+ * Events are collected until none has arrived for a quiet period, so a file
+ * written in many pieces (or a burst of changes across the tree) is only
+ * investigated once. A change is also handled if events have kept arriving
+ * for ten quiet periods, so a busy tree still updates. Any earlier result
+ * for a file is removed before it is investigated again, as a file replaced
+ * by renaming another over it is only reported as created. Files created and
+ * then removed within the same burst are never investigated, but are still
+ * reported as removed in case they replaced an earlier file.
+ * <p>New directories are registered and the files within them investigated.
+ * If the <code>WatchService</code> loses events for a directory, every file
+ * in it is investigated again.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.003
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.Investigation#watch()
+ */
+public class DirectoryWatcher implements Runnable
+{
+  /** The path has been created */
+  private static final int CREATED = 0;
+  /** The path has been changed, or removed and created again */
+  private static final int CHANGED = 1;
+  /** The path has been removed */
+  private static final int REMOVED = 2;
+  /** Events for the directory were lost, so all of its files are read again */
+  private static final int LOST = 3;
+
+  private WatchService service;
+  private Investigation investigation;
+  /** The time without events before changes are handled, in milliseconds */
+  private long quiet;
+  /** The directories registered with the WatchService */
+  private HashSet<Path> watched;
+  /** The paths changed since the changes were last handled, in order */
+  private LinkedHashMap<Path,Integer> changes;
+  /** The time of the first change not yet handled, from System.nanoTime() */
+  private long firstChange;
+  private volatile boolean closed;
+
+  /**
+   * Instantiate the class and register every directory in the tree.
+   * @param root The directory at the top of the tree.
+   * @param inv The investigation which files are passed to.
+   * @param quietMillis The time without events before changes are handled.
+   * @throws IOException If the tree can't be watched.
+   */
+  public DirectoryWatcher(Path root, Investigation inv, long quietMillis) throws IOException
+  {
+    investigation = inv;
+    quiet = Math.max(1, quietMillis);
+    watched = new HashSet<Path>();
+    changes = new LinkedHashMap<Path,Integer>();
+    service = root.getFileSystem().newWatchService();
+    walk(root, false);
+  }
+
+  /**
+   * Passes the changes queued since the watcher was created to the
+   * investigation, then waits for more until <code>close()</code> is called.
+   */
+  public void run()
+  {
+    try
+    {
+      while (!closed)
+      {
+        WatchKey key;
+        if (changes.isEmpty())
+        {
+          key = service.take();
+        }
+        else
+        {
+          key = service.poll(quiet, TimeUnit.MILLISECONDS);
+        }
+        if (key != null)
+        {
+          collect(key);
+        }
+        if (!changes.isEmpty() && (key == null
+            || System.nanoTime() - firstChange > TimeUnit.MILLISECONDS.toNanos(quiet * 10)))
+        {
+          handleChanges();
+        }
+      }
+    }
+    catch (InterruptedException iX)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (ClosedWatchServiceException cwsX)
+    {
+      // The watcher has been closed
+    }
+  }
+
+  /**
+   * Stops watching the tree. This may be called from any thread and
+   * <code>run()</code> returns once any change being handled is finished.
+   */
+  public void close()
+  {
+    closed = true;
+    try
+    {
+      service.close();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Adds the events of a directory to the changes waiting to be handled.
+   * @param key The key of the directory.
+   */
+  private void collect(WatchKey key)
+  {
+    Path dir = (Path) key.watchable();
+    for (WatchEvent<?> we : key.pollEvents())
+    {
+      if (changes.isEmpty())
+      {
+        firstChange = System.nanoTime();
+      }
+      WatchEvent.Kind<?> kind = we.kind();
+      if (kind == StandardWatchEventKinds.OVERFLOW)
+      {
+        note(dir, LOST);
+      }
+      else if (kind == StandardWatchEventKinds.ENTRY_CREATE)
+      {
+        note(dir.resolve((Path) we.context()), CREATED);
+      }
+      else if (kind == StandardWatchEventKinds.ENTRY_MODIFY)
+      {
+        note(dir.resolve((Path) we.context()), CHANGED);
+      }
+      else
+      {
+        note(dir.resolve((Path) we.context()), REMOVED);
+      }
+    }
+    if (!key.reset())
+    {
+      // The directory has gone and its removal is reported by its parent
+      watched.remove(dir);
+    }
+  }
+
+  /**
+   * Records a change to a path, combining it with any earlier change to the
+   * same path which hasn't been handled yet.
+   * @param p The path.
+   * @param change What happened to it.
+   */
+  private void note(Path p, int change)
+  {
+    Integer earlier = changes.get(p);
+    if (earlier != null)
+    {
+      if (earlier == LOST)
+      {
+        change = LOST;
+      }
+      else if (earlier == CREATED && change == CHANGED)
+      {
+        change = CREATED;
+      }
+      else if (earlier == REMOVED && change == CREATED)
+      {
+        change = CHANGED;
+      }
+    }
+    // A file created and removed again may have replaced one with a result,
+    // so it is still reported as removed
+    changes.put(p, change);
+  }
+
+  /**
+   * Passes the changes collected to the investigation.
+   */
+  private void handleChanges()
+  {
+    for (Map.Entry<Path,Integer> me : changes.entrySet())
+    {
+      if (closed)
+      {
+        break;
+      }
+      Path p = me.getKey();
+      int change = me.getValue();
+      if (change == REMOVED)
+      {
+        investigation.removed(p);
+      }
+      else if (change == LOST)
+      {
+        walk(p, true);
+      }
+      else if (Files.isDirectory(p))
+      {
+        // A directory changes when its attributes do, which needs nothing
+        if (!watched.contains(p))
+        {
+          walk(p, true);
+        }
+      }
+      else
+      {
+        investigation.changed(p);
+      }
+    }
+    changes.clear();
+  }
+
+  /**
+   * Registers the directories in a tree which aren't already watched and
+   * optionally investigates the files within them.
+   * @param dir The top of the tree.
+   * @param investigate <code>true</code> to investigate the files.
+   */
+  private void walk(final Path dir, final boolean investigate)
+  {
+    try
+    {
+      Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+      {
+        public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs)
+            throws IOException
+        {
+          if (closed)
+          {
+            return FileVisitResult.TERMINATE;
+          }
+          if (watched.contains(d) && !d.equals(dir))
+          {
+            // Its files are already up to date
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+          if (watched.add(d))
+          {
+            d.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFile(Path f, BasicFileAttributes attrs)
+        {
+          if (investigate && attrs.isRegularFile())
+          {
+            investigation.changed(f);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed(Path f, IOException ioX)
+        {
+          // The file has gone again or can't be read, and is left out
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/* Class name: EntryInputStream
+ * File name:  EntryInputStream.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class reads a single entry of an archive so that it can be detected and
+ * parsed like a file, without extracting it.
+ * <p>The bytes read are counted and added to an <code>ExpansionGuard</code>.
+ * Closing the stream does nothing, as a parser which closes its input would
+ * otherwise close the archive and lose the remaining entries.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ExpansionGuard
+ */
+public class EntryInputStream extends FilterInputStream
+{
+  private ExpansionGuard guard;
+  private long count;
+
+  /**
+   * Instantiate the class.
+   * @param archive The archive, positioned at the start of the entry.
+   * @param eg The guard for the file holding the archive.
+   */
+  public EntryInputStream(InputStream archive, ExpansionGuard eg)
+  {
+    super(archive);
+    guard = eg;
+  }
+
+  public int read() throws IOException
+  {
+    int b = in.read();
+    if (b >= 0)
+    {
+      counted(1);
+    }
+    return b;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    int n = in.read(b, off, len);
+    if (n > 0)
+    {
+      counted(n);
+    }
+    return n;
+  }
+
+  public long skip(long n) throws IOException
+  {
+    long skipped = in.skip(n);
+    if (skipped > 0)
+    {
+      counted(skipped);
+    }
+    return skipped;
+  }
+
+  public boolean markSupported()
+  {
+    return false;
+  }
+
+  /**
+   * Leaves the archive open for the next entry.
+   */
+  public void close()
+  {
+  }
+
+  /**
+   * Returns the number of bytes read from the entry.
+   * @return The number of bytes.
+   */
+  public long getCount()
+  {
+    return count;
+  }
+
+  /**
+   * Counts bytes read from the entry.
+   * @param n The number of bytes.
+   * @throws IOException If the archive has expanded too far.
+   */
+  private void counted(long n) throws IOException
+  {
+    count = count + n;
+    guard.add(n);
+  }
+}
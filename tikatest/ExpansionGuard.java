@@ -0,0 +1,126 @@
+/* Class name: ExpansionGuard
+ * File name:  ExpansionGuard.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 The archive can also be abandoned once an entry's parser times out.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+
+/**
+ * This class stops the investigation of an archive which expands to far more
+ * data than it holds, such as a "zip bomb".
+ * <p>One guard is used for each file investigated. Every byte read from the
+ * entries of the archive, at any level of nesting, is added to it and an
+ * <code>IOException</code> is thrown once the total is more than the given
+ * ratio of the size of the file. Small archives are allowed to expand to
+ * 64 MB whatever their ratio, as text compresses very well.
+ * <p>The guard also stops the rest of an archive being read once the parser
+ * of one of its entries has been abandoned, as the abandoned thread may still
+ * be reading from the same stream.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.EntryInputStream
+ */
+public class ExpansionGuard
+{
+  /** The number of bytes any archive may expand to */
+  private static final long MINIMUM = 64L * 1024L * 1024L;
+
+  private long limit;
+  private long expanded;
+  private boolean tripped;
+  /** The path of the entry whose parser was abandoned, or null */
+  private String abandoned;
+
+  /**
+   * Instantiate the class for a file.
+   * @param size The size of the file in bytes.
+   * @param ratio The number of times its size the file may expand to, or 0 for
+   * no limit.
+   */
+  public ExpansionGuard(long size, double ratio)
+  {
+    if (ratio <= 0)
+    {
+      limit = Long.MAX_VALUE;
+    }
+    else
+    {
+      limit = Math.max(MINIMUM, (long) (size * ratio));
+    }
+  }
+
+  /**
+   * Adds bytes read from an archive entry to the total.
+   * @param n The number of bytes read.
+   * @throws IOException If the total is now more than the limit.
+   */
+  public void add(long n) throws IOException
+  {
+    expanded = expanded + n;
+    if (expanded > limit)
+    {
+      tripped = true;
+      throw exceeded();
+    }
+  }
+
+  /**
+   * Stops the rest of the archive being read because the parser of an entry
+   * timed out and may still be reading it on another thread.
+   * @param entry The path of the entry which timed out.
+   */
+  public void abandon(String entry)
+  {
+    tripped = true;
+    abandoned = entry;
+  }
+
+  /**
+   * Returns whether the limit has been reached or an entry's parser abandoned,
+   * in which case the rest of the archive shouldn't be read.
+   * @return <code>true</code> if the archive has been abandoned.
+   */
+  public boolean isTripped()
+  {
+    return tripped;
+  }
+
+  /**
+   * Returns whether the archive was abandoned because an entry timed out,
+   * rather than because it expanded too far.
+   * @return <code>true</code> if an entry's parser was abandoned.
+   */
+  public boolean isAbandoned()
+  {
+    return abandoned != null;
+  }
+
+  /**
+   * Returns the exception describing why the archive was abandoned.
+   * @return The exception.
+   */
+  public IOException exceeded()
+  {
+    if (abandoned != null)
+    {
+      return new IOException("Archive abandoned after " + abandoned + " timed out");
+    }
+    return new IOException("Archive expands to more than " + limit + " bytes");
+  }
+}
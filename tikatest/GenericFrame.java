@@ -4,20 +4,24 @@
  * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons 
  * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
  * Created:    18-Mar-2009 19:13:20
- * Modified:   28-May-2012
+ * Modified:   17-Oct-2026
  *
  * Version History:
  * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 1.004  17-Oct-2026 A component such as a status bar may be shown below the table.
+ * 1.003  17-Oct-2026 Any table model may be displayed, such as a ColumnarTable.
  * 1.002  28-May-2012 Changed licensing and verified Javadoc for release on Github.
  * 1.001  28-Jul-2010 Code adapted for Odin.
  * 1.000  17-Jun-2009 Code finalised and released.
  */
 
 package tikatest;
+import javax.swing.JComponent;
 import javax.swing.JInternalFrame;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.SpringLayout;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableRowSorter;
 
 /**
@@ -32,7 +36,7 @@ import javax.swing.table.TableRowSorter;
  * <br />
  * This work is licensed under a 
  * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
- * @version 1.002
+ * @version 1.004
  * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
  */
 
@@ -56,19 +60,54 @@ public class GenericFrame extends JInternalFrame
    * @see tikatest.GenericTable
    */
   public GenericFrame(String title, GenericTable gT)
+  {
+    this(title, (AbstractTableModel) gT);
+    table = gT;
+  }
+
+  /**
+   * Initialises the class and displays the data contained within any table
+   * model, such as a <code>ColumnarTable</code> holding a large number of rows.
+   * @param title The title of the window.
+   * @param model The data to be displayed in the window.
+   * @see tikatest.ColumnarTable
+   */
+  public GenericFrame(String title, AbstractTableModel model)
+  {
+    this(title, model, null);
+  }
+
+  /**
+   * Initialises the class and displays the data contained within any table
+   * model, with a component such as a status bar below the table.
+   * @param title The title of the window.
+   * @param model The data to be displayed in the window.
+   * @param footer The component shown below the table, or <code>null</code>.
+   */
+  public GenericFrame(String title, AbstractTableModel model, JComponent footer)
   {
     super(title, true, true, true, true);
-    JTable jT = new JTable(gT);
-    jT.setRowSorter(new TableRowSorter(gT));
+    JTable jT = new JTable(model);
+    jT.setRowSorter(new TableRowSorter(model));
     JScrollPane jspTable = new JScrollPane(jT);
     this.add(jspTable);
-    table = gT;
     SpringLayout slGenericFrame = new SpringLayout();
     this.setLayout(slGenericFrame);
     slGenericFrame.putConstraint(SpringLayout.NORTH, jspTable, 2, SpringLayout.NORTH, this.getContentPane());
     slGenericFrame.putConstraint(SpringLayout.EAST, jspTable, -2, SpringLayout.EAST, this.getContentPane());
-    slGenericFrame.putConstraint(SpringLayout.SOUTH, jspTable, -2, SpringLayout.SOUTH, this.getContentPane());
     slGenericFrame.putConstraint(SpringLayout.WEST, jspTable, 2, SpringLayout.WEST, this.getContentPane());
+    if (footer == null)
+    {
+      slGenericFrame.putConstraint(SpringLayout.SOUTH, jspTable, -2, SpringLayout.SOUTH, this.getContentPane());
+    }
+    else
+    {
+      this.add(footer);
+      slGenericFrame.putConstraint(SpringLayout.SOUTH, jspTable, -2, SpringLayout.NORTH, footer);
+      slGenericFrame.putConstraint(SpringLayout.EAST, footer, -2, SpringLayout.EAST, this.getContentPane());
+      slGenericFrame.putConstraint(SpringLayout.SOUTH, footer, -2, SpringLayout.SOUTH, this.getContentPane());
+      slGenericFrame.putConstraint(SpringLayout.WEST, footer, 2, SpringLayout.WEST, this.getContentPane());
+    }
     this.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
     this.setSize(500,350);
   }
@@ -76,7 +115,8 @@ public class GenericFrame extends JInternalFrame
   /**
    * Returns the instance of <code>GenericTable</code> used to contain data
    * displayed within the window.
-   * @return The data model displayed in the window.
+   * @return The data model displayed in the window, or <code>null</code> if
+   * another kind of table model is displayed.
    * @see tikatest.GenericTable
    */
   public GenericTable getGenericTable()
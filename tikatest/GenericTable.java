@@ -4,10 +4,11 @@
  * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons 
  * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
  * Created:    19-Dec-2008 21:02:04
- * Modified:   28-May-2012
+ * Modified:   17-Oct-2026
  *
  * Version History:
  * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 1.003  17-Oct-2026 addRow only reports the new row as inserted.
  * 1.002  28-May-2012 Changed licensing and verified Javadoc for release on Github.
  * 1.001  28-Jul-2010 Code adapted for Odin.
  * 1.000  17-Jun-2009 Code finalised and released.
@@ -28,7 +29,7 @@ import javax.swing.table.AbstractTableModel;
  * <br />
  * This work is licensed under a 
  * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
- * @version 1.002
+ * @version 1.003
  * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
  */
 public class GenericTable extends AbstractTableModel
@@ -186,7 +187,7 @@ public class GenericTable extends AbstractTableModel
   public void addRow(Object[] aNewRow)
   {
     data.add(aNewRow);
-    fireTableRowsInserted(0, data.size()-1);
+    fireTableRowsInserted(data.size()-1, data.size()-1);
   }
 
   /**
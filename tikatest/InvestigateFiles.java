@@ -4,21 +4,46 @@
  * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons 
  * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
  * Created:    19-Nov-2008 12:55:10
- * Modified:   28-May-2012
+ * Modified:   17-Oct-2026
  *
  * Version History:
  * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 1.012  17-Oct-2026 Added the option to keep watching the folder for changes.
+ * 1.011  17-Oct-2026 The quickest files are investigated first so results appear sooner.
+ * 1.010  17-Oct-2026 The folder chooser offers a detection-only investigation.
+ * 1.009  17-Oct-2026 Added a button showing the timings of the investigation.
+ * 1.008  17-Oct-2026 The details of each file are listed on the console by an AsyncSink.
+ * 1.007  17-Oct-2026 The investigation runs in the background, shows its progress and can be cancelled.
+ * 1.006  17-Oct-2026 Results are held in a ColumnarTable and added in batches.
+ * 1.005  17-Oct-2026 The investigation is run through an InvestigationWorker.
+ * 1.004  17-Oct-2026 Added the language column.
+ * 1.003  17-Oct-2026 Rows may now be added from any thread.
  * 1.002  28-May-2012 Changed licensing and verified Javadoc for release on Github.
  * 1.001  26-Jul-2010 Adapted for Odin.
  * 1.000  17-Jun-2009 Code finalised and released.
  */
 
 package tikatest;
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.OutputStreamWriter;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
 
 /**
  * This class handles any request to close Odin. It does this
@@ -34,12 +59,11 @@ import javax.swing.JFileChooser;
  * <br />
  * This work is licensed under a 
  * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
- * @version 1.002
+ * @version 1.012
  * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
  */
 public class InvestigateFiles implements ActionListener
 {
-  private GenericTable gt;
   private Client parent;
 
   /**
@@ -63,6 +87,16 @@ public class InvestigateFiles implements ActionListener
     fc.setDialogTitle("Select folder to examine");
     fc.setMultiSelectionEnabled(true);
     fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+    // Most of the table only needs the MIME type, which is much quicker to find
+    JCheckBox jcbDetect = new JCheckBox("Detect types only");
+    jcbDetect.setToolTipText("Only examine the start of each file, without reading its metadata or language");
+    // The results can be kept up to date as files change
+    JCheckBox jcbWatch = new JCheckBox("Keep watching for changes");
+    jcbWatch.setToolTipText("Investigate files again as they change until the results are closed");
+    JPanel jpOptions = new JPanel(new GridLayout(0, 1));
+    jpOptions.add(jcbDetect);
+    jpOptions.add(jcbWatch);
+    fc.setAccessory(jpOptions);
     int returnVal = fc.showDialog(null,"Select");
     if (returnVal == 1)
     {
@@ -70,7 +104,6 @@ public class InvestigateFiles implements ActionListener
     }
     File f = fc.getSelectedFile();
 
-    gt = new GenericTable();
     java.util.ArrayList<String> columns = new java.util.ArrayList<String>();
     columns.add("File Name");
     columns.add("File Path");
@@ -79,26 +112,82 @@ public class InvestigateFiles implements ActionListener
     columns.add("MIME Sub-type");
     columns.add("Parameters Present?");
     columns.add("Meta-data Present?");
-    ArrayList row = new ArrayList();
-    row.add(new Object[]{"?","?","?","?","?","?","?"});
-    gt.setData(columns, row);
+    columns.add("Language");
+    // Only the names and paths vary much between files, so the other columns
+    // are stored once for each distinct value
+    ColumnarTable ct = new ColumnarTable(columns, new int[]{ColumnarTable.PLAIN, ColumnarTable.PATH,
+        ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY,
+        ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY, ColumnarTable.DICTIONARY});
+
+    // The progress and buttons to show the timings and stop the investigation
+    // are shown below the table
+    JLabel jlStatus = new JLabel(" ");
+    JButton jbTimings = new JButton("Timings");
+    JButton jbCancel = new JButton("Cancel");
+    JPanel jpButtons = new JPanel();
+    jpButtons.add(jbTimings);
+    jpButtons.add(jbCancel);
+    JPanel jpStatus = new JPanel(new BorderLayout());
+    jpStatus.add(jlStatus, BorderLayout.CENTER);
+    jpStatus.add(jpButtons, BorderLayout.EAST);
 
     // This is where the investigation is actually launched on the chosen directory.
-    Investigation inv = new Investigation(f, this);
-    // As the class uses SwingWorker we can let it run in the background.
-    inv.doInBackground();
+    // The details of each file are also listed on the console by a separate thread
+    AsyncSink console = new AsyncSink(new ConsoleSink(new BufferedWriter(
+        new OutputStreamWriter(System.out), 65536)), 10000);
+    ScanOptions so = new ScanOptions();
+    so.setDetectOnly(jcbDetect.isSelected());
+    so.setWatch(jcbWatch.isSelected());
+    // Quick files are investigated first so the table fills as soon as possible
+    so.setSchedule(ScanOptions.SCHEDULE_SHORTEST);
+    // The timings can also be watched through JMX while the investigation runs
+    final ScanMetrics metrics = so.getMetrics();
+    metrics.setOutput(console);
+    metrics.register();
+    final InvestigationWorker inv = new InvestigationWorker(f, ct, jlStatus, so, console);
+    final JButton jbStop = jbCancel;
+    inv.addPropertyChangeListener(new PropertyChangeListener()
+    {
+      public void propertyChange(PropertyChangeEvent pce)
+      {
+        if (inv.isDone())
+        {
+          jbStop.setEnabled(false);
+        }
+      }
+    });
+    jbCancel.addActionListener(new ActionListener()
+    {
+      public void actionPerformed(ActionEvent e)
+      {
+        inv.stop();
+        ((JButton) e.getSource()).setEnabled(false);
+      }
+    });
 
-    GenericFrame gf = new GenericFrame("Investigation Results:",gt);
+    final GenericFrame gf = new GenericFrame("Investigation Results:", ct, jpStatus);
+    jbTimings.addActionListener(new ActionListener()
+    {
+      public void actionPerformed(ActionEvent e)
+      {
+        JTextArea jta = new JTextArea(metrics.getReport(25));
+        jta.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        jta.setEditable(false);
+        JOptionPane.showMessageDialog(gf, new JScrollPane(jta), "Investigation Timings",
+            JOptionPane.INFORMATION_MESSAGE);
+      }
+    });
+    // Closing the window stops the investigation
+    gf.addInternalFrameListener(new InternalFrameAdapter()
+    {
+      public void internalFrameClosed(InternalFrameEvent e)
+      {
+        inv.stop();
+      }
+    });
     parent.addToDesktop(gf);
     gf.setVisible(true);
+    // As the class uses SwingWorker the investigation runs in the background.
+    inv.start();
   }
-  
-  /**
-   * Add a row to the GenericFrame.
-   * @param rowData An object array corresponding to the columns of the table.
-   */
-  public void addRow(Object[] rowData)
-  {
-    gt.addRow(rowData);
-  }
-}
\ No newline at end of file
+}
@@ -4,231 +4,729 @@
  * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons 
  * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
  * Created:    28-Mar-2011 20:46:55
- * Modified:   28-May-2012
+ * Modified:   17-Oct-2026
  *
  * Version History:
  * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 1.034  17-Oct-2026 Records files whose investigation failed in a parser thread of the pipeline.
+ * 1.033  17-Oct-2026 Counts the files investigated before watching began.
+ * 1.032  17-Oct-2026 The index isn't used in detection-only mode.
+ * 1.031  17-Oct-2026 Text is passed to a LanguageSampleHandler.
+ * 1.030  17-Oct-2026 Entries skipped in the walk are noted in the log rather than always printed.
+ * 1.029  17-Oct-2026 The watcher is registered before the tree is walked so changes during the walk aren't missed.
+ * 1.028  17-Oct-2026 A changed file's earlier result is always removed before it is investigated again.
+ * 1.027  17-Oct-2026 ZIP files are opened through ZipFile.builder() rather than the deprecated constructor.
+ * 1.026  17-Oct-2026 Unchanged files from the index are counted as skipped rather than read bytes.
+ * 1.025  17-Oct-2026 An archive is abandoned once an entry times out rather than drained under the abandoned parser.
+ * 1.024  17-Oct-2026 Text is no longer captured, only passed to the language detector.
+ * 1.023  17-Oct-2026 Entries whose attributes can't be read are skipped without ending the listing.
+ * 1.022  17-Oct-2026 Parallel investigations may read files ahead of the parsers in a StagedPipeline.
+ * 1.021  17-Oct-2026 Added run() for a list of files already found, as used by a ShardWorker.
+ * 1.020  17-Oct-2026 The tree may be watched for changes once it has been investigated.
+ * 1.019  17-Oct-2026 Files may be scheduled shortest or longest first using the CostModel.
+ * 1.018  17-Oct-2026 ZIP files are listed from their central directory and entries opened on demand.
+ * 1.017  17-Oct-2026 Files larger than the mapping threshold are read through a MappedInputStream.
+ * 1.016  17-Oct-2026 Added the detection-only mode, which examines a bounded prefix of each file.
+ * 1.015  17-Oct-2026 The time taken by each stage and MIME type is recorded in the ScanMetrics.
+ * 1.014  17-Oct-2026 Files may be investigated in a ChildParserPool of separate processes.
+ * 1.013  17-Oct-2026 Documents are parsed with a time limit and recorded as timed out if they overrun.
+ * 1.012  17-Oct-2026 The details of each file are written by a ResultSink rather than printed.
+ * 1.011  17-Oct-2026 Investigations may be cancelled and the total size of the files is counted.
+ * 1.010  17-Oct-2026 Archive entries are streamed into the detect and parse path as their own rows.
+ * 1.009  17-Oct-2026 Copies of files already parsed are recognised by the DedupCache.
+ * 1.008  17-Oct-2026 Unchanged files are served from the ScanIndex.
+ * 1.007  17-Oct-2026 No longer depends on Swing; results are passed to a ResultSink.
+ * 1.006  17-Oct-2026 The language is detected incrementally and shown in the table.
+ * 1.005  17-Oct-2026 Document text is captured up to a limit and the language identified from a sample.
+ * 1.004  17-Oct-2026 Directories are walked lazily with java.nio.file and counted in the background.
+ * 1.003  17-Oct-2026 Parsers are shared through the ParserRegistry.
+ * 1.002  17-Oct-2026 Files are opened once and detected before being parsed.
+ * 1.001  17-Oct-2026 Added a parallel fork-join mode for walking directory trees.
  * 1.000  28-May-2012 Changed licensing and verified Javadoc for release on Github.
  * 0.001  28-Mar-2011 Initial build
  */
 
 package tikatest;
 import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import javax.swing.SwingWorker;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.tika.detect.Detector;
-import org.apache.tika.language.LanguageIdentifier;
+import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.SAXException;
 
 /**
  * This class is responsible for detecting files within a given directory and
  * investigating them (as well as sub-directories).
  * <p>Detected files are investigated using the Apache Tika and Commons Compress
- * projects.
+ * projects. The result for each file is passed to a <code>ResultSink</code> as
+ * soon as it is known. The class doesn't use Swing or AWT, so it may be run
+ * by the GUI through an <code>InvestigationWorker</code> or from the command
+ * line by <code>BatchScan</code>.
  * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
  * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
  * </a>
  * <br />
  * This work is licensed under a 
  * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
- * @version 1.000
+ * @version 1.034
  * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
  */
-public class Investigation extends SwingWorker
+public class Investigation implements Runnable
 {
-  private int numberOfFiles;
-  private int progress;
-  private File startFolder;
-  private InvestigateFiles parent;
+  /** Counts the files to be investigated on a background thread */
+  private FileCounter counter;
+  private AtomicInteger progress;
+  /** The number of bytes in the files investigated */
+  private AtomicLong bytes;
+  /** The number of bytes in unchanged files passed on from the index unread */
+  private AtomicLong skippedBytes;
+  /** The number of files which couldn't be investigated */
+  private AtomicInteger errors;
+  private Path startFolder;
+  /** Receives the result for each file */
+  private ResultSink sink;
+  private ScanOptions options;
+  /** Where notes about the investigation are printed, or null for none */
+  private PrintStream log;
+  /** The time taken by the investigation in nanoseconds */
+  private long elapsed;
+  /** The parser and detector shared by every thread */
+  private ParserRegistry registry;
+  /** The parser threads used when investigating in parallel */
+  private ThreadPoolExecutor parsers;
+  /** Parses documents with the time limits from the ScanOptions */
+  private TimedParser timer;
+  /** The number of files which took too long to parse */
+  private AtomicInteger timeouts;
+  /** Set when the investigation should stop as soon as possible */
+  private volatile boolean cancelled;
+  /** Counts the errors in archive entries investigated by a child process */
+  private ResultSink childEntries;
+  /** Records the time taken by each stage and MIME type */
+  private ScanMetrics metrics;
+  /** The files waiting to be investigated in a sequential scheduled scan */
+  private PriorityQueue<Runnable> pending;
+  /** Numbers the files as they are found so equal costs keep their order */
+  private AtomicLong found;
+  /** Watches the tree for changes, registered before it is walked, or null */
+  private volatile DirectoryWatcher watcher;
+  /** Set once the changes found by the watcher are being investigated */
+  private volatile boolean watching;
+  /** The number of files investigated again or removed while watching */
+  private AtomicInteger changes;
+  /** The number of files investigated before watching began */
+  private volatile int walked;
+  /** The stages reading and parsing files in a pipelined investigation, or null */
+  private StagedPipeline pipeline;
 
   /**
-   * Instantiate the class and initialise the variables.
+   * Instantiate the class and initialise the variables using the default
+   * <code>ScanOptions</code>.
    * @param f The base directory to be investigated.
-   * @param ifParent The parent window for updates to be posted to.
+   * @param rs Where the result for each file is written.
    */
-  public Investigation(File f, InvestigateFiles ifParent)
+  public Investigation(File f, ResultSink rs)
   {
-    startFolder = f;
-    numberOfFiles = 0;
-    progress = 0;
-    parent = ifParent;
+    this(f, rs, new ScanOptions());
   }
 
   /**
-   * Recursive method for scanning files and sub-directories of a given
-   * directory. This is to provide an overall number of files being scanned.
-   * @param f A directory path to be investigated.
+   * Instantiate the class and initialise the variables.
+   * @param f The base directory (or a single file) to be investigated.
+   * @param rs Where the result for each file is written.
+   * @param so The settings to use for the investigation.
    */
-  private void scan(File f)
+  public Investigation(File f, ResultSink rs, ScanOptions so)
   {
-    int i = f.listFiles().length;
-    numberOfFiles = numberOfFiles + i;
-    for (File g : f.listFiles())
+    startFolder = f.toPath();
+    counter = new FileCounter(startFolder);
+    progress = new AtomicInteger(0);
+    bytes = new AtomicLong(0);
+    skippedBytes = new AtomicLong(0);
+    errors = new AtomicInteger(0);
+    timeouts = new AtomicInteger(0);
+    sink = rs;
+    options = so;
+    log = so.getLog();
+    metrics = so.getMetrics();
+    found = new AtomicLong(0);
+    changes = new AtomicInteger(0);
+    childEntries = new ResultSink()
     {
-      if (g.isDirectory())
+      public void write(InvestigationResult result)
+      {
+        countError(result);
+        sink.write(result);
+      }
+
+      public void flush()
+      {
+      }
+
+      public void close()
       {
-          numberOfFiles--;
-          scan(g);
       }
+    };
+  }
+
+  /**
+   * Starts counting the files and sub-directories of the base directory on a
+   * background thread. This is to provide an overall number of files being
+   * scanned without delaying the investigation of the first file.
+   * @see tikatest.FileCounter
+   */
+  private void scan()
+  {
+    Thread t = new Thread(counter, "FileCounter " + startFolder);
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * Returns the number of files to be investigated. While the background count
+   * is still running this is an estimate, which is never less than the number
+   * of files already investigated.
+   * @return The total number of files (or the current estimate).
+   */
+  public int getFileCount()
+  {
+    return Math.max(counter.getCount(), progress.get());
+  }
+
+  /**
+   * Returns the total size of the files to be investigated, which is an
+   * estimate while the background count is still running.
+   * @return The total number of bytes (or the current estimate).
+   */
+  public long getByteCount()
+  {
+    return Math.max(counter.getBytes(), bytes.get() + skippedBytes.get());
+  }
+
+  /**
+   * Returns whether the total returned by <code>getFileCount()</code> is final.
+   * @return <code>true</code> once all of the files have been counted.
+   */
+  public boolean isFileCountComplete()
+  {
+    return counter.isComplete();
+  }
+
+  /**
+   * Returns the number of files investigated so far.
+   * @return The number of files.
+   */
+  public int getProgress()
+  {
+    return progress.get();
+  }
+
+  /**
+   * Returns the number of bytes in the files investigated so far, which
+   * doesn't include unchanged files whose results came from the index.
+   * @return The number of bytes.
+   */
+  public long getBytes()
+  {
+    return bytes.get();
+  }
+
+  /**
+   * Returns the number of bytes in the unchanged files whose results came
+   * from the index without them being read.
+   * @return The number of bytes.
+   */
+  public long getSkippedBytes()
+  {
+    return skippedBytes.get();
+  }
+
+  /**
+   * Returns the number of files which couldn't be investigated.
+   * @return The number of errors.
+   */
+  public int getErrors()
+  {
+    return errors.get();
+  }
+
+  /**
+   * Returns the number of files (and archive entries) whose parsing was
+   * abandoned because it took longer than the time limit. These are also
+   * included in the number of errors.
+   * @return The number of timeouts.
+   */
+  public int getTimeouts()
+  {
+    return timeouts.get();
+  }
+
+  /**
+   * Asks the investigation to stop. Files which are already being parsed are
+   * finished but no more are started, and <code>run()</code> then returns.
+   * This may be called from any thread.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+    counter.stop();
+    DirectoryWatcher dw = watcher;
+    if (dw != null)
+    {
+      dw.close();
     }
   }
 
+  /**
+   * Returns whether the investigation has been cancelled.
+   * @return <code>true</code> if <code>cancel()</code> has been called.
+   */
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  /**
+   * Returns the time taken by the investigation once it has finished.
+   * @return The elapsed time in milliseconds.
+   */
+  public long getElapsedTime()
+  {
+    return elapsed / 1000000L;
+  }
+
   /**
    * Iterates through files and sub-directories in the given directory.
-   * <p>Detected files are passed to the <code>investigate(File)</code> method
-   * while sub-directories are recursively passed back to this method.
+   * <p>Entries are read lazily from a <code>DirectoryStream</code> and their
+   * attributes read as they are found. Detected files are passed straight to
+   * the <code>investigate()</code> method while sub-directories are recursively
+   * passed back to this method. If the <code>ScanOptions</code> schedule files
+   * by their cost, files wait in a queue instead and the cheapest (or dearest)
+   * is investigated whenever the queue is full.
    * @param f The given directory path
    */
-  private void interrogate(File f)
+  private void interrogate(Path f)
   {
-    if (f.isDirectory())
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(f))
     {
-      for (File g : f.listFiles())
+      for (Path g : ds)
       {
-        if (g.isDirectory())
+        if (cancelled)
+        {
+          return;
+        }
+        BasicFileAttributes attrs;
+        try
+        {
+          attrs = Files.readAttributes(g, BasicFileAttributes.class);
+        }
+        catch (IOException ioX)
+        {
+          skipped(g, ioX);
+          continue;
+        }
+        if (attrs.isDirectory())
+        {
+          interrogate(g);
+        }
+        else if (pending != null)
         {
-            interrogate(g);
+          pending.add(new ScheduledFile(g, attrs));
+          int window = options.getScheduleWindow();
+          if (window > 0 && pending.size() > window)
+          {
+            pending.poll().run();
+          }
         }
         else
         {
-          progress++;
-          investigate(g);
+          progress.incrementAndGet();
+          investigate(g, attrs);
         }
       }
     }
+    catch (IOException ioX)
+    {
+      // The directory can't be read (permissions or it has been removed)
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Notes an entry left out of the walk because its attributes can't be read,
+   * such as a dangling link or a file removed since the directory was listed.
+   * @param g The entry
+   * @param ioX The exception thrown reading its attributes
+   */
+  void skipped(Path g, IOException ioX)
+  {
+    if (log != null)
+    {
+      log.println("Skipped (" + ioX + "): " + g);
+    }
+  }
+
+  /**
+   * Walks the given directory using a <code>ForkJoinPool</code> where each
+   * sub-directory becomes a separate task. Files are passed to a bounded pool
+   * of parser threads; when its queue is full the walking thread parses the
+   * file itself which stops the walk from racing ahead of the parsers.
+   * <p>If the <code>ScanOptions</code> schedule files by their cost, the queue
+   * is ordered by the estimated cost of each file and holds up to the
+   * schedule window. When it is full the walking thread adds its file anyway
+   * and investigates the file at the head of the queue, so every thread is
+   * always working on the file the schedule wants next.
+   * <p>The method returns once every file found has been investigated.
+   * @param f The given directory path
+   * @see tikatest.InvestigationTask
+   */
+  private void interrogateInParallel(Path f)
+  {
+    int threads = options.getParallelism();
+    BlockingQueue<Runnable> waiting;
+    RejectedExecutionHandler full;
+    if (options.getSchedule() == ScanOptions.SCHEDULE_FOUND)
+    {
+      waiting = new ArrayBlockingQueue<Runnable>(threads * 4);
+      full = new ThreadPoolExecutor.CallerRunsPolicy();
+    }
+    else
+    {
+      final ScheduleQueue queue = new ScheduleQueue(options.getScheduleWindow(),
+          new CostOrder(options.getSchedule() == ScanOptions.SCHEDULE_LONGEST));
+      waiting = queue;
+      full = new RejectedExecutionHandler()
+      {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor tpe)
+        {
+          if (tpe.isShutdown())
+          {
+            return;
+          }
+          queue.force(r);
+          Runnable next = queue.poll();
+          if (next != null)
+          {
+            next.run();
+          }
+        }
+      };
+    }
+    parsers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        waiting, full);
+    metrics.setParserQueue(parsers.getQueue());
+    ForkJoinPool walkers = new ForkJoinPool(threads);
+    try
+    {
+      walkers.invoke(new InvestigationTask(f, this));
+      parsers.shutdown();
+      parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException iX)
+    {
+      // The investigation has been cancelled so drop any queued files
+      parsers.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      walkers.shutdown();
+      metrics.setParserQueue(null);
+    }
+  }
+
+  /**
+   * Queues a file for investigation by one of the parser threads, or to be
+   * read first if the investigation is pipelined. This is called by each
+   * <code>InvestigationTask</code> as it walks a directory.
+   * @param g The file to investigate
+   * @param attrs The attributes read when the file was found
+   */
+  void submit(Path g, BasicFileAttributes attrs)
+  {
+    if (pipeline != null)
+    {
+      pipeline.submit(g, attrs);
+    }
+    else
+    {
+      parsers.execute(new ScheduledFile(g, attrs));
+    }
   }
   
   /**
-   * Take a given file and extract any contained metadata. All of the metadata is
-   * printed on the command line and a summary shown on the GUI.
+   * Take a given file and extract any contained metadata. The result is passed
+   * to the <code>ResultSink</code>, which may list the metadata on the console
+   * (a <code>ConsoleSink</code>) or write it out as a record.
    * <p>This uses <a href="http://tika.apache.org">Apache Tika</a> to extract
    * the metadata and also detect the content language.
    * <p>Document formats that are supported by Tika are listed on the project's
    * main site <a href="http://tika.apache.org/1.1/formats.html">here</a>.
-   * <p>Archive formats are passed to the <code>handleGeneric()</code> method
-   * which uses Apache Commons Compress to investigate the contents. Currently
-   * supported MIME types for this are:
-   * <uL>
-   *   <li>archive/zip</li>
-   *   <li>archive/x-cpio</li>
-   *   <li>archive/x-gtar</li>
-   *   <li>archive/x-bzip</li>
-   *   <li>archive/x-bzip2</li>
-   *   <li>archive/x-archive</li>
-   *   <li>archive/x-tar</li>
-   * </ul>
-   * <p>This method makes use of code which has been publicly available through
-   * the Apache website.
+   * <p>If a <code>ScanIndex</code> is in use and it holds a result for the file
+   * with the same size and modification time (and content hash, if enabled)
+   * then that result is used and the file isn't opened at all.
+   * <p>If a <code>DedupCache</code> is in use then a file which is a copy of
+   * one already parsed is given that file's result instead of being parsed.
+   * Only files the same size as a cached file are hashed beforehand; others
+   * are hashed as they are parsed so they are still read just once.
+   * <p>The file is opened once and passed to <code>analyse()</code>, which
+   * also investigates the entries of archives. If a <code>ChildParserPool</code>
+   * is in use the file is investigated in one of its processes instead.
+   * @param g The file to investigate
+   * @param attrs The attributes read when the file was found
+   * @see java.nio.file.Path
+   */
+  private void investigate(Path g, BasicFileAttributes attrs)
+  {
+    if (!isIndexed(g, attrs))
+    {
+      investigate(g, attrs, null);
+    }
+  }
+
+  /**
+   * Counts a file found by a <code>StagedPipeline</code> and passes on its
+   * result from the <code>ScanIndex</code> if it is unchanged, before any of
+   * the file is read.
+   * @param g The file to investigate
+   * @param attrs The attributes read when the file was found
+   * @return <code>true</code> if the file still needs to be investigated.
+   */
+  boolean begin(Path g, BasicFileAttributes attrs)
+  {
+    progress.incrementAndGet();
+    return !isIndexed(g, attrs);
+  }
+
+  /**
+   * Passes on the result of a file from the <code>ScanIndex</code> if it is
+   * unchanged, or otherwise counts the bytes in the file which is about to be
+   * read.
+   * @param g The file to investigate
+   * @param attrs The attributes read when the file was found
+   * @return <code>true</code> if the result from the index was used.
+   */
+  private boolean isIndexed(Path g, BasicFileAttributes attrs)
+  {
+    ScanIndex index = getIndex();
+    if (index != null && isUnchanged(g, attrs,
+        index.lookup(g, attrs.size(), attrs.lastModifiedTime().toMillis())))
+    {
+      return true;
+    }
+    bytes.addAndGet(attrs.size());
+    metrics.addBytes(attrs.size());
+    return false;
+  }
+
+  /**
+   * Investigates a file which isn't in the <code>ScanIndex</code>, as
+   * described for <code>investigate(Path, BasicFileAttributes)</code>.
+   * @param g The file to investigate
+   * @param attrs The attributes read when the file was found
+   * @param read The start of the file read by a <code>StagedPipeline</code>,
+   * or <code>null</code> to open the file here
+   */
+  void investigate(Path g, BasicFileAttributes attrs, StagedPipeline.ReadFile read)
+  {
+    InvestigationResult result = new InvestigationResult(g.getFileName().toString(),
+        g.toString(), attrs.size());
+    ScanIndex index = getIndex();
+    long modified = attrs.lastModifiedTime().toMillis();
+    long start = System.nanoTime();
+    DedupCache dedup = options.getDedupCache();
+    byte[] known = null;
+    if (dedup != null)
+    {
+      if (dedup.mayContain(attrs.size()))
+      {
+        // A file of the same size has been parsed, so hash this one first to
+        // see whether it is a copy, from memory if it has been read whole
+        try
+        {
+          known = read != null && read.isComplete()
+              ? MessageDigest.getInstance("MD5").digest(read.getContent()) : hash(g);
+          InvestigationResult copy = dedup.lookup(result.getName(), result.getPath(),
+              attrs.size(), known);
+          if (copy != null)
+          {
+            if (log != null)
+            {
+              log.println("Copy of a file already investigated: " + g.toAbsolutePath());
+            }
+            if (index != null)
+            {
+              index.append(copy, modified);
+            }
+            sink.write(copy);
+            return;
+          }
+        }
+        catch (IOException ioX)
+        {
+          // Parse the file as normal, which will report the error
+          known = null;
+        }
+        catch (NoSuchAlgorithmException nsaX)
+        {
+          known = null;
+        }
+      }
+      else
+      {
+        dedup.countMiss();
+      }
+    }
+    ChildParserPool pool = options.getChildPool();
+    if (pool != null)
+    {
+      result = investigateInChild(pool, g, result, known);
+    }
+    else
+    {
+      analyseFile(g, result, known, attrs, read);
+    }
+    long taken = System.nanoTime() - start;
+    metrics.record(ScanMetrics.FILE, taken);
+    metrics.record(result.getMediaType(), taken, false);
+    options.getCostModel().record(result.getName(), result.getMediaType(), attrs.size(), taken);
+    if (result.getError() == null)
+    {
+      if (index != null)
+      {
+        try
+        {
+          index.append(result, modified);
+        }
+        catch (IOException ioX)
+        {
+          recordError(result, ioX);
+        }
+      }
+      if (dedup != null && !hasEntries(result))
+      {
+        dedup.put(result, taken);
+      }
+    }
+    // Pass the result on, e.g. to be added to the GUI's GenericTable (JTable)
+    sink.write(result);
+  }
+
+  /**
+   * Opens a file and passes it to <code>analyse()</code>, calculating its
+   * content hash as it is read if one is needed. In detection-only mode the
+   * times the file was modified and created are added to its metadata, as
+   * they cost nothing to read.
    * @param g The file to investigate
-   * @see java.io.File
+   * @param result The result for the file
+   * @param known The hash of the file if it has already been calculated
+   * @param attrs The attributes read when the file was found
+   * @param read The start of the file read by a <code>StagedPipeline</code>, or <code>null</code>
    */
-  private void investigate(File g)
+  private void analyseFile(Path g, InvestigationResult result, byte[] known,
+      BasicFileAttributes attrs, StagedPipeline.ReadFile read)
   {
-    System.out.println("Investigating: " + g.getAbsolutePath());
+    InputStream bis = null;
     try
     {
-      // Open the file as an InputStream
-      BufferedInputStream bis = new BufferedInputStream(new FileInputStream(g));
-      // Create a new instances of Metadata to store the file's meta-data.
-      Metadata meta = new Metadata();
-      ParseContext pc = new ParseContext();
-      StringWriter sw = new StringWriter();
-      WriteOutContentHandler woch = new WriteOutContentHandler(sw);
-      // We use AutoDetectParser as we cannot be certain of the content
-      AutoDetectParser adp = new AutoDetectParser();
-      // We parse the document to extract the metadata into the empty metadata object
-      adp.parse(bis, woch, meta, pc);
-      // After parsing the file the InputStream maybe closed. Let's force it to close
-      bis.close();
-      // And now reopen the file to detect the MIME type
-      bis = new BufferedInputStream(new FileInputStream(g));
-      Detector d = adp.getDetector();
-      // The MediaType class is used to contain the MIME type information
-      MediaType mt = d.detect(bis, meta);
-      // We extract some of the document's content from the StringWriter used earlier
-      String content = sw.toString();
-      // From the content we can run this through the LanguageIdentifier
-      LanguageIdentifier li = new LanguageIdentifier(content);
-      
-      /* The getLanguage method will return an ISO 639-1 identifier.
-       * Supported languages in Tika 0.9 included:
-       * Danish (da)      * Dutch (nl)        * English (en)
-       * Estonian (et)    * Finnish (fi)      * French (fr)
-       * German (de)      * Greek (el)        * Hungarian (hu)
-       * Icelandic (is)   * Italian (it)      * Norwegian - Bokmål (nb)
-       * Polish (pl)      * Portuguese (pt)   * Russian (ru)
-       * Spanish (es)     * Swedish (sv)      * Thai (th)
-       * ----------------------------------------------------------------------------
-       * NOTE: Depending on the encoding of the document contents results may vary
-       * PDF files, for example, can return "et" instead of "en" where the contents
-       * of the StringWriter is encoded characters.
-       */
-      System.out.println("Detected language: " + li.getLanguage());
-      // Create a row for the GenericTable (JTable) in the GUI.
-      Object[] row = new Object[]{"?","?","?","?","?","No","No"};
-      row[0] = g.getName();     // Set the file name
-      row[1] = g.getPath();     // Set the file path
-      row[2] = mt.toString();   // Set the whole MIME type e.g. application/zip
-      row[3] = mt.getType();    // Set the MIME main type e.g. application
-      row[4] = mt.getSubtype(); // Set the MIME subtype e.g. zip
-      System.out.println("Detected type: " + mt.toString());
-
-      // Check to see if the file type is an archive - as supported by the PackageParser in Tika
-      if (mt.getSubtype().equals("zip") ||
-          mt.getSubtype().equals("x-cpio") ||
-          mt.getSubtype().equals("x-gtar") ||
-          mt.getSubtype().equals("x-bzip") ||
-          mt.getSubtype().equals("x-bzip2") ||
-          mt.getSubtype().equals("x-archive") ||
-          mt.getSubtype().equals("x-tar"))
-      { 
-        // So far we've only extracted the archive metadata so we now pass the
-        // InputStream to the method to extract the contents of the archive
-        handleGeneric(bis);
-      }
-      
-      // Parameters aren't frequently used but if the file has them then iterate
-      // through them and print them to the console.
-      Map<String,String> params = mt.getParameters();
-      Iterator i = params.keySet().iterator();
-      if (params.size() > 0)
-      {
-        System.out.println("Parameters detected for " + g.getAbsolutePath() + ":");
-        row[5] = "Yes"; // Show in the GUI table that Parameters are present
-      }
-      while (i.hasNext())
-      {
-        String k = i.next().toString();
-        String v = params.get(k);
-        System.out.printf("\t%s\t%s\n", k,v); // Print the parameter to the console
-      }
-      // Check the size of the Metadata array
-      if (meta.size() > 0)
-      {
-        // If metadata is present then update the GUI table.
-        row[6] = "Yes";
-        // Output the file name in the console
-        System.out.println("Metadata detected for " + g.getAbsolutePath() + ":");
-        for (String name : meta.names())
+      // Open the file as an InputStream. This is the only time the file is opened
+      // and BufferedInputStream lets the detector mark and reset the magic bytes.
+      // Large files are mapped instead, which can mark and reset by itself.
+      // In a pipeline the file has already been opened and its start read.
+      MappedInputStream mis;
+      InputStream is;
+      if (read != null)
+      {
+        mis = read.getMapped();
+        is = read.open();
+      }
+      else
+      {
+        long opening = System.nanoTime();
+        mis = isMapped(result.getSize()) ? new MappedInputStream(g) : null;
+        is = mis != null ? mis : Files.newInputStream(g);
+        metrics.record(ScanMetrics.OPEN, System.nanoTime() - opening);
+      }
+      MessageDigest md = null;
+      if (known != null)
+      {
+        result.setDigest(known);
+      }
+      else if (isHashNeeded())
+      {
+        // The content hash is calculated as the bytes are read from disk
+        md = MessageDigest.getInstance("MD5");
+        if (mis != null)
+        {
+          mis.setDigest(md);
+        }
+        else
+        {
+          is = new DigestInputStream(is, md);
+        }
+      }
+      bis = mis != null ? mis : new BufferedInputStream(is);
+      analyse(bis, result, 0, new ExpansionGuard(result.getSize(), options.getExpansionRatio()));
+      if (options.isDetectOnly())
+      {
+        Metadata meta = result.getMetadata();
+        if (meta.get("Last-Modified") == null)
+        {
+          meta.set("Last-Modified", attrs.lastModifiedTime().toString());
+        }
+        if (meta.get("Creation-Date") == null)
+        {
+          meta.set("Creation-Date", attrs.creationTime().toString());
+        }
+      }
+      if (md != null)
+      {
+        // Read anything the parser didn't so the hash covers the whole file
+        if (mis != null)
+        {
+          // Skipped bytes are hashed straight from the mapping
+          mis.skip(Long.MAX_VALUE);
+        }
+        else
         {
-          String value = meta.get(name);
-          // Output the metadata parameter and value
-          System.out.println("\t" + name + ":\t" + value);
+          drain(bis);
         }
+        result.setDigest(md.digest());
       }
-      // Add the row to the GUI's GenericTable (JTable)
-      parent.addRow(row);
     }
     catch (Exception x)
     {
@@ -238,66 +736,1063 @@ public class Investigation extends SwingWorker
        * Likely errors result from an insufficient heap size when parsing files
        * in Tika. If you do receive this error then adjust the JVM arguments.
        */
-      x.printStackTrace();
+      recordError(result, x);
     }
     finally
     {
-      // Update the SwingWorker thread
-      publish(progress);
+      if (bis != null)
+      {
+        try
+        {
+          bis.close();
+        }
+        catch (IOException ioX)
+        {
+          ioX.printStackTrace();
+        }
+      }
     }
   }
 
   /**
-   * Starts the thread to investigate files starting from the directory specified
-   * in the constructor.
-   * @return Returns nothing.
-   */
-  public Void doInBackground()
-  {
-    scan(startFolder);
-    interrogate(startFolder);
-    return null;
-  }
-  
-  /**
-   * Takes a file which has already been detected as a supported archive and
-   * displays the contents.
-   * <p>This method makes use of code which has been publicly available through
-   * the Apache website.
-   * @param The file to be inspected
-   * @see java.io.BufferedInputStream
+   * Investigates a file in a separate process. The results for any archive
+   * entries are passed on as they arrive. The content hash, if needed, is
+   * calculated here as the process doesn't keep one.
+   * @param pool The processes to use
+   * @param g The file to investigate
+   * @param result The result for the file
+   * @param known The hash of the file if it has already been calculated
+   * @return The result from the process, or the given result with an error.
    */
-  private void handleGeneric(BufferedInputStream bis)
+  private InvestigationResult investigateInChild(ChildParserPool pool, Path g,
+      InvestigationResult result, byte[] known)
   {
     try
     {
-      // File type is a known archive type and we can work with it (fingers crossed)
-      ArchiveInputStream aisInput = new ArchiveStreamFactory().createArchiveInputStream(bis);
-      ArchiveEntry aeFile = aisInput.getNextEntry();
-      System.out.println("ArchiveInputStream: " + aisInput.getClass().getName());
-      System.out.println("Archive Entry - Type: " + aeFile.getClass().getName());
-      while (aeFile != null)
+      byte[] digest = known;
+      if (digest == null && isHashNeeded())
       {
-        if (!aeFile.isDirectory())
-        {
-          String[] segments = aeFile.getName().split("\\/");
-          String filename = "";
-          for(String segment: segments)
-          {
-            filename = segment;
-          }
-          System.out.println("Archive Entry - Name: " + filename);
-        }
-        aeFile = aisInput.getNextEntry();
+        digest = hash(g);
       }
+      InvestigationResult parsed = pool.investigate(result, childEntries);
+      parsed.setDigest(digest);
+      countError(parsed);
+      return parsed;
     }
-    catch (ArchiveException aX)
+    catch (InterruptedException iX)
     {
-      aX.printStackTrace();
+      // The investigation has been cancelled
+      Thread.currentThread().interrupt();
+      result.setError(iX.toString());
+      errors.incrementAndGet();
+      metrics.countError(false);
     }
-    catch (IOException ioX)
+    catch (Exception x)
     {
-      ioX.printStackTrace();
+      recordError(result, x);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the <code>ScanIndex</code> to read and add results to. The index
+   * isn't used in detection-only mode, as its records don't say how a file
+   * was investigated, so a detection-only result could otherwise stand in for
+   * a full parse in a later scan.
+   * @return The index, or <code>null</code> if every file is investigated.
+   */
+  private ScanIndex getIndex()
+  {
+    return options.isDetectOnly() ? null : options.getIndex();
+  }
+
+  /**
+   * Returns whether the content hash of each file is needed, for the
+   * <code>DedupCache</code> or the <code>ScanIndex</code>. Files aren't hashed
+   * in detection-only mode, as that would mean reading all of every file.
+   * @return <code>true</code> if files should be hashed.
+   */
+  private boolean isHashNeeded()
+  {
+    return !options.isDetectOnly() && (options.getDedupCache() != null
+        || (options.getIndex() != null && options.isIndexHash()));
+  }
+
+  /**
+   * Counts a result from a child process which has an error, as it was
+   * recorded in the other process.
+   * @param result The result for the file or entry.
+   */
+  private void countError(InvestigationResult result)
+  {
+    if (result.getError() != null)
+    {
+      errors.incrementAndGet();
+      metrics.countError(result.isTimedOut());
+      if (result.isTimedOut())
+      {
+        timeouts.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Detects the MIME type of a file or archive entry and extracts its metadata
+   * and language into the given result.
+   * <p>The MIME type is detected from the start of the stream, which is then
+   * reset and passed on to be parsed with the type already known.
+   * <p>In detection-only mode the detector can't read beyond the prefix set in
+   * the <code>ScanOptions</code>, and only the MIME types chosen there are
+   * parsed or expanded. Other files and entries are recorded with their type
+   * and no language, and the rest of their content is never read.
+   * <p>Documents are parsed with the time limit set for their MIME type in
+   * the <code>ScanOptions</code>. A document which takes longer is abandoned
+   * and a <code>TimedParser.TimeoutException</code> thrown.
+   * <p>Archive formats are passed to the <code>expand()</code> method which
+   * uses Apache Commons Compress to investigate each entry in turn, provided
+   * the archive isn't nested more deeply than the <code>ScanOptions</code>
+   * allow. Currently supported MIME types for this are:
+   * <uL>
+   *   <li>archive/zip</li>
+   *   <li>archive/x-cpio</li>
+   *   <li>archive/x-gtar</li>
+   *   <li>archive/x-bzip</li>
+   *   <li>archive/x-bzip2</li>
+   *   <li>archive/x-archive</li>
+   *   <li>archive/x-tar</li>
+   * </ul>
+   * <p>This method makes use of code which has been publicly available through
+   * the Apache website.
+   * @param bis The content, positioned at its start, which must support
+   * <code>mark()</code> and <code>reset()</code>
+   * @param result The result for the file or entry
+   * @param depth The number of archives the content is nested within
+   * @param guard The guard for the file being investigated
+   * @throws IOException If the content can't be read.
+   * @throws SAXException If the content can't be parsed.
+   * @throws TikaException If the content can't be parsed.
+   */
+  private void analyse(InputStream bis, InvestigationResult result, int depth,
+      ExpansionGuard guard) throws IOException, SAXException, TikaException
+  {
+    // Create a new instances of Metadata to store the file's meta-data.
+    Metadata meta = new Metadata();
+    meta.set(Metadata.RESOURCE_NAME_KEY, result.getName());
+    if (result.getSize() >= 0)
+    {
+      meta.set(Metadata.CONTENT_LENGTH, Long.toString(result.getSize()));
+    }
+    LanguageDetector ld = null;
+    // We use AutoDetectParser as we cannot be certain of the content. It is
+    // shared by all threads rather than being created for every file.
+    AutoDetectParser adp = registry.getParser();
+    Detector d = registry.getDetector();
+    // The MediaType class is used to contain the MIME type information
+    long start = System.nanoTime();
+    MediaType mt;
+    if (options.isDetectOnly())
+    {
+      // The detector is stopped at the end of the prefix and the stream reset
+      int prefix = options.getDetectPrefix();
+      bis.mark(prefix);
+      mt = d.detect(new BufferedInputStream(new PrefixInputStream(bis, prefix)), meta);
+      bis.reset();
+    }
+    else
+    {
+      mt = d.detect(bis, meta);
+    }
+    long detected = System.nanoTime();
+    metrics.record(ScanMetrics.DETECT, detected - start);
+    result.setMediaType(mt);
+    // Store the type so the parser re-uses it rather than detecting it again
+    meta.set(Metadata.CONTENT_TYPE, mt.toString());
+    if (options.isDetectOnly() && !options.isFullParse(mt))
+    {
+      // Only the type is wanted
+    }
+    else if (getArchiverName(mt) != null)
+    {
+      if (depth < options.getArchiveDepth())
+      {
+        // Archives are expanded by Commons Compress from the same stream
+        expand(bis, mt, result, depth, guard);
+        metrics.record(ScanMetrics.EXPAND, System.nanoTime() - detected);
+      }
+      else if (log != null)
+      {
+        log.println("Archive nested too deeply to expand: " + result.getPath());
+      }
+    }
+    else
+    {
+      // The text isn't kept so large documents can't exhaust the heap
+      ld = new LanguageDetector(registry.getLanguageModel(),
+          options.getLanguageSample(), options.getLanguageMargin());
+      // We parse the document to extract the metadata into the metadata object,
+      // giving up if it takes longer than the limit for its MIME type
+      timer.parse(adp, bis, new LanguageSampleHandler(ld), meta, new ParseContext(), options.getParseTimeout(mt));
+      metrics.record(ScanMetrics.PARSE, System.nanoTime() - detected);
+    }
+    result.setMetadata(meta);
+    // The language was identified while the content was being extracted
+    result.setLanguage(ld == null ? "?" : ld.getLanguage());
+    /* The getLanguage method will return an ISO 639-1 identifier, or "?" if
+     * the document had no text (or wasn't parsed).
+     * Supported languages in Tika 0.9 included:
+     * Danish (da)      * Dutch (nl)        * English (en)
+     * Estonian (et)    * Finnish (fi)      * French (fr)
+     * German (de)      * Greek (el)        * Hungarian (hu)
+     * Icelandic (is)   * Italian (it)      * Norwegian - Bokmål (nb)
+     * Polish (pl)      * Portuguese (pt)   * Russian (ru)
+     * Spanish (es)     * Swedish (sv)      * Thai (th)
+     * ----------------------------------------------------------------------------
+     * NOTE: Depending on the encoding of the document contents results may vary
+     * PDF files, for example, can return "et" instead of "en"
+     * where the sampled content is encoded characters.
+     */
+  }
+
+  /**
+   * Returns whether rows were written for the entries of a file as well as
+   * for the file itself. Such results can't stand in for the whole file.
+   * @param result The result for the file.
+   * @return <code>true</code> if the file is an archive which is expanded.
+   */
+  private boolean hasEntries(InvestigationResult result)
+  {
+    return options.getArchiveDepth() > 0 && result.getMediaType() != null
+        && getArchiverName(result.getMediaType()) != null;
+  }
+
+  /**
+   * Records why a file or archive entry couldn't be investigated. Documents
+   * which took too long to parse are marked as timed out.
+   * @param result The result for the file or entry.
+   * @param x The exception thrown while investigating it.
+   */
+  private void recordError(InvestigationResult result, Throwable x)
+  {
+    if (x instanceof TimedParser.TimeoutException)
+    {
+      result.setError(x.getMessage());
+      result.setTimedOut(true);
+      timeouts.incrementAndGet();
+      if (log != null)
+      {
+        log.println("Abandoned after " + ((TimedParser.TimeoutException) x).getLimit()
+            + " ms: " + result.getPath());
+      }
+    }
+    else
+    {
+      x.printStackTrace();
+      result.setError(x.toString());
+    }
+    errors.incrementAndGet();
+    metrics.countError(result.isTimedOut());
+  }
+
+  /**
+   * Records a file whose investigation failed unexpectedly, so that a
+   * <code>StagedPipeline</code> can go on to the next file. This is called by
+   * its parser threads.
+   * @param g The file
+   * @param attrs The attributes read when the file was found
+   * @param t What was thrown while investigating the file
+   */
+  void failed(Path g, BasicFileAttributes attrs, Throwable t)
+  {
+    InvestigationResult result = new InvestigationResult(g.getFileName().toString(),
+        g.toString(), attrs.size());
+    recordError(result, t);
+    sink.write(result);
+  }
+
+  /**
+   * Checks whether the result recorded in the index can be used in place of
+   * investigating the file, passing it on if so. When content hashes are
+   * enabled the file is read to confirm that its hash still matches.
+   * @param g The file to investigate
+   * @param attrs The attributes read when the file was found
+   * @param cached The result from the index, or <code>null</code> if the file
+   * is new or its size or modification time have changed.
+   * @return <code>true</code> if the recorded result was used.
+   */
+  private boolean isUnchanged(Path g, BasicFileAttributes attrs, InvestigationResult cached)
+  {
+    if (cached == null || hasEntries(cached))
+    {
+      // The entries of archives aren't indexed, so archives are expanded again
+      return false;
+    }
+    if (options.isIndexHash() && cached.getDigest() != null)
+    {
+      try
+      {
+        if (!Arrays.equals(cached.getDigest(), hash(g)))
+        {
+          return false;
+        }
+        // The file was read to hash it, so its bytes are counted as read
+        bytes.addAndGet(attrs.size());
+        metrics.addBytes(attrs.size());
+      }
+      catch (IOException ioX)
+      {
+        return false;
+      }
+      catch (NoSuchAlgorithmException nsaX)
+      {
+        return false;
+      }
+    }
+    else
+    {
+      skippedBytes.addAndGet(attrs.size());
+    }
+    if (log != null)
+    {
+      log.println("Unchanged since the last scan: " + g.toAbsolutePath());
+    }
+    sink.write(cached);
+    return true;
+  }
+
+  /**
+   * Calculates the hash of a file's content, as stored in the index and used
+   * to recognise copies of a file. Large files are hashed straight from a
+   * mapping of the file.
+   * @param g The file.
+   * @return The MD5 hash of the file.
+   * @throws IOException If the file can't be read.
+   * @throws NoSuchAlgorithmException If MD5 isn't available.
+   */
+  private byte[] hash(Path g) throws IOException, NoSuchAlgorithmException
+  {
+    MessageDigest md = MessageDigest.getInstance("MD5");
+    if (isMapped(Files.size(g)))
+    {
+      try (MappedInputStream mis = new MappedInputStream(g))
+      {
+        mis.setDigest(md);
+        mis.skip(Long.MAX_VALUE);
+      }
+    }
+    else
+    {
+      try (InputStream is = new DigestInputStream(Files.newInputStream(g), md))
+      {
+        drain(is);
+      }
+    }
+    return md.digest();
+  }
+
+  /**
+   * Returns whether a file is large enough to be read through a mapping.
+   * @param size The size of the file in bytes.
+   * @return <code>true</code> if the file should be mapped.
+   * @see tikatest.ScanOptions#setMapThreshold(long)
+   */
+  boolean isMapped(long size)
+  {
+    long threshold = options.getMapThreshold();
+    return threshold > 0 && size > threshold;
+  }
+
+  /**
+   * Reads a stream to the end, discarding the bytes.
+   * @param is The stream to read.
+   * @throws IOException If the stream can't be read.
+   */
+  private static void drain(InputStream is) throws IOException
+  {
+    byte[] buffer = new byte[65536];
+    while (is.read(buffer) >= 0)
+    {
+    }
+  }
+
+  /**
+   * Investigates files starting from the directory specified in the
+   * constructor. If a single file was given then only it is investigated.
+   * <p>If the <code>ScanOptions</code> allow more than one thread then the
+   * directory tree is investigated in parallel, through a
+   * <code>StagedPipeline</code> if they ask for one, otherwise files are
+   * investigated one at a time. The method returns once every file has been
+   * investigated.
+   * <p>If the <code>ScanOptions</code> ask for the tree to be watched, the
+   * directories are registered with a <code>DirectoryWatcher</code> before the
+   * tree is walked, so changes made during a long investigation are queued and
+   * investigated once <code>watch()</code> is called.
+   */
+  public void run()
+  {
+    long start = System.nanoTime();
+    // Wait for the shared parsers if they are still being loaded
+    registry = ParserRegistry.getInstance();
+    timer = new TimedParser();
+    if (!Files.isDirectory(startFolder))
+    {
+      investigateFile(startFolder);
+      timer.shutdown();
+      elapsed = System.nanoTime() - start;
+      return;
+    }
+    if (options.isWatch())
+    {
+      startWatcher();
+    }
+    scan();
+    try
+    {
+      if (options.getParallelism() > 1 && options.isPipeline())
+      {
+        pipeline = new StagedPipeline(this, options);
+        pipeline.run(startFolder);
+      }
+      else if (options.getParallelism() > 1)
+      {
+        interrogateInParallel(startFolder);
+      }
+      else if (options.getSchedule() != ScanOptions.SCHEDULE_FOUND)
+      {
+        pending = new PriorityQueue<Runnable>(64,
+            new CostOrder(options.getSchedule() == ScanOptions.SCHEDULE_LONGEST));
+        interrogate(startFolder);
+        // Investigate the files still waiting once the walk is finished
+        Runnable next = pending.poll();
+        while (next != null && !cancelled)
+        {
+          next.run();
+          next = pending.poll();
+        }
+        pending = null;
+      }
+      else
+      {
+        interrogate(startFolder);
+      }
+    }
+    finally
+    {
+      counter.stop();
+      timer.shutdown();
+    }
+    elapsed = System.nanoTime() - start;
+    if (log != null)
+    {
+      log.println(registry.getSavingSummary(progress.get()));
+    }
+  }
+
+  /**
+   * Returns the pipeline used by <code>run()</code>, whose summary shows how
+   * long each stage waited for the others.
+   * @return The pipeline, or <code>null</code> if the investigation wasn't pipelined.
+   */
+  public StagedPipeline getPipeline()
+  {
+    return pipeline;
+  }
+
+  /**
+   * Investigates a list of files which have already been found, rather than
+   * walking the directory specified in the constructor. This is used by a
+   * <code>ShardWorker</code>, which lists each directory it is given itself
+   * so it can hand the sub-directories back to its coordinator first. The
+   * files are investigated one at a time.
+   * @param files The files to investigate.
+   * @param attrs The attributes read when each file was found.
+   * @see tikatest.ShardWorker
+   */
+  public void run(List<Path> files, List<BasicFileAttributes> attrs)
+  {
+    long start = System.nanoTime();
+    registry = ParserRegistry.getInstance();
+    timer = new TimedParser();
+    try
+    {
+      for (int i = 0; i < files.size() && !cancelled; i++)
+      {
+        progress.incrementAndGet();
+        investigate(files.get(i), attrs.get(i));
+      }
+    }
+    finally
+    {
+      timer.shutdown();
+    }
+    elapsed = System.nanoTime() - start;
+  }
+
+  /**
+   * Watches the directory investigated by <code>run()</code> for changes,
+   * investigating files again as they are created or changed and writing a
+   * removal to the <code>ResultSink</code> for each file removed. Changes are
+   * investigated one at a time on the calling thread, so the cost depends on
+   * how often files change rather than on the size of the tree.
+   * <p>Changes made while <code>run()</code> was walking the tree are
+   * investigated first, if the <code>ScanOptions</code> asked for the tree to
+   * be watched; otherwise the tree is only watched from now on.
+   * <p>The method returns once the investigation is cancelled. Nothing is
+   * watched if a single file was investigated.
+   * @see tikatest.DirectoryWatcher
+   */
+  public void watch()
+  {
+    if (cancelled || !Files.isDirectory(startFolder))
+    {
+      return;
+    }
+    registry = ParserRegistry.getInstance();
+    timer = new TimedParser();
+    try
+    {
+      if (watcher == null)
+      {
+        startWatcher();
+      }
+      walked = progress.get();
+      watching = true;
+      // The investigation may have been cancelled before the watcher was set
+      if (watcher != null && !cancelled)
+      {
+        watcher.run();
+      }
+    }
+    finally
+    {
+      timer.shutdown();
+    }
+  }
+
+  /**
+   * Registers the tree with a new <code>DirectoryWatcher</code>, which queues
+   * the changes until <code>watch()</code> runs it.
+   */
+  private void startWatcher()
+  {
+    try
+    {
+      watcher = new DirectoryWatcher(startFolder, this, options.getWatchDelay());
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns whether the directory is being watched for changes.
+   * @return <code>true</code> while <code>watch()</code> is running.
+   */
+  public boolean isWatching()
+  {
+    return watching && !cancelled;
+  }
+
+  /**
+   * Returns the number of files investigated by <code>run()</code>, before
+   * the directory was watched for changes.
+   * @return The number of files.
+   */
+  public int getWalked()
+  {
+    return walked;
+  }
+
+  /**
+   * Returns the number of files investigated again or removed while watching.
+   * @return The number of changes.
+   */
+  public int getChanges()
+  {
+    return changes.get();
+  }
+
+  /**
+   * Investigates a file which has been created or changed while watching.
+   * Any earlier result for the file is removed first, as a file created by
+   * renaming another over it may already have one. This is called by the
+   * <code>DirectoryWatcher</code>.
+   * @param g The file
+   */
+  void changed(Path g)
+  {
+    BasicFileAttributes attrs;
+    try
+    {
+      attrs = Files.readAttributes(g, BasicFileAttributes.class);
+    }
+    catch (IOException ioX)
+    {
+      // The file has been removed again, which will be reported separately
+      return;
+    }
+    if (cancelled || !attrs.isRegularFile())
+    {
+      return;
+    }
+    // Removing a file which has no result does nothing
+    sink.write(InvestigationResult.removed(g.getFileName().toString(), g.toString()));
+    changes.incrementAndGet();
+    progress.incrementAndGet();
+    investigate(g, attrs);
+    sink.flush();
+  }
+
+  /**
+   * Reports a file or directory removed while watching. This is called by the
+   * <code>DirectoryWatcher</code>.
+   * @param g The file or directory
+   */
+  void removed(Path g)
+  {
+    changes.incrementAndGet();
+    sink.write(InvestigationResult.removed(g.getFileName().toString(), g.toString()));
+    sink.flush();
+  }
+
+  /**
+   * Investigates a single file given in place of a directory.
+   * @param g The file to investigate
+   */
+  private void investigateFile(Path g)
+  {
+    try
+    {
+      BasicFileAttributes attrs = Files.readAttributes(g, BasicFileAttributes.class);
+      progress.incrementAndGet();
+      investigate(g, attrs);
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+  
+  /**
+   * Returns the name of the Commons Compress archiver which reads the given
+   * MIME type, as supported by the PackageParser in Tika.
+   * <p>Compressed types (<code>x-bzip</code> and <code>x-bzip2</code>) return
+   * <code>"bzip2"</code>; the archive held within them is detected once they
+   * have been decompressed.
+   * @param mt The detected MIME type
+   * @return The archiver name or <code>null</code> if the type isn't an archive.
+   */
+  private String getArchiverName(MediaType mt)
+  {
+    String subtype = mt.getSubtype();
+    if (subtype.equals("zip"))
+    {
+      return ArchiveStreamFactory.ZIP;
+    }
+    else if (subtype.equals("x-cpio"))
+    {
+      return ArchiveStreamFactory.CPIO;
+    }
+    else if (subtype.equals("x-gtar") || subtype.equals("x-tar"))
+    {
+      return ArchiveStreamFactory.TAR;
+    }
+    else if (subtype.equals("x-archive"))
+    {
+      return ArchiveStreamFactory.AR;
+    }
+    else if (subtype.equals("x-bzip") || subtype.equals("x-bzip2"))
+    {
+      return CompressorStreamFactory.BZIP2;
+    }
+    return null;
+  }
+
+  /**
+   * Takes a file (or entry) which has already been detected as a supported
+   * archive and investigates each of its entries.
+   * <p>The detected type selects the archiver, so the stream doesn't need to be
+   * examined again by Commons Compress. Entries are read straight from the
+   * archive stream and never extracted, so only one entry at each level of
+   * nesting is held open at a time. Compressed files are decompressed on the
+   * fly and their content investigated as a single entry.
+   * <p>A ZIP file on disk (rather than nested in another archive) is instead
+   * listed from its central directory through <code>listZip()</code>, so the
+   * stream is only read if the file is being hashed.
+   * <p>This method makes use of code which has been publicly available through
+   * the Apache website.
+   * @param bis The archive to be inspected, positioned at its start
+   * @param mt The MIME type detected for the archive
+   * @param archive The result for the archive
+   * @param depth The number of archives this archive is nested within
+   * @param guard The guard for the file being investigated
+   * @throws IOException If the archive can't be read or expands too far.
+   * @see java.io.BufferedInputStream
+   */
+  private void expand(InputStream bis, MediaType mt, InvestigationResult archive,
+      int depth, ExpansionGuard guard) throws IOException
+  {
+    String archiver = getArchiverName(mt);
+    if (archiver.equals(CompressorStreamFactory.BZIP2))
+    {
+      InputStream decompressed;
+      try
+      {
+        decompressed = new CompressorStreamFactory().createCompressorInputStream(archiver, bis);
+      }
+      catch (CompressorException cX)
+      {
+        throw new IOException(cX.getMessage(), cX);
+      }
+      // The content is named after the file without its extension e.g. a.tar.bz2 holds a.tar
+      String name = archive.getName();
+      int dot = name.lastIndexOf('.');
+      if (dot > 0)
+      {
+        name = name.substring(0, dot);
+      }
+      investigateEntry(decompressed, name, -1, archive, depth, guard, true);
+      return;
+    }
+    if (archiver.equals(ArchiveStreamFactory.ZIP) && depth == 0 && listZip(archive, guard))
+    {
+      return;
+    }
+    ArchiveInputStream aisInput;
+    try
+    {
+      // File type is a known archive type and we can work with it (fingers crossed)
+      aisInput = new ArchiveStreamFactory().createArchiveInputStream(archiver, bis);
+    }
+    catch (ArchiveException aX)
+    {
+      throw new IOException(aX.getMessage(), aX);
+    }
+    ArchiveEntry aeFile = aisInput.getNextEntry();
+    while (aeFile != null && !cancelled)
+    {
+      if (!aeFile.isDirectory())
+      {
+        investigateEntry(aisInput, aeFile.getName(), aeFile.getSize(), archive, depth, guard, true);
+      }
+      aeFile = aisInput.getNextEntry();
+    }
+  }
+
+  /**
+   * Investigates the entries of a ZIP file on disk by reading its central
+   * directory through a seekable channel, so listing the archive costs the
+   * same however large its entries are. Each entry is opened only when it is
+   * investigated, and only as much of it as the detector and parser want is
+   * read and decompressed, e.g. just the prefix in detection-only mode.
+   * <p>Entries are visited in the order they are stored so the file is still
+   * read from start to end.
+   * @param archive The result for the ZIP file, whose path is the file on disk
+   * @param guard The guard for the file being investigated
+   * @return <code>true</code> if the entries were investigated, or
+   * <code>false</code> if the central directory couldn't be read (e.g. the
+   * file is truncated) and the archive should be streamed instead.
+   * @throws IOException If an entry can't be read or the archive expands too far.
+   * @see org.apache.commons.compress.archivers.zip.ZipFile
+   */
+  private boolean listZip(InvestigationResult archive, ExpansionGuard guard) throws IOException
+  {
+    ZipFile zf;
+    try
+    {
+      // At the top level the path of the result is the path of the file. The
+      // channel is closed again if the central directory can't be read
+      zf = ZipFile.builder().setPath(Paths.get(archive.getPath())).get();
+    }
+    catch (IOException ioX)
+    {
+      if (log != null)
+      {
+        log.println("Reading ZIP file as a stream (" + ioX.getMessage() + "): "
+            + archive.getPath());
+      }
+      return false;
+    }
+    try
+    {
+      Enumeration<ZipArchiveEntry> entries = zf.getEntriesInPhysicalOrder();
+      while (entries.hasMoreElements() && !cancelled)
+      {
+        ZipArchiveEntry zae = entries.nextElement();
+        if (zae.isDirectory())
+        {
+          continue;
+        }
+        if (guard.isAbandoned())
+        {
+          // The central directory still lists the entries which won't be read
+          InvestigationResult skipped = getEntryResult(zae.getName(), zae.getSize(), archive);
+          skipped.setError("Skipped: " + guard.exceeded().getMessage());
+          errors.incrementAndGet();
+          metrics.countError(false);
+          sink.write(skipped);
+          continue;
+        }
+        try (InputStream in = zf.getInputStream(zae))
+        {
+          investigateEntry(in, zae.getName(), zae.getSize(), archive, 0, guard, false);
+        }
+        catch (IOException ioX)
+        {
+          if (!guard.isAbandoned())
+          {
+            throw ioX;
+          }
+        }
+      }
+    }
+    finally
+    {
+      zf.close();
+    }
+    if (guard.isAbandoned())
+    {
+      throw guard.exceeded();
+    }
+    return true;
+  }
+
+  /**
+   * Investigates a single entry of an archive as if it were a file and passes
+   * its result to the <code>ResultSink</code>. The path of the entry is the
+   * path of the archive followed by "!/" and the name of the entry.
+   * <p>An entry which can't be parsed is reported with an error and the rest
+   * of the archive is still investigated, unless the archive has expanded too
+   * far in which case the whole archive is abandoned. The archive is also
+   * abandoned once an entry times out: its parser may still be reading the
+   * entry on another thread, so neither the entry nor the archive can safely
+   * be read any further.
+   * @param in The archive, positioned at the start of the entry
+   * @param entryName The name of the entry within the archive
+   * @param size The size of the entry, or -1 if the archive doesn't record it
+   * @param archive The result for the archive holding the entry
+   * @param depth The number of archives the archive is nested within
+   * @param guard The guard for the file being investigated
+   * @param streamed <code>true</code> if the entry is read from the archive's
+   * stream, so the rest of it must be read to reach the next entry
+   * @throws IOException If the archive can't be read, expands too far or is
+   * abandoned.
+   */
+  private void investigateEntry(InputStream in, String entryName, long size,
+      InvestigationResult archive, int depth, ExpansionGuard guard, boolean streamed)
+      throws IOException
+  {
+    InvestigationResult result = getEntryResult(entryName, size, archive);
+    EntryInputStream entry = new EntryInputStream(in, guard);
+    long start = System.nanoTime();
+    try
+    {
+      analyse(new BufferedInputStream(entry), result, depth + 1, guard);
+    }
+    catch (Exception x)
+    {
+      if (guard.isTripped())
+      {
+        // The parser may have wrapped the exception, so it is thrown again
+        throw guard.exceeded();
+      }
+      recordError(result, x);
+    }
+    metrics.record(result.getMediaType(), System.nanoTime() - start, true);
+    if (result.isTimedOut())
+    {
+      sink.write(result);
+      guard.abandon(result.getPath());
+      throw guard.exceeded();
+    }
+    if (streamed || size < 0)
+    {
+      // Read the rest of the entry so every byte counts towards the limit
+      drain(entry);
+    }
+    if (size < 0)
+    {
+      result.setSize(entry.getCount());
+    }
+    sink.write(result);
+  }
+
+  /**
+   * Creates the result for an archive entry, named after the last segment of
+   * its name.
+   * @param entryName The name of the entry within the archive
+   * @param size The size of the entry, or -1 if the archive doesn't record it
+   * @param archive The result for the archive holding the entry
+   * @return The result, with only its name, path and size set.
+   */
+  private static InvestigationResult getEntryResult(String entryName, long size,
+      InvestigationResult archive)
+  {
+    String[] segments = entryName.split("\\/");
+    String filename = "";
+    for(String segment: segments)
+    {
+      filename = segment;
+    }
+    return new InvestigationResult(filename, archive.getPath() + "!/" + entryName, size);
+  }
+
+  /**
+   * A file found by the directory walk and waiting to be investigated, with
+   * the time it is expected to take.
+   */
+  private class ScheduledFile implements Runnable
+  {
+    private Path g;
+    private BasicFileAttributes attrs;
+    private double cost;
+    private long sequence;
+
+    ScheduledFile(Path p, BasicFileAttributes bfa)
+    {
+      g = p;
+      attrs = bfa;
+      if (options.getSchedule() != ScanOptions.SCHEDULE_FOUND)
+      {
+        cost = options.getCostModel().estimate(g.getFileName().toString(), attrs.size());
+      }
+      sequence = found.getAndIncrement();
+    }
+
+    public void run()
+    {
+      if (cancelled)
+      {
+        // Files still queued when the investigation is cancelled are skipped
+        return;
+      }
+      progress.incrementAndGet();
+      investigate(g, attrs);
+    }
+  }
+
+  /**
+   * Orders waiting files by their estimated cost, cheapest or dearest first,
+   * and then in the order they were found.
+   */
+  private static class CostOrder implements Comparator<Runnable>
+  {
+    private boolean longestFirst;
+
+    CostOrder(boolean longest)
+    {
+      longestFirst = longest;
+    }
+
+    public int compare(Runnable r1, Runnable r2)
+    {
+      ScheduledFile f1 = (ScheduledFile) r1;
+      ScheduledFile f2 = (ScheduledFile) r2;
+      int order = longestFirst ? Double.compare(f2.cost, f1.cost)
+          : Double.compare(f1.cost, f2.cost);
+      if (order == 0)
+      {
+        order = f1.sequence < f2.sequence ? -1 : (f1.sequence == f2.sequence ? 0 : 1);
+      }
+      return order;
+    }
+  }
+
+  /**
+   * A priority queue for the parser threads which refuses files once it holds
+   * the schedule window, so that the thread pool hands them back to the walk.
+   */
+  private static class ScheduleQueue extends PriorityBlockingQueue<Runnable>
+  {
+    private int capacity;
+
+    ScheduleQueue(int window, Comparator<Runnable> order)
+    {
+      super(64, order);
+      capacity = window > 0 ? window : Integer.MAX_VALUE;
+    }
+
+    public boolean offer(Runnable r)
+    {
+      if (size() >= capacity)
+      {
+        return false;
+      }
+      return super.offer(r);
+    }
+
+    /**
+     * Adds a file however many are waiting.
+     * @param r The file.
+     */
+    void force(Runnable r)
+    {
+      super.offer(r);
+    }
+  }
+
+  /**
+   * A stream which ends after a number of bytes, so that the detector can't
+   * read more of a file than the prefix allowed in detection-only mode.
+   */
+  private static class PrefixInputStream extends FilterInputStream
+  {
+    private long remaining;
+
+    PrefixInputStream(InputStream in, long limit)
+    {
+      super(in);
+      remaining = limit;
+    }
+
+    public int read() throws IOException
+    {
+      if (remaining <= 0)
+      {
+        return -1;
+      }
+      int b = in.read();
+      if (b >= 0)
+      {
+        remaining--;
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      if (remaining <= 0)
+      {
+        return -1;
+      }
+      int n = in.read(b, off, (int) Math.min(len, remaining));
+      if (n > 0)
+      {
+        remaining = remaining - n;
+      }
+      return n;
+    }
+
+    public long skip(long n) throws IOException
+    {
+      long skipped = in.skip(Math.min(n, remaining));
+      remaining = remaining - skipped;
+      return skipped;
+    }
+
+    public int available() throws IOException
+    {
+      return (int) Math.min(in.available(), remaining);
+    }
+
+    public boolean markSupported()
+    {
+      return false;
+    }
+
+    public void close()
+    {
+      // The underlying stream is reset and used again
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,290 @@
+/* Class name: InvestigationResult
+ * File name:  InvestigationResult.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.005  17-Oct-2026 Added results recording that a file has been removed.
+ * 0.004  17-Oct-2026 Added the timed out flag.
+ * 0.003  17-Oct-2026 The size may be set once an archive entry has been read.
+ * 0.002  17-Oct-2026 Added the content hash.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.util.Map;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class holds what was found when a single file was investigated.
+ * <p>It is passed to each <code>ResultSink</code>, which may show it in the
+ * GUI table or write it out as a record. If the file couldn't be investigated
+ * then the error is set and the MIME type, metadata and language may be missing.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.005
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ResultSink
+ */
+public class InvestigationResult
+{
+  private String name;
+  private String path;
+  private long size;
+  private MediaType mediaType;
+  private Metadata metadata;
+  private String language;
+  private String error;
+  private byte[] digest;
+  private boolean timedOut;
+  private boolean removed;
+
+  /**
+   * Instantiate the class for a given file.
+   * @param fileName The name of the file.
+   * @param filePath The path of the file.
+   * @param fileSize The size of the file in bytes.
+   */
+  public InvestigationResult(String fileName, String filePath, long fileSize)
+  {
+    name = fileName;
+    path = filePath;
+    size = fileSize;
+    language = "?";
+  }
+
+  /**
+   * Returns the name of the file.
+   * @return The file name.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Returns the path of the file.
+   * @return The file path.
+   */
+  public String getPath()
+  {
+    return path;
+  }
+
+  /**
+   * Returns the size of the file.
+   * @return The size in bytes.
+   */
+  public long getSize()
+  {
+    return size;
+  }
+
+  /**
+   * Sets the size of the file, for archive entries whose size is only known
+   * once they have been read.
+   * @param fileSize The size in bytes.
+   */
+  public void setSize(long fileSize)
+  {
+    size = fileSize;
+  }
+
+  /**
+   * Returns the detected MIME type of the file.
+   * @return The MIME type or <code>null</code> if it wasn't detected.
+   */
+  public MediaType getMediaType()
+  {
+    return mediaType;
+  }
+
+  /**
+   * Sets the detected MIME type of the file.
+   * @param mt The MIME type.
+   */
+  public void setMediaType(MediaType mt)
+  {
+    mediaType = mt;
+  }
+
+  /**
+   * Returns the metadata extracted from the file.
+   * @return The metadata or <code>null</code> if none was extracted.
+   */
+  public Metadata getMetadata()
+  {
+    return metadata;
+  }
+
+  /**
+   * Sets the metadata extracted from the file.
+   * @param meta The metadata.
+   */
+  public void setMetadata(Metadata meta)
+  {
+    metadata = meta;
+  }
+
+  /**
+   * Returns the language of the file's content.
+   * @return The ISO 639-1 identifier or "?" if it isn't known.
+   */
+  public String getLanguage()
+  {
+    return language;
+  }
+
+  /**
+   * Sets the language of the file's content.
+   * @param lang The ISO 639-1 identifier.
+   */
+  public void setLanguage(String lang)
+  {
+    language = lang;
+  }
+
+  /**
+   * Returns why the file couldn't be investigated.
+   * @return The error message or <code>null</code> if there was no error.
+   */
+  public String getError()
+  {
+    return error;
+  }
+
+  /**
+   * Records that the file couldn't be investigated.
+   * @param message A description of the error.
+   */
+  public void setError(String message)
+  {
+    error = message;
+  }
+
+  /**
+   * Creates a result recording that a file has been removed, or changed and
+   * is about to be investigated again, so that the rows for the file and any
+   * archive entries or files beneath it can be dropped.
+   * @param fileName The name of the file.
+   * @param filePath The path of the file.
+   * @return The result.
+   */
+  public static InvestigationResult removed(String fileName, String filePath)
+  {
+    InvestigationResult result = new InvestigationResult(fileName, filePath, -1);
+    result.removed = true;
+    return result;
+  }
+
+  /**
+   * Returns whether this result only records that the file has been removed.
+   * @return <code>true</code> if the file has been removed.
+   */
+  public boolean isRemoved()
+  {
+    return removed;
+  }
+
+  /**
+   * Returns whether parsing the file was abandoned because it took too long.
+   * The error then describes the time limit.
+   * @return <code>true</code> if the file timed out.
+   */
+  public boolean isTimedOut()
+  {
+    return timedOut;
+  }
+
+  /**
+   * Records whether parsing the file was abandoned because it took too long.
+   * @param timeout <code>true</code> if the file timed out.
+   */
+  public void setTimedOut(boolean timeout)
+  {
+    timedOut = timeout;
+  }
+
+  /**
+   * Returns the hash of the file's content, if it was calculated.
+   * @return The hash or <code>null</code> if it wasn't calculated.
+   */
+  public byte[] getDigest()
+  {
+    return digest;
+  }
+
+  /**
+   * Sets the hash of the file's content.
+   * @param hash The hash.
+   */
+  public void setDigest(byte[] hash)
+  {
+    digest = hash;
+  }
+
+  /**
+   * Returns whether the MIME type has any parameters, such as a character set.
+   * @return <code>true</code> if parameters are present.
+   */
+  public boolean hasParameters()
+  {
+    return mediaType != null && mediaType.getParameters().size() > 0;
+  }
+
+  /**
+   * Returns the parameters of the MIME type.
+   * @return The parameters, which may be empty.
+   */
+  public Map<String,String> getParameters()
+  {
+    return mediaType.getParameters();
+  }
+
+  /**
+   * Returns whether any metadata was extracted from the file.
+   * @return <code>true</code> if metadata is present.
+   */
+  public boolean hasMetadata()
+  {
+    return metadata != null && metadata.size() > 0;
+  }
+
+  /**
+   * Creates a row for the GenericTable (JTable) in the GUI. The columns are
+   * the file name, path, MIME type, main type, subtype, whether parameters and
+   * metadata are present and the language.
+   * @return An object array corresponding to the columns of the table.
+   */
+  public Object[] toRow()
+  {
+    Object[] row = new Object[]{"?","?","?","?","?","No","No","?"};
+    row[0] = name;
+    row[1] = path;
+    if (mediaType != null)
+    {
+      row[2] = mediaType.toString();   // The whole MIME type e.g. application/zip
+      row[3] = mediaType.getType();    // The MIME main type e.g. application
+      row[4] = mediaType.getSubtype(); // The MIME subtype e.g. zip
+    }
+    if (hasParameters())
+    {
+      row[5] = "Yes";
+    }
+    if (hasMetadata())
+    {
+      row[6] = "Yes";
+    }
+    row[7] = language;
+    return row;
+  }
+}
@@ -0,0 +1,109 @@
+/* Class name: InvestigationTask
+ * File name:  InvestigationTask.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.005  17-Oct-2026 Entries skipped in the walk are noted in the log rather than always printed.
+ * 0.004  17-Oct-2026 Entries whose attributes can't be read are skipped without ending the listing.
+ * 0.003  17-Oct-2026 Stops walking once the investigation is cancelled.
+ * 0.002  17-Oct-2026 Directories are read lazily with java.nio.file.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class walks a single directory as part of a parallel investigation.
+ * <p>Each sub-directory found becomes a new task which is forked into the same
+ * <code>ForkJoinPool</code>, allowing idle threads to steal work from busy
+ * ones. Files are not parsed here but handed back to the owning
+ * <code>Investigation</code> which queues them for its parser threads.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.005
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.Investigation
+ */
+public class InvestigationTask extends RecursiveAction
+{
+  private Path folder;
+  private Investigation owner;
+
+  /**
+   * Instantiate the class and initialise the variables.
+   * @param f The directory to be walked.
+   * @param inv The investigation which the files found are passed to.
+   */
+  public InvestigationTask(Path f, Investigation inv)
+  {
+    folder = f;
+    owner = inv;
+  }
+
+  /**
+   * Lists the directory, submitting files to the parser threads and forking
+   * a new task for each sub-directory. Entries are read lazily from a
+   * <code>DirectoryStream</code> together with their attributes. The method
+   * returns once all of the sub-directories have been walked.
+   */
+  protected void compute()
+  {
+    ArrayList<InvestigationTask> subTasks = new ArrayList<InvestigationTask>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(folder))
+    {
+      for (Path g : ds)
+      {
+        if (owner.isCancelled())
+        {
+          break;
+        }
+        BasicFileAttributes attrs;
+        try
+        {
+          attrs = Files.readAttributes(g, BasicFileAttributes.class);
+        }
+        catch (IOException ioX)
+        {
+          owner.skipped(g, ioX);
+          continue;
+        }
+        if (attrs.isDirectory())
+        {
+          InvestigationTask sub = new InvestigationTask(g, owner);
+          // Fork straight away so idle threads can take the sub-directory
+          sub.fork();
+          subTasks.add(sub);
+        }
+        else
+        {
+          owner.submit(g, attrs);
+        }
+      }
+    }
+    catch (IOException ioX)
+    {
+      // The directory can't be read (permissions or it has been removed)
+      ioX.printStackTrace();
+    }
+    for (InvestigationTask sub : subTasks)
+    {
+      sub.join();
+    }
+  }
+}
@@ -0,0 +1,288 @@
+/* Class name: InvestigationWorker
+ * File name:  InvestigationWorker.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.007  17-Oct-2026 The watch status shows the files investigated before watching rather than subtracting the changes.
+ * 0.006  17-Oct-2026 The time remaining allows for the bytes skipped as unchanged.
+ * 0.005  17-Oct-2026 Documents which timed out get a row showing the timeout.
+ * 0.004  17-Oct-2026 The tree may be watched after the investigation, updating the affected rows.
+ * 0.003  17-Oct-2026 Results may also be passed to a sink which lists their details.
+ * 0.002  17-Oct-2026 Runs in the background and updates the table and progress at a fixed frame rate.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.swing.JLabel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * This class runs an <code>Investigation</code> for the GUI on a background
+ * thread, so the window remains responsive while files are investigated.
+ * <p>Rows for the files investigated are queued by the investigation's threads
+ * and added to the table by a Swing <code>Timer</code> a fixed number of times
+ * each second, however quickly files are found. The same timer updates a label
+ * with the number of files investigated, the rate in files and bytes per second
+ * and an estimate of the time remaining based on the background file count.
+ * <p>If the <code>ScanOptions</code> ask for the tree to be watched, the worker
+ * carries on once every file has been investigated, replacing the rows of
+ * files which change and removing those of files which are removed, until
+ * it is stopped.
+ * <p>The worker is started with <code>start()</code> and may be stopped early
+ * with <code>stop()</code>.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.007
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.Investigation
+ */
+public class InvestigationWorker extends SwingWorker<Void,Void> implements ResultSink, ActionListener
+{
+  /** The number of times each second the table and progress are updated */
+  private static final int FRAME_RATE = 10;
+  /** Shown in place of the type and language of a document which timed out */
+  private static final String TIMED_OUT = "Timed out";
+
+  private Investigation investigation;
+  private ColumnarTable table;
+  private JLabel status;
+  /** Also receives every result, e.g. to list the details on the console */
+  private ResultSink details;
+  /**
+   * Rows waiting to be added to the table on the Event Dispatch Thread, and
+   * the paths of files whose rows are to be removed
+   */
+  private ConcurrentLinkedQueue<Object> pending;
+  /** Whether the tree is watched once it has been investigated */
+  private boolean watch;
+  private Timer frameTimer;
+  private long startTime;
+
+  /**
+   * Instantiate the class and initialise the variables.
+   * @param f The base directory to be investigated.
+   * @param ct The table which the results are added to.
+   * @param progress The label which shows the progress of the investigation.
+   * @param so The settings to use for the investigation.
+   * @param rs A sink which also receives every result, or <code>null</code>.
+   * It is closed once the investigation has finished.
+   */
+  public InvestigationWorker(File f, ColumnarTable ct, JLabel progress, ScanOptions so,
+      ResultSink rs)
+  {
+    table = ct;
+    status = progress;
+    details = rs;
+    pending = new ConcurrentLinkedQueue<Object>();
+    investigation = new Investigation(f, this, so);
+    watch = so.isWatch();
+    if (watch)
+    {
+      // The path is the second column of each row
+      table.setPathIndex(1);
+    }
+    frameTimer = new Timer(1000 / FRAME_RATE, this);
+  }
+
+  /**
+   * Starts the investigation on a background thread and the timer which
+   * updates the table. This should be called on the Event Dispatch Thread.
+   */
+  public void start()
+  {
+    startTime = System.nanoTime();
+    status.setText("Starting...");
+    frameTimer.start();
+    execute();
+  }
+
+  /**
+   * Asks the investigation to stop. Files already being parsed are finished
+   * and their rows added to the table.
+   */
+  public void stop()
+  {
+    investigation.cancel();
+  }
+
+  /**
+   * Investigates files starting from the directory specified in the
+   * constructor. This is run on a background thread by <code>execute()</code>.
+   * @return Returns nothing.
+   */
+  protected Void doInBackground()
+  {
+    try
+    {
+      investigation.run();
+      if (watch)
+      {
+        investigation.watch();
+      }
+    }
+    finally
+    {
+      if (details != null)
+      {
+        details.close();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Queues the row for a file to be added to the table at the next update.
+   * This is called by the investigation's threads.
+   * @param result The details found for the file.
+   */
+  public void write(InvestigationResult result)
+  {
+    if (result.isRemoved())
+    {
+      pending.offer(result.getPath());
+    }
+    else if (result.getError() == null)
+    {
+      pending.offer(result.toRow());
+    }
+    else if (result.isTimedOut())
+    {
+      // Documents which took too long to parse still get a row, keeping any
+      // type detected before the parser was abandoned
+      Object[] row = result.toRow();
+      if (result.getMediaType() == null)
+      {
+        row[2] = TIMED_OUT;
+      }
+      row[7] = TIMED_OUT;
+      pending.offer(row);
+    }
+    if (details != null)
+    {
+      details.write(result);
+    }
+  }
+
+  /**
+   * Does nothing as rows are added to the table by the timer.
+   */
+  public void flush()
+  {
+  }
+
+  /**
+   * Called once the investigation has finished. Nothing needs to be closed.
+   */
+  public void close()
+  {
+  }
+
+  /**
+   * Adds the queued rows to the table and shows the progress. This is called
+   * by the timer on the Event Dispatch Thread.
+   * @param ae The event generated by the timer.
+   */
+  public void actionPerformed(ActionEvent ae)
+  {
+    addPendingRows();
+    if (investigation.isWatching())
+    {
+      status.setText(String.format("%,d files investigated, watching for changes (%,d so far)",
+          investigation.getWalked(), investigation.getChanges()));
+    }
+    else
+    {
+      status.setText(getProgressText());
+    }
+  }
+
+  /**
+   * Stops the timer, adds any remaining rows and shows the final totals once
+   * the investigation has finished. This is called on the Event Dispatch Thread.
+   */
+  protected void done()
+  {
+    frameTimer.stop();
+    addPendingRows();
+    double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 1e-9);
+    status.setText(String.format("%s %,d files (%,d errors) in %.1f s, %.1f files/s, %.2f MB/s",
+        investigation.isCancelled() ? "Cancelled after" : "Investigated",
+        investigation.getProgress(), investigation.getErrors(), seconds,
+        investigation.getProgress() / seconds, investigation.getBytes() / (1024.0 * 1024.0) / seconds));
+  }
+
+  /**
+   * Adds all of the queued rows to the table as a single batch, removing the
+   * rows of removed files in turn.
+   */
+  private void addPendingRows()
+  {
+    ArrayList<Object[]> batch = new ArrayList<Object[]>();
+    Object next = pending.poll();
+    while (next != null)
+    {
+      if (next instanceof String)
+      {
+        // Rows queued before the removal are added first
+        table.addRows(batch);
+        batch.clear();
+        table.removePath((String) next);
+      }
+      else
+      {
+        batch.add((Object[]) next);
+      }
+      next = pending.poll();
+    }
+    table.addRows(batch);
+  }
+
+  /**
+   * Describes the progress of the investigation so far. The time remaining is
+   * estimated from the bytes still to be investigated, as counted in the
+   * background, and is marked as approximate until the count is complete.
+   * @return The description.
+   */
+  private String getProgressText()
+  {
+    int files = investigation.getProgress();
+    long bytes = investigation.getBytes();
+    double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 1e-9);
+    double bytesPerSecond = bytes / seconds;
+    boolean counted = investigation.isFileCountComplete();
+    String eta = "?";
+    if (bytesPerSecond > 0)
+    {
+      long remaining = (long) ((investigation.getByteCount() - bytes
+          - investigation.getSkippedBytes()) / bytesPerSecond);
+      eta = String.format("%s%d:%02d", counted ? "" : "at least ", remaining / 60, remaining % 60);
+    }
+    return String.format("%,d of %s%,d files, %.1f files/s, %.2f MB/s, remaining %s",
+        files, counted ? "" : "at least ", investigation.getFileCount(),
+        files / seconds, bytesPerSecond / (1024.0 * 1024.0), eta);
+  }
+
+  /**
+   * Returns the investigation being run.
+   * @return The investigation.
+   */
+  public Investigation getInvestigation()
+  {
+    return investigation;
+  }
+}
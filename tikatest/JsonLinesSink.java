@@ -0,0 +1,233 @@
+/* Class name: JsonLinesSink
+ * File name:  JsonLinesSink.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.004  17-Oct-2026 Documented when an AsyncSink flushes the output.
+ * 0.003  17-Oct-2026 Records for files which timed out say so.
+ * 0.002  17-Oct-2026 Records are flushed by flush() rather than after each record.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * Writes each result as a single line of JSON (the JSON Lines format).
+ * <p>Every record holds the file's name, path, size, MIME type, parameters,
+ * language and metadata, along with any error. Records are buffered until
+ * <code>flush()</code> is called; when wrapped in an <code>AsyncSink</code>
+ * this happens after a number of records, at least once a second, and when
+ * no new results have arrived for a while, so the output can still be piped
+ * into another program while the investigation is running.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.004
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ResultSink
+ */
+public class JsonLinesSink implements ResultSink
+{
+  private Writer out;
+
+  /**
+   * Instantiate the class.
+   * @param w Where the records are written.
+   */
+  public JsonLinesSink(Writer w)
+  {
+    out = w;
+  }
+
+  /**
+   * Writes a result as a line of JSON.
+   * @param result The details found for the file.
+   */
+  public synchronized void write(InvestigationResult result)
+  {
+    try
+    {
+      out.write(toJson(result));
+      out.write('\n');
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes any buffered records.
+   */
+  public synchronized void flush()
+  {
+    try
+    {
+      out.flush();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Flushes and closes the output.
+   */
+  public synchronized void close()
+  {
+    try
+    {
+      out.close();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+  }
+
+  /**
+   * Converts a result into a JSON object.
+   * @param result The details found for the file.
+   * @return The JSON object without a trailing new line.
+   */
+  public static String toJson(InvestigationResult result)
+  {
+    StringBuilder sb = new StringBuilder(256);
+    sb.append("{\"name\":");
+    quote(sb, result.getName());
+    sb.append(",\"path\":");
+    quote(sb, result.getPath());
+    sb.append(",\"size\":").append(result.getSize());
+    if (result.getMediaType() != null)
+    {
+      sb.append(",\"mimeType\":");
+      quote(sb, result.getMediaType().toString());
+      sb.append(",\"type\":");
+      quote(sb, result.getMediaType().getType());
+      sb.append(",\"subtype\":");
+      quote(sb, result.getMediaType().getSubtype());
+      sb.append(",\"parameters\":{");
+      boolean first = true;
+      for (Map.Entry<String,String> e : result.getParameters().entrySet())
+      {
+        if (!first)
+        {
+          sb.append(',');
+        }
+        quote(sb, e.getKey());
+        sb.append(':');
+        quote(sb, e.getValue());
+        first = false;
+      }
+      sb.append('}');
+    }
+    sb.append(",\"language\":");
+    quote(sb, result.getLanguage());
+    Metadata meta = result.getMetadata();
+    if (meta != null)
+    {
+      sb.append(",\"metadata\":{");
+      boolean first = true;
+      for (String name : meta.names())
+      {
+        if (!first)
+        {
+          sb.append(',');
+        }
+        quote(sb, name);
+        sb.append(':');
+        String[] values = meta.getValues(name);
+        if (values.length == 1)
+        {
+          quote(sb, values[0]);
+        }
+        else
+        {
+          sb.append('[');
+          for (int i = 0; i < values.length; i++)
+          {
+            if (i > 0)
+            {
+              sb.append(',');
+            }
+            quote(sb, values[i]);
+          }
+          sb.append(']');
+        }
+        first = false;
+      }
+      sb.append('}');
+    }
+    if (result.getError() != null)
+    {
+      sb.append(",\"error\":");
+      quote(sb, result.getError());
+      if (result.isTimedOut())
+      {
+        sb.append(",\"timedOut\":true");
+      }
+    }
+    sb.append('}');
+    return sb.toString();
+  }
+
+  /**
+   * Appends a string as a quoted and escaped JSON string.
+   * @param sb Where the string is appended.
+   * @param s The string, which may be <code>null</code>.
+   */
+  static void quote(StringBuilder sb, String s)
+  {
+    if (s == null)
+    {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++)
+    {
+      char c = s.charAt(i);
+      switch (c)
+      {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20)
+          {
+            sb.append(String.format("\\u%04x", (int) c));
+          }
+          else
+          {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+}
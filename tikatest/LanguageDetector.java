@@ -0,0 +1,287 @@
+/* Class name: LanguageDetector
+ * File name:  LanguageDetector.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+
+/**
+ * This class identifies the language of a single document while its text is
+ * being extracted.
+ * <p>Text is split into 3-grams in the same way as Tika's
+ * <code>ProfilingWriter</code>. Rather than building a profile and comparing it
+ * once the document has been parsed, the distance to every language in the
+ * <code>LanguageModel</code> is kept up to date as each 3-gram arrives. Once
+ * enough 3-grams have been seen and the closest language is ahead of the next
+ * by at least the required margin the detector settles and ignores the rest of
+ * the document, which for most documents happens within the first few
+ * kilobytes. Counts are held in primitive arrays so a document's text creates
+ * no objects.
+ * <p>An instance must only be used for one document, by one thread.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.LanguageModel
+ */
+public class LanguageDetector
+{
+  /** The minimum number of 3-grams to be seen before the detector may settle */
+  private static final int MINIMUM_NGRAMS = 256;
+  /** The number of 3-grams between checks of the margin */
+  private static final int CHECK_INTERVAL = 64;
+
+  private LanguageModel model;
+  /** The number of characters to examine before giving up on settling early */
+  private int sampleLimit;
+  /** The relative lead the closest language needs over the next one */
+  private double margin;
+  /** The last three characters seen, as in Tika's ProfilingWriter */
+  private char[] buffer;
+  private int bufferCount;
+  /** The vocabulary indices of the 3-grams seen, an open-addressed hash table */
+  private int[] seenIndex;
+  /** The number of times each of the 3-grams in seenIndex has been seen */
+  private int[] seenCount;
+  private int seenSize;
+  /** The sum of each language's frequencies over the 3-grams seen */
+  private double[] dot;
+  /** The sum of the squared counts of the 3-grams known to the model */
+  private double sumOfSquares;
+  /** The total number of 3-grams seen */
+  private long total;
+  /** The number of characters examined */
+  private long characters;
+  private boolean settled;
+  private int best;
+  private double bestMargin;
+
+  /**
+   * Instantiate the class and initialise the variables.
+   * @param lm The shared language profiles.
+   * @param sample The maximum number of characters to examine.
+   * @param required The relative margin by which the closest language must
+   * lead the next before detection stops, e.g. 0.2 for 20%.
+   */
+  public LanguageDetector(LanguageModel lm, int sample, double required)
+  {
+    model = lm;
+    sampleLimit = sample;
+    margin = required;
+    buffer = new char[] {0, 0, '_'};
+    bufferCount = 1;
+    seenIndex = new int[256];
+    seenCount = new int[256];
+    seenSize = 0;
+    dot = new double[lm.getLanguageCount()];
+    settled = false;
+    best = -1;
+    bestMargin = 0;
+  }
+
+  /**
+   * Examines some text from the document. Nothing is done once the detector
+   * has settled or the sample limit has been reached.
+   * @param ch The characters from the document.
+   * @param start The start position in the array.
+   * @param length The number of characters to read from the array.
+   */
+  public void write(char[] ch, int start, int length)
+  {
+    int end = start + (int) Math.min(length, sampleLimit - characters);
+    for (int i = start; i < end && !settled; i++)
+    {
+      char c = Character.toLowerCase(ch[i]);
+      if (Character.isLetter(c))
+      {
+        addLetter(c);
+      }
+      else
+      {
+        addLetter('_');
+        bufferCount = 1;
+      }
+      characters++;
+    }
+  }
+
+  /**
+   * Adds a character to the buffer and counts the resulting 3-gram.
+   * @param c The lower case letter, or an underscore for a word boundary.
+   */
+  private void addLetter(char c)
+  {
+    buffer[0] = buffer[1];
+    buffer[1] = buffer[2];
+    buffer[2] = c;
+    bufferCount++;
+    if (bufferCount >= 3)
+    {
+      addNgram(model.indexOf(LanguageModel.pack(buffer[0], buffer[1], buffer[2])));
+    }
+  }
+
+  /**
+   * Updates the distance to every language for a new 3-gram.
+   * @param index The vocabulary index of the 3-gram, or -1 if it is unknown.
+   */
+  private void addNgram(int index)
+  {
+    total++;
+    if (index >= 0)
+    {
+      int previous = increment(index);
+      sumOfSquares = sumOfSquares + 2.0 * previous + 1.0;
+      for (int l = 0; l < dot.length; l++)
+      {
+        dot[l] = dot[l] + model.getWeight(index, l);
+      }
+    }
+    if (total >= MINIMUM_NGRAMS && total % CHECK_INTERVAL == 0)
+    {
+      rank();
+      settled = bestMargin >= margin;
+    }
+  }
+
+  /**
+   * Adds one to the count of a 3-gram seen in this document.
+   * @param index The vocabulary index of the 3-gram.
+   * @return The count before it was incremented.
+   */
+  private int increment(int index)
+  {
+    if (seenSize * 2 >= seenIndex.length)
+    {
+      grow();
+    }
+    int mask = seenIndex.length - 1;
+    int pos = (index * 0x9E3779B1) & mask;
+    // Indices are stored plus one so that zero marks an empty position
+    while (seenIndex[pos] != 0 && seenIndex[pos] != index + 1)
+    {
+      pos = (pos + 1) & mask;
+    }
+    if (seenIndex[pos] == 0)
+    {
+      seenIndex[pos] = index + 1;
+      seenSize++;
+    }
+    int previous = seenCount[pos];
+    seenCount[pos] = previous + 1;
+    return previous;
+  }
+
+  /**
+   * Doubles the size of the table of 3-grams seen.
+   */
+  private void grow()
+  {
+    int[] oldIndex = seenIndex;
+    int[] oldCount = seenCount;
+    seenIndex = new int[oldIndex.length * 2];
+    seenCount = new int[oldCount.length * 2];
+    int mask = seenIndex.length - 1;
+    for (int i = 0; i < oldIndex.length; i++)
+    {
+      if (oldIndex[i] != 0)
+      {
+        int pos = ((oldIndex[i] - 1) * 0x9E3779B1) & mask;
+        while (seenIndex[pos] != 0)
+        {
+          pos = (pos + 1) & mask;
+        }
+        seenIndex[pos] = oldIndex[i];
+        seenCount[pos] = oldCount[i];
+      }
+    }
+  }
+
+  /**
+   * Finds the closest language and its lead over the next closest.
+   * <p>The distance is the same Euclidean distance between normalised profiles
+   * used by Tika, leaving out 3-grams unknown to every language as they add
+   * the same amount to every distance.
+   */
+  private void rank()
+  {
+    double first = Double.MAX_VALUE;
+    double second = Double.MAX_VALUE;
+    best = -1;
+    double n = total;
+    for (int l = 0; l < dot.length; l++)
+    {
+      double d = sumOfSquares / (n * n) + model.getLength(l) - 2.0 * dot[l] / n;
+      d = Math.sqrt(Math.max(0, d));
+      if (d < first)
+      {
+        second = first;
+        first = d;
+        best = l;
+      }
+      else if (d < second)
+      {
+        second = d;
+      }
+    }
+    bestMargin = (second == Double.MAX_VALUE || second == 0) ? 0 : (second - first) / second;
+  }
+
+  /**
+   * Returns the language closest to the text examined.
+   * @return The ISO 639-1 code of the language or "?" if no text was found.
+   */
+  public String getLanguage()
+  {
+    if (!settled && total > 0)
+    {
+      rank();
+    }
+    if (best < 0)
+    {
+      return "?";
+    }
+    return model.getLanguage(best);
+  }
+
+  /**
+   * Returns the lead of the closest language over the next closest, relative
+   * to the distance to the next closest.
+   * @return The margin between 0 and 1.
+   */
+  public double getMargin()
+  {
+    getLanguage();
+    return bestMargin;
+  }
+
+  /**
+   * Returns whether the language was identified before the end of the sample.
+   * @return <code>true</code> if the detector stopped early.
+   */
+  public boolean isSettled()
+  {
+    return settled;
+  }
+
+  /**
+   * Returns the number of characters examined to identify the language.
+   * @return The number of characters.
+   */
+  public long getCharactersExamined()
+  {
+    return characters;
+  }
+}
@@ -0,0 +1,248 @@
+/* Class name: LanguageModel
+ * File name:  LanguageModel.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.tika.language.LanguageIdentifier;
+
+/**
+ * This class holds the n-gram profiles of every language known to Tika in a
+ * form which can be compared against a document while it is being parsed.
+ * <p>The profiles are read once from the <code>.ngp</code> files shipped with
+ * Tika. Each distinct 3-gram is given an index in a shared vocabulary and the
+ * normalised frequency of that 3-gram in each language is stored in a single
+ * <code>float</code> array, so looking up a 3-gram and updating the score for
+ * every language needs no objects to be created.
+ * <p>Once loaded the model isn't changed so it may be shared by all threads.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.LanguageDetector
+ */
+public class LanguageModel
+{
+  /** The ISO 639-1 codes of the languages in the model */
+  private String[] languages;
+  /** The packed 3-grams of the vocabulary, used as an open-addressed hash table */
+  private long[] keys;
+  /** The vocabulary index of the 3-gram stored at the same position in keys */
+  private int[] slots;
+  /** Mask used to wrap positions in the hash table */
+  private int mask;
+  /** The frequency of each 3-gram in each language, indexed by vocabulary index * languages + language */
+  private float[] weights;
+  /** The sum of the squared frequencies for each language */
+  private double[] lengths;
+
+  /**
+   * Loads the profiles of the given languages.
+   * @param supported The ISO 639-1 codes of the languages to load.
+   */
+  public LanguageModel(Set<String> supported)
+  {
+    ArrayList<String> loaded = new ArrayList<String>();
+    HashMap<String, float[]> vocabulary = new HashMap<String, float[]>();
+    ArrayList<HashMap<String, Long>> profiles = new ArrayList<HashMap<String, Long>>();
+    for (String language : new TreeSet<String>(supported))
+    {
+      HashMap<String, Long> profile = readProfile(language);
+      if (profile != null && !profile.isEmpty())
+      {
+        loaded.add(language);
+        profiles.add(profile);
+      }
+    }
+    languages = loaded.toArray(new String[loaded.size()]);
+    lengths = new double[languages.length];
+    // Work out the frequencies of every 3-gram in every language
+    for (int l = 0; l < languages.length; l++)
+    {
+      HashMap<String, Long> profile = profiles.get(l);
+      long total = 0;
+      for (Long count : profile.values())
+      {
+        total = total + count;
+      }
+      for (Map.Entry<String, Long> e : profile.entrySet())
+      {
+        float[] frequencies = vocabulary.get(e.getKey());
+        if (frequencies == null)
+        {
+          frequencies = new float[languages.length];
+          vocabulary.put(e.getKey(), frequencies);
+        }
+        frequencies[l] = (float) (e.getValue() / (double) total);
+        lengths[l] = lengths[l] + frequencies[l] * (double) frequencies[l];
+      }
+    }
+    // Copy the vocabulary into the primitive arrays used while detecting
+    int capacity = 16;
+    while (capacity < vocabulary.size() * 2)
+    {
+      capacity = capacity * 2;
+    }
+    keys = new long[capacity];
+    slots = new int[capacity];
+    mask = capacity - 1;
+    weights = new float[vocabulary.size() * languages.length];
+    int index = 0;
+    for (Map.Entry<String, float[]> e : vocabulary.entrySet())
+    {
+      String ngram = e.getKey();
+      long key = pack(ngram.charAt(0), ngram.charAt(1), ngram.charAt(2));
+      int pos = hash(key) & mask;
+      while (keys[pos] != 0)
+      {
+        pos = (pos + 1) & mask;
+      }
+      keys[pos] = key;
+      slots[pos] = index;
+      System.arraycopy(e.getValue(), 0, weights, index * languages.length, languages.length);
+      index++;
+    }
+  }
+
+  /**
+   * Reads the profile of a single language from the Tika jar. Each line of the
+   * file holds an n-gram and the number of times it was seen; only 3-grams are
+   * used.
+   * @param language The ISO 639-1 code of the language.
+   * @return The 3-grams and their counts, or <code>null</code> if there's no profile.
+   */
+  private HashMap<String, Long> readProfile(String language)
+  {
+    InputStream is = LanguageIdentifier.class.getResourceAsStream(language + ".ngp");
+    if (is == null)
+    {
+      return null;
+    }
+    HashMap<String, Long> profile = new HashMap<String, Long>();
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8")))
+    {
+      String line = br.readLine();
+      while (line != null)
+      {
+        int space = line.indexOf(' ');
+        if (!line.startsWith("#") && space == 3)
+        {
+          profile.put(line.substring(0, space), Long.parseLong(line.substring(space + 1).trim()));
+        }
+        line = br.readLine();
+      }
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+    catch (NumberFormatException nfX)
+    {
+      nfX.printStackTrace();
+    }
+    return profile;
+  }
+
+  /**
+   * Packs three characters into a single hash table key.
+   * @param a The first character.
+   * @param b The second character.
+   * @param c The third character.
+   * @return The packed 3-gram, never zero for the characters used in profiles.
+   */
+  static long pack(char a, char b, char c)
+  {
+    return ((long) a << 32) | ((long) b << 16) | c;
+  }
+
+  /**
+   * Spreads the bits of a packed 3-gram over the hash table.
+   * @param key The packed 3-gram.
+   * @return The hash of the key.
+   */
+  private static int hash(long key)
+  {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Returns the vocabulary index of a packed 3-gram.
+   * @param key The packed 3-gram.
+   * @return The index, or -1 if no language contains the 3-gram.
+   */
+  public int indexOf(long key)
+  {
+    int pos = hash(key) & mask;
+    while (keys[pos] != 0)
+    {
+      if (keys[pos] == key)
+      {
+        return slots[pos];
+      }
+      pos = (pos + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of languages in the model.
+   * @return The number of languages.
+   */
+  public int getLanguageCount()
+  {
+    return languages.length;
+  }
+
+  /**
+   * Returns the ISO 639-1 code of a language in the model.
+   * @param l The position of the language in the model.
+   * @return The language code.
+   */
+  public String getLanguage(int l)
+  {
+    return languages[l];
+  }
+
+  /**
+   * Returns the frequency of a 3-gram in a language.
+   * @param index The vocabulary index of the 3-gram.
+   * @param l The position of the language in the model.
+   * @return The normalised frequency.
+   */
+  public float getWeight(int index, int l)
+  {
+    return weights[index * languages.length + l];
+  }
+
+  /**
+   * Returns the sum of the squared frequencies of a language's 3-grams.
+   * @param l The position of the language in the model.
+   * @return The squared length of the language's profile.
+   */
+  public double getLength(int l)
+  {
+    return lengths[l];
+  }
+}
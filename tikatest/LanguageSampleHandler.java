@@ -0,0 +1,91 @@
+/* Class name: LanguageSampleHandler
+ * File name:  LanguageSampleHandler.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.004  17-Oct-2026 Renamed from BoundedContentHandler, as the language sample is the only budget; removed getLanguageDetector().
+ * 0.003  17-Oct-2026 Text is no longer captured, only counted and passed to the LanguageDetector.
+ * 0.002  17-Oct-2026 Language is identified incrementally by a LanguageDetector.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX content handler which identifies the language of a document from a
+ * sample of its text while it is being parsed.
+ * <p>Previously all of the text extracted by Tika was written to a
+ * <code>StringWriter</code> and the whole string passed to the
+ * <code>LanguageIdentifier</code>, so a single large document could use up the
+ * heap. This handler passes the text to a <code>LanguageDetector</code> as it
+ * arrives and keeps none of it. The detector examines at most the language
+ * sample set in the <code>ScanOptions</code>, stopping sooner once the
+ * language is known, so the memory used for each file is the same however
+ * large the document is. The rest of the text is only counted.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.004
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanOptions#setLanguageSample(int)
+ */
+public class LanguageSampleHandler extends DefaultHandler
+{
+  /** Identifies the language from the start of the text */
+  private LanguageDetector detector;
+  /** The total number of characters seen in the document */
+  private long characterCount;
+
+  /**
+   * Instantiate the class and initialise the variables.
+   * @param ld The detector used to identify the language of the text.
+   */
+  public LanguageSampleHandler(LanguageDetector ld)
+  {
+    detector = ld;
+    characterCount = 0;
+  }
+
+  /**
+   * Receives text from the parser, which is counted and passed to the
+   * language detector until it has settled.
+   * @param ch The characters from the document.
+   * @param start The start position in the array.
+   * @param length The number of characters to read from the array.
+   */
+  public void characters(char[] ch, int start, int length)
+  {
+    detector.write(ch, start, length);
+    characterCount = characterCount + length;
+  }
+
+  /**
+   * Receives ignorable whitespace from the parser, which is treated in the
+   * same way as any other text so words aren't run together.
+   * @param ch The characters from the document.
+   * @param start The start position in the array.
+   * @param length The number of characters to read from the array.
+   */
+  public void ignorableWhitespace(char[] ch, int start, int length)
+  {
+    characters(ch, start, length);
+  }
+
+  /**
+   * Returns the number of characters in the document.
+   * @return The total number of characters seen.
+   */
+  public long getCharacterCount()
+  {
+    return characterCount;
+  }
+}
@@ -4,10 +4,12 @@
  * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons 
  * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
  * Created:    28-Mar-2011 20:46:55
- * Modified:   28-May-2012
+ * Modified:   17-Oct-2026
  *
  * Version History:
  * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 1.002  17-Oct-2026 Paths given on the command line are investigated without the GUI.
+ * 1.001  17-Oct-2026 The parser registry is loaded while the GUI starts.
  * 1.000  28-May-2012 Changed licensing and verified Javadoc for release on Github.
  * 0.001  28-Mar-2011 Initial build
  */
@@ -22,16 +24,31 @@ package tikatest;
  * <br />
  * This work is licensed under a 
  * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
- * @version 1.000
+ * @version 1.002
  * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
  */
 public class Main {
 
     /**
      * Starts the application.
+     * <p>If any arguments are given then they are passed to <code>BatchScan</code>
+     * which investigates the paths without creating the GUI, so it can be run
+     * on a headless server. Otherwise the shared Tika parsers are loaded in the
+     * background so they are ready by the time the first investigation is
+     * started from the GUI.
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(BatchScan.run(args));
+        }
+        Thread loader = new Thread(new Runnable() {
+            public void run() {
+                ParserRegistry.getInstance();
+            }
+        }, "ParserRegistry loader");
+        loader.setDaemon(true);
+        loader.start();
         Client c = new Client();
     }
 
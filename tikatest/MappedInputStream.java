@@ -0,0 +1,195 @@
+/* Class name: MappedInputStream
+ * File name:  MappedInputStream.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * This class reads a large file through memory mapping rather than a series
+ * of small reads into a heap buffer.
+ * <p>The file is mapped a window at a time, so files of any size can be read
+ * without mapping more than one window at once. Reads are copied straight
+ * from the mapping, skipping over data (as archive readers do for entries
+ * which aren't wanted) costs nothing, and marking and resetting work over any
+ * distance so the stream needs no <code>BufferedInputStream</code> for the
+ * detector.
+ * <p>A <code>MessageDigest</code> may be given to hash the content as it is
+ * read. Bytes are hashed from the mapping once each, in order, however the
+ * stream is read, skipped or reset.
+ * <p>Closing the stream closes the file; the operating system releases the
+ * mapping when it is garbage collected.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanOptions#setMapThreshold(long)
+ */
+public class MappedInputStream extends InputStream
+{
+  /** The size of the part of the file mapped at once */
+  private static final long WINDOW = 64L << 20;
+
+  private FileChannel channel;
+  private long size;
+  /** The part of the file currently mapped, or null before the first read */
+  private MappedByteBuffer window;
+  /** The position in the file of the start of the window */
+  private long windowStart;
+  private long position;
+  private long markPosition;
+  /** Hashes the content as it is read, or null */
+  private MessageDigest digest;
+  /** The number of bytes from the start of the file which have been hashed */
+  private long hashed;
+
+  /**
+   * Opens a file to be read through memory mapping.
+   * @param p The file.
+   * @throws IOException If the file can't be opened.
+   */
+  public MappedInputStream(Path p) throws IOException
+  {
+    channel = FileChannel.open(p, StandardOpenOption.READ);
+    size = channel.size();
+  }
+
+  /**
+   * Sets the digest which the content is passed to as it is read. This must
+   * be set before anything is read.
+   * @param md The digest.
+   */
+  public void setDigest(MessageDigest md)
+  {
+    digest = md;
+  }
+
+  /**
+   * Maps the window holding a position in the file, if it isn't already.
+   * @param pos The position, which must be before the end of the file.
+   * @throws IOException If the file can't be mapped.
+   */
+  private void map(long pos) throws IOException
+  {
+    if (window == null || pos < windowStart || pos >= windowStart + window.capacity())
+    {
+      windowStart = pos - (pos % WINDOW);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+          Math.min(WINDOW, size - windowStart));
+    }
+    window.position((int) (pos - windowStart));
+  }
+
+  /**
+   * Passes the bytes up to a position to the digest, if they haven't been.
+   * @param end The position up to which the content should be hashed.
+   * @throws IOException If the file can't be mapped.
+   */
+  private void hashTo(long end) throws IOException
+  {
+    while (digest != null && hashed < end)
+    {
+      map(hashed);
+      int n = (int) Math.min(end - hashed, window.remaining());
+      window.limit(window.position() + n);
+      digest.update(window);
+      window.limit(window.capacity());
+      hashed = hashed + n;
+    }
+  }
+
+  public int read() throws IOException
+  {
+    if (position >= size)
+    {
+      return -1;
+    }
+    map(position);
+    int b = window.get() & 0xff;
+    position++;
+    hashTo(position);
+    return b;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    if (len == 0)
+    {
+      return 0;
+    }
+    if (position >= size)
+    {
+      return -1;
+    }
+    map(position);
+    int n = Math.min(len, window.remaining());
+    window.get(b, off, n);
+    position = position + n;
+    hashTo(position);
+    return n;
+  }
+
+  /**
+   * Skips over bytes without reading them, unless they need to be hashed.
+   * @param n The number of bytes to skip.
+   * @return The number of bytes skipped.
+   * @throws IOException If the file can't be mapped.
+   */
+  public long skip(long n) throws IOException
+  {
+    long skipped = Math.max(0, Math.min(n, size - position));
+    position = position + skipped;
+    hashTo(position);
+    return skipped;
+  }
+
+  public int available()
+  {
+    return (int) Math.min(Integer.MAX_VALUE, size - position);
+  }
+
+  public boolean markSupported()
+  {
+    return true;
+  }
+
+  /**
+   * Marks the current position. The mapping is kept, so the read limit
+   * doesn't matter.
+   * @param readlimit Ignored.
+   */
+  public synchronized void mark(int readlimit)
+  {
+    markPosition = position;
+  }
+
+  public synchronized void reset()
+  {
+    position = markPosition;
+  }
+
+  public void close() throws IOException
+  {
+    window = null;
+    channel.close();
+  }
+}
@@ -0,0 +1,52 @@
+/* Class name: NullSink
+ * File name:  NullSink.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+
+/**
+ * Discards every result. This is useful for measuring how quickly files can
+ * be investigated without the cost of writing any output.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ResultSink
+ */
+public class NullSink implements ResultSink
+{
+  /**
+   * Discards the result.
+   * @param result The details found for the file.
+   */
+  public void write(InvestigationResult result)
+  {
+  }
+
+  /**
+   * Does nothing as nothing is written.
+   */
+  public void flush()
+  {
+  }
+
+  /**
+   * Does nothing as nothing is written.
+   */
+  public void close()
+  {
+  }
+}
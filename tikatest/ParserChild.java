@@ -0,0 +1,317 @@
+/* Class name: ParserChild
+ * File name:  ParserChild.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.005  17-Oct-2026 The content limit is no longer passed to the child.
+ * 0.004  17-Oct-2026 The settings are read by getOptions() so a ShardWorker can share them.
+ * 0.003  17-Oct-2026 Passes on the memory mapping threshold.
+ * 0.002  17-Oct-2026 Passes on the detection-only settings.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Map;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class is run in a separate Java process to investigate files for a
+ * <code>ChildParserPool</code>, so that a file which exhausts the heap or
+ * crashes the parser only ends that process rather than the whole scan.
+ * <p>The paths of files are read from standard input, one at a time. Each is
+ * investigated as usual and the results, including those for any archive
+ * entries, written to standard output followed by an end marker. Anything
+ * else which would be printed to standard output is sent to standard error
+ * instead so it can't corrupt the results. The process exits when standard
+ * input is closed.
+ * <p>The settings for the investigation are given on the command line, as
+ * written by <code>getArguments()</code>.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.005
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ChildParserPool
+ */
+public class ParserChild implements ResultSink
+{
+  /** Marks a result in the output */
+  static final byte RESULT = 1;
+  /** Marks the end of the results for a file */
+  static final byte DONE = 2;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private DataOutputStream out;
+
+  /**
+   * Instantiate the class.
+   * @param dos Where the results are written.
+   */
+  private ParserChild(DataOutputStream dos)
+  {
+    out = dos;
+  }
+
+  /**
+   * Sends a result to the parent process.
+   * @param result The details found for the file or archive entry.
+   */
+  public void write(InvestigationResult result)
+  {
+    try
+    {
+      out.writeByte(RESULT);
+      writeResult(out, result);
+    }
+    catch (IOException ioX)
+    {
+      // The parent has gone, so there is nobody to report to
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Does nothing, as the output is flushed once a file is finished.
+   */
+  public void flush()
+  {
+  }
+
+  /**
+   * Does nothing, as the output stays open for the next file.
+   */
+  public void close()
+  {
+  }
+
+  /**
+   * Investigates the files whose paths are read from standard input.
+   * @param args The settings, as written by <code>getArguments()</code>.
+   * @throws IOException If the parent process can't be read from or written to.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(FileDescriptor.out), 65536));
+    // Nothing else may write to the pipe the results are sent through
+    System.setOut(System.err);
+    ScanOptions so = getOptions(args);
+    ParserChild child = new ParserChild(dos);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+    ParserRegistry.getInstance();
+    while (true)
+    {
+      String path;
+      try
+      {
+        path = readString(in);
+      }
+      catch (EOFException eofX)
+      {
+        // The parent has finished with this process
+        break;
+      }
+      new Investigation(new File(path), child, so).run();
+      dos.writeByte(DONE);
+      dos.flush();
+    }
+    dos.close();
+  }
+
+  /**
+   * Reads the settings for an investigation from the arguments written by
+   * <code>getArguments()</code>. Files are investigated one at a time and
+   * nothing is logged.
+   * @param args The arguments.
+   * @return The settings.
+   */
+  static ScanOptions getOptions(String[] args)
+  {
+    ScanOptions so = new ScanOptions();
+    so.setLog(null);
+    so.setParallelism(1);
+    so.setLanguageSample(Integer.parseInt(args[0]));
+    so.setLanguageMargin(Double.parseDouble(args[1]));
+    so.setArchiveDepth(Integer.parseInt(args[2]));
+    so.setExpansionRatio(Double.parseDouble(args[3]));
+    so.setParseTimeout(Long.parseLong(args[4]));
+    int prefix = Integer.parseInt(args[5]);
+    if (prefix > 0)
+    {
+      so.setDetectOnly(true);
+      so.setDetectPrefix(prefix);
+    }
+    so.setMapThreshold(Long.parseLong(args[6]));
+    for (int i = 7; i < args.length; i++)
+    {
+      if (args[i].startsWith("+"))
+      {
+        so.addFullParse(args[i].substring(1));
+      }
+      else
+      {
+        int eq = args[i].indexOf('=');
+        so.setParseTimeout(args[i].substring(0, eq), Long.parseLong(args[i].substring(eq + 1)));
+      }
+    }
+    return so;
+  }
+
+  /**
+   * Returns the command line arguments which pass the settings for an
+   * investigation to a child process.
+   * @param so The settings.
+   * @return The arguments.
+   */
+  static ArrayList<String> getArguments(ScanOptions so)
+  {
+    ArrayList<String> args = new ArrayList<String>();
+    args.add(Integer.toString(so.getLanguageSample()));
+    args.add(Double.toString(so.getLanguageMargin()));
+    args.add(Integer.toString(so.getArchiveDepth()));
+    args.add(Double.toString(so.getExpansionRatio()));
+    args.add(Long.toString(so.getParseTimeout()));
+    // The prefix is only passed on in detection-only mode
+    args.add(Integer.toString(so.isDetectOnly() ? so.getDetectPrefix() : 0));
+    args.add(Long.toString(so.getMapThreshold()));
+    for (Map.Entry<String,Long> e : so.getParseTimeouts().entrySet())
+    {
+      args.add(e.getKey() + "=" + e.getValue());
+    }
+    for (String type : so.getFullParseTypes())
+    {
+      args.add("+" + type);
+    }
+    return args;
+  }
+
+  /**
+   * Writes a result to a stream.
+   * @param dos The stream.
+   * @param result The result.
+   * @throws IOException If the stream can't be written.
+   */
+  static void writeResult(DataOutputStream dos, InvestigationResult result) throws IOException
+  {
+    writeString(dos, result.getName());
+    writeString(dos, result.getPath());
+    dos.writeLong(result.getSize());
+    MediaType mt = result.getMediaType();
+    writeString(dos, mt == null ? null : mt.toString());
+    writeString(dos, result.getLanguage());
+    writeString(dos, result.getError());
+    dos.writeBoolean(result.isTimedOut());
+    Metadata meta = result.getMetadata();
+    if (meta == null)
+    {
+      dos.writeInt(-1);
+      return;
+    }
+    String[] names = meta.names();
+    dos.writeInt(names.length);
+    for (String name : names)
+    {
+      writeString(dos, name);
+      String[] values = meta.getValues(name);
+      dos.writeInt(values.length);
+      for (String value : values)
+      {
+        writeString(dos, value);
+      }
+    }
+  }
+
+  /**
+   * Reads a result written by <code>writeResult()</code>.
+   * @param dis The stream.
+   * @return The result.
+   * @throws IOException If the stream can't be read or ends early.
+   */
+  static InvestigationResult readResult(DataInputStream dis) throws IOException
+  {
+    String name = readString(dis);
+    String path = readString(dis);
+    InvestigationResult result = new InvestigationResult(name, path, dis.readLong());
+    String mt = readString(dis);
+    if (mt != null)
+    {
+      result.setMediaType(MediaType.parse(mt));
+    }
+    result.setLanguage(readString(dis));
+    result.setError(readString(dis));
+    result.setTimedOut(dis.readBoolean());
+    int names = dis.readInt();
+    if (names >= 0)
+    {
+      Metadata meta = new Metadata();
+      for (int i = 0; i < names; i++)
+      {
+        String n = readString(dis);
+        int values = dis.readInt();
+        for (int j = 0; j < values; j++)
+        {
+          meta.add(n, readString(dis));
+        }
+      }
+      result.setMetadata(meta);
+    }
+    return result;
+  }
+
+  /**
+   * Writes a string as its length followed by its UTF-8 bytes, which unlike
+   * <code>writeUTF()</code> allows long metadata values.
+   * @param dos The stream.
+   * @param s The string, which may be <code>null</code>.
+   * @throws IOException If the stream can't be written.
+   */
+  static void writeString(DataOutputStream dos, String s) throws IOException
+  {
+    if (s == null)
+    {
+      dos.writeInt(-1);
+      return;
+    }
+    byte[] b = s.getBytes(UTF8);
+    dos.writeInt(b.length);
+    dos.write(b);
+  }
+
+  /**
+   * Reads a string written by <code>writeString()</code>.
+   * @param dis The stream.
+   * @return The string, which may be <code>null</code>.
+   * @throws IOException If the stream can't be read or ends early.
+   */
+  static String readString(DataInputStream dis) throws IOException
+  {
+    int length = dis.readInt();
+    if (length < 0)
+    {
+      return null;
+    }
+    byte[] b = new byte[length];
+    dis.readFully(b);
+    return new String(b, UTF8);
+  }
+}
@@ -0,0 +1,184 @@
+/* Class name: ParserRegistry
+ * File name:  ParserRegistry.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Holds the LanguageModel used for incremental language detection.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.ByteArrayInputStream;
+import java.util.Set;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.language.LanguageIdentifier;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class holds the Tika parser, detector and language profiles which are
+ * shared by every investigation.
+ * <p>Creating an <code>AutoDetectParser</code> loads the Tika configuration and
+ * builds the registry of available parsers, which is expensive when compared to
+ * parsing a small file. Tika parsers and detectors keep no state between
+ * documents, so a single instance is created and warmed up the first time
+ * <code>getInstance()</code> is called and is then safely used by all threads.
+ * <p>The time taken to create a parser once everything has been loaded is also
+ * measured, which gives the setup cost that was previously paid for every file.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ */
+public class ParserRegistry
+{
+  /** The centralised instance of the class to be returned once instantiated */
+  private static ParserRegistry registry;
+  /** The parser shared by all threads, it re-uses any type already detected */
+  private AutoDetectParser parser;
+  /** The detector shared by all threads */
+  private Detector detector;
+  /** The languages which the LanguageIdentifier has profiles for */
+  private Set<String> languages;
+  /** The profiles of those languages used to detect a document's language */
+  private LanguageModel languageModel;
+  /** The time taken to initialise the registry in nanoseconds */
+  private long startupTime;
+  /** The time taken to create a new parser after start-up in nanoseconds */
+  private long setupCostPerFile;
+
+  /**
+   * Loads the Tika configuration, parsers and language profiles.
+   */
+  private ParserRegistry()
+  {
+    long start = System.nanoTime();
+    TikaConfig config = TikaConfig.getDefaultConfig();
+    detector = config.getDetector();
+    parser = new AutoDetectParser(config);
+    parser.setDetector(new DetectedTypeDetector(detector));
+    // The language profiles are read from the same files as the LanguageIdentifier
+    languages = LanguageIdentifier.getSupportedLanguages();
+    languageModel = new LanguageModel(languages);
+    warmUp();
+    startupTime = System.nanoTime() - start;
+    // Measure what each file used to pay for its own AutoDetectParser
+    start = System.nanoTime();
+    new AutoDetectParser();
+    setupCostPerFile = System.nanoTime() - start;
+  }
+
+  /**
+   * Parses a small document so that the classes used on every file have been
+   * loaded before the first real file is investigated.
+   */
+  private void warmUp()
+  {
+    try
+    {
+      byte[] sample = "Tika warm up document".getBytes("UTF-8");
+      parser.parse(new ByteArrayInputStream(sample), new DefaultHandler(),
+          new Metadata(), new ParseContext());
+    }
+    catch (Exception x)
+    {
+      // A failure here only means the first file will take a little longer
+      x.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the shared registry, creating it on the first call.
+   * @return The registry used by all investigations.
+   */
+  public static synchronized ParserRegistry getInstance()
+  {
+    if (registry == null)
+    {
+      registry = new ParserRegistry();
+    }
+    return registry;
+  }
+
+  /**
+   * Returns the shared parser. Before parsing, the MIME type may be stored in
+   * the metadata under <code>Content-Type</code> so it isn't detected again.
+   * @return The thread-safe parser.
+   * @see tikatest.DetectedTypeDetector
+   */
+  public AutoDetectParser getParser()
+  {
+    return parser;
+  }
+
+  /**
+   * Returns the shared MIME type detector.
+   * @return The thread-safe detector.
+   */
+  public Detector getDetector()
+  {
+    return detector;
+  }
+
+  /**
+   * Returns the languages that can be identified from a document's content.
+   * @return The set of ISO 639-1 language codes.
+   */
+  public Set<String> getSupportedLanguages()
+  {
+    return languages;
+  }
+
+  /**
+   * Returns the shared language profiles.
+   * @return The model used by each <code>LanguageDetector</code>.
+   */
+  public LanguageModel getLanguageModel()
+  {
+    return languageModel;
+  }
+
+  /**
+   * Returns the time taken to load and warm up the registry.
+   * @return The start-up time in milliseconds.
+   */
+  public long getStartupTime()
+  {
+    return startupTime / 1000000L;
+  }
+
+  /**
+   * Returns the time taken to create a parser once Tika has been loaded. This
+   * is the cost which each file paid before the parser was shared.
+   * @return The per-file setup time in microseconds.
+   */
+  public long getSetupCostPerFile()
+  {
+    return setupCostPerFile / 1000L;
+  }
+
+  /**
+   * Returns a one line summary of the setup time which sharing the parser
+   * has saved.
+   * @param files The number of files investigated.
+   * @return A description of the time saved.
+   */
+  public String getSavingSummary(int files)
+  {
+    long saved = (setupCostPerFile * files) / 1000000L;
+    return String.format("Parser registry started in %d ms, saving %d us setup per file (%d ms over %d files)",
+        getStartupTime(), getSetupCostPerFile(), saved, files);
+  }
+}
@@ -0,0 +1,56 @@
+/* Class name: ResultSink
+ * File name:  ResultSink.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.003  17-Oct-2026 Documented when an AsyncSink flushes the output.
+ * 0.002  17-Oct-2026 Added flush so output can be buffered.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+
+/**
+ * This interface is implemented by anything which receives the results of an
+ * <code>Investigation</code>, such as the GUI table or a file of records.
+ * <p>Results are written as soon as each file has been investigated. When
+ * files are investigated in parallel <code>write()</code> is called from
+ * several threads at once so implementations must be thread-safe. Slow
+ * outputs may be wrapped in an <code>AsyncSink</code> so that the threads
+ * investigating files don't wait for them.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.003
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.InvestigationResult
+ */
+public interface ResultSink
+{
+  /**
+   * Receives the result of investigating a single file.
+   * @param result The details found for the file.
+   */
+  public void write(InvestigationResult result);
+
+  /**
+   * Writes out any results which have been buffered. An <code>AsyncSink</code>
+   * calls this after a number of results, at least once a second while
+   * results keep arriving, and when no new results have arrived for a while.
+   */
+  public void flush();
+
+  /**
+   * Called once no more results will be written, so any buffered output can
+   * be flushed and files closed.
+   */
+  public void close();
+}
@@ -0,0 +1,1273 @@
+/* Class name: ResultStore
+ * File name:  ResultStore.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Paths with the same hash are told apart by the path stored in each record.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class keeps the results of investigations in a directory on disk so
+ * they outlive the program and can be searched by MIME type, subtype,
+ * language and the metadata keys present.
+ * <p>The store is made up of five files, which are only ever appended to:
+ * <ul>
+ * <li><code>records.dat</code> holds one binary record per result. The MIME
+ * type, language and metadata keys are written as numbers from the
+ * dictionary and lengths as variable length numbers, so a record is little
+ * larger than the path and the metadata values.</li>
+ * <li><code>rows.dat</code> holds a fixed size row for each record with its
+ * position, the size of the file and the hash of its path, so a record can be
+ * found from its number and sizes compared without reading the records.</li>
+ * <li><code>dictionary.dat</code> holds each distinct MIME type, main type,
+ * subtype, language and metadata key, known as terms. The number of bits in
+ * each file size is also a term, so a range of sizes can be searched.</li>
+ * <li><code>postings.dat</code> holds the numbers of the records containing
+ * each term, in blocks of up to 1024 numbers which are chained from the latest
+ * back to the earliest.</li>
+ * <li><code>state.dat</code> records how much of the postings were complete
+ * when the store was last closed.</li>
+ * </ul>
+ * <p>Only the dictionary and the position of the latest block for each term
+ * are held in memory. A query reads the postings of each term it names and
+ * intersects them, starting from the rarest term, along with the postings of
+ * the size classes in the range of sizes asked for. It then reads the rows of
+ * the records left, to skip superseded records and check the sizes in the
+ * classes at either end of the range, and reads only the records which match.
+ * A query with no conditions at all reads every row.
+ * <p>A new record for a path supersedes the earlier one, whose row is marked
+ * so that queries skip it. To find the earlier record a table from the hash
+ * of each path to its latest record is built from the rows the first time a
+ * result is written, so a store opened only to be queried never builds it.
+ * The path in the record is compared whenever hashes match, so a path whose
+ * hash collides with another's never supersedes it.
+ * When the store is closed after writing and more than half of the records
+ * have been superseded, it is rewritten with only the latest.
+ * <p>If a run is interrupted the postings written since the store was last
+ * closed are discarded when it is next opened and the records they covered
+ * are indexed again.
+ * <p>Results are passed on to another <code>ResultSink</code>, if one is given,
+ * once they have been stored. The methods may be called from several threads
+ * at once.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ResultStore.Query
+ */
+public class ResultStore implements ResultSink
+{
+  /** The MIME type without parameters, e.g. application/pdf */
+  public static final int TYPE = 0;
+  /** The main type, e.g. application */
+  public static final int MAIN_TYPE = 1;
+  /** The subtype, e.g. pdf */
+  public static final int SUBTYPE = 2;
+  /** The language code, e.g. de */
+  public static final int LANGUAGE = 3;
+  /** The name of a metadata key present in the file, e.g. Author */
+  public static final int KEY = 4;
+  /** The whole MIME type with any parameters, which is stored but not indexed */
+  private static final int MEDIA = 5;
+  /** The number of bits in the file size, so a range of sizes can be narrowed
+   * down without reading the rows */
+  private static final int SIZE_CLASS = 6;
+  /** The names used for the indexed fields in a query */
+  private static final String[] FIELDS = {"type", "main", "subtype", "language", "key"};
+  /** The files making up the store */
+  private static final String[] FILES = {"dictionary.dat", "records.dat", "rows.dat",
+      "postings.dat", "state.dat"};
+
+  /** The format version written at the start of each record */
+  private static final byte VERSION = 1;
+  /** The size of a row: the record position, the file size and the path hash */
+  private static final int ROW = 24;
+  /** The most rows read at once by a query */
+  private static final int ROW_BATCH = 4096;
+  /** The number of bytes read at first for a record, which holds most records */
+  private static final int RECORD_GUESS = 512;
+  /** The number of record numbers in a full block of postings */
+  private static final int BLOCK = 1024;
+  /** The size of a block header: the term, the count and the previous block */
+  private static final int BLOCK_HEADER = 16;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private Path directory;
+  private ResultSink next;
+  private FileChannel dictionary;
+  private FileChannel records;
+  private FileChannel rows;
+  private FileChannel postings;
+  private long dictionaryEnd;
+  private long recordsEnd;
+  private long postingsEnd;
+  private int rowCount;
+  /** The number of rows marked as superseded */
+  private int superseded;
+
+  /** The number of each term, keyed by its field and value */
+  private HashMap<String,Integer> terms;
+  private ArrayList<String> termValues;
+  private int[] termFields;
+  /** The MIME types already parsed from MEDIA terms, by term number */
+  private HashMap<Integer,MediaType> mediaTypes;
+  /** The position of the latest block of postings for each term, or -1 */
+  private long[] tails;
+  /** The number of records in the blocks written for each term */
+  private int[] totals;
+  /** The record numbers for each term not yet written in a block */
+  private int[][] buffers;
+  private int[] buffered;
+
+  /** The hashes of the stored paths, an open-addressed hash table, or null until written to */
+  private long[] keys;
+  /** The latest record for the path at the same position in keys */
+  private int[] ids;
+  private int entries;
+
+  /**
+   * Opens the store, creating the directory and files if they don't exist.
+   * @param dir The directory holding the store.
+   * @param rs Where results are passed once stored, or <code>null</code>.
+   * @throws IOException If the files can't be opened or read.
+   */
+  public ResultStore(Path dir, ResultSink rs) throws IOException
+  {
+    directory = dir;
+    next = rs;
+    Files.createDirectories(dir);
+    dictionary = open("dictionary.dat");
+    records = open("records.dat");
+    rows = open("rows.dat");
+    postings = open("postings.dat");
+    terms = new HashMap<String,Integer>();
+    termValues = new ArrayList<String>();
+    termFields = new int[64];
+    mediaTypes = new HashMap<Integer,MediaType>();
+    tails = new long[64];
+    totals = new int[64];
+    buffers = new int[64][];
+    buffered = new int[64];
+    load();
+  }
+
+  /**
+   * Opens one of the files in the store.
+   * @param name The name of the file.
+   * @return The channel for reading and writing the file.
+   * @throws IOException If the file can't be opened.
+   */
+  private FileChannel open(String name) throws IOException
+  {
+    return FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Reads the dictionary and the block headers of the postings, and indexes
+   * any records whose postings were lost when a run was interrupted. Anything
+   * incomplete at the end of a file is removed.
+   * @throws IOException If the files can't be read.
+   */
+  private void load() throws IOException
+  {
+    long size = dictionary.size();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(4);
+    while (position + 4 <= size)
+    {
+      header.clear();
+      readFully(dictionary, header, position);
+      int length = header.getInt(0);
+      if (length <= 0 || position + 4 + length > size)
+      {
+        break;
+      }
+      ByteBuffer entry = ByteBuffer.allocate(length);
+      readFully(dictionary, entry, position + 4);
+      addTerm(entry.get(0), new String(entry.array(), 1, length - 1, UTF8));
+      position = position + 4 + length;
+    }
+    if (position < size)
+    {
+      dictionary.truncate(position);
+    }
+    dictionaryEnd = position;
+    recordsEnd = records.size();
+    long rowBytes = rows.size() / ROW * ROW;
+    if (rowBytes < rows.size())
+    {
+      rows.truncate(rowBytes);
+    }
+    rowCount = (int) (rowBytes / ROW);
+
+    // The postings are only known to be complete up to the last close
+    long complete = 0;
+    int indexed = 0;
+    Path state = directory.resolve("state.dat");
+    if (Files.exists(state))
+    {
+      ByteBuffer bb = ByteBuffer.wrap(Files.readAllBytes(state));
+      if (bb.limit() >= 16)
+      {
+        complete = bb.getLong();
+        indexed = bb.getInt();
+        superseded = bb.getInt();
+      }
+    }
+    if (complete > postings.size() || indexed > rowCount)
+    {
+      // The state doesn't belong with these files, so everything is indexed again
+      complete = 0;
+      indexed = 0;
+    }
+    if (complete < postings.size())
+    {
+      postings.truncate(complete);
+    }
+    Arrays.fill(tails, -1);
+    position = 0;
+    ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER);
+    while (position < complete)
+    {
+      block.clear();
+      readFully(postings, block, position);
+      int term = block.getInt(0);
+      int count = block.getInt(4);
+      tails[term] = position;
+      totals[term] = totals[term] + count;
+      position = position + BLOCK_HEADER + 4L * count;
+    }
+    postingsEnd = complete;
+    ByteBuffer row = ByteBuffer.allocate(ROW);
+    for (int id = indexed; id < rowCount; id++)
+    {
+      row.clear();
+      readFully(rows, row, (long) id * ROW);
+      long offset = row.getLong(0);
+      if (offset >= 0)
+      {
+        index(id, readRecord(offset));
+      }
+    }
+  }
+
+  /**
+   * Stores the result of investigating a file, superseding any earlier
+   * record for the same path, and passes it on. A result recording that a
+   * file has been removed only supersedes the earlier record.
+   * @param result The details found for the file.
+   */
+  public void write(InvestigationResult result)
+  {
+    try
+    {
+      store(result);
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+    if (next != null)
+    {
+      next.write(result);
+    }
+  }
+
+  /**
+   * Appends the record and row for a result and adds it to the postings.
+   * @param result The details found for the file.
+   * @throws IOException If the record can't be written.
+   */
+  private synchronized void store(InvestigationResult result) throws IOException
+  {
+    if (keys == null)
+    {
+      loadPaths();
+    }
+    long key = hash(result.getPath());
+    int slot = find(key, result.getPath());
+    int earlier = slot < 0 ? -1 : ids[slot];
+    if (earlier >= 0)
+    {
+      ByteBuffer mark = ByteBuffer.allocate(8);
+      mark.putLong(0, -1);
+      writeFully(rows, mark, (long) earlier * ROW);
+      superseded++;
+    }
+    if (result.isRemoved())
+    {
+      if (slot >= 0)
+      {
+        remove(slot);
+      }
+      return;
+    }
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+    DataOutputStream dos = new DataOutputStream(baos);
+    dos.writeInt(0); // Replaced with the record length below
+    dos.writeByte(VERSION);
+    writeString(dos, result.getPath());
+    writeString(dos, result.getName());
+    writeNumber(dos, result.getSize() + 1);
+    MediaType mt = result.getMediaType();
+    writeNumber(dos, mt == null ? 0 : term(MEDIA, mt.toString()) + 1);
+    String lang = result.getLanguage();
+    writeNumber(dos, lang == null || lang.isEmpty() ? 0 : term(LANGUAGE, lang) + 1);
+    writeString(dos, result.getError());
+    dos.writeByte(result.isTimedOut() ? 1 : 0);
+    byte[] digest = result.getDigest();
+    writeNumber(dos, digest == null ? 0 : digest.length);
+    if (digest != null)
+    {
+      dos.write(digest);
+    }
+    Metadata meta = result.getMetadata();
+    String[] names = meta == null ? new String[0] : meta.names();
+    writeNumber(dos, names.length);
+    for (String name : names)
+    {
+      writeNumber(dos, term(KEY, name));
+      String[] values = meta.getValues(name);
+      writeNumber(dos, values.length);
+      for (String value : values)
+      {
+        writeString(dos, value);
+      }
+    }
+    dos.flush();
+    ByteBuffer record = ByteBuffer.wrap(baos.toByteArray());
+    record.putInt(0, record.limit() - 4);
+    long offset = recordsEnd;
+    writeFully(records, record, offset);
+    recordsEnd = recordsEnd + record.limit();
+
+    int id = rowCount;
+    ByteBuffer row = ByteBuffer.allocate(ROW);
+    row.putLong(offset).putLong(result.getSize()).putLong(key).flip();
+    writeFully(rows, row, (long) id * ROW);
+    rowCount++;
+    if (slot >= 0)
+    {
+      ids[slot] = id;
+    }
+    else
+    {
+      insert(key, id);
+    }
+    index(id, result);
+  }
+
+  /**
+   * Adds a record to the postings of the terms it contains.
+   * @param id The number of the record.
+   * @param result The details stored in the record.
+   * @throws IOException If a block of postings can't be written.
+   */
+  private void index(int id, InvestigationResult result) throws IOException
+  {
+    post(term(SIZE_CLASS, Integer.toString(sizeClass(result.getSize()))), id);
+    MediaType mt = result.getMediaType();
+    if (mt != null)
+    {
+      post(term(TYPE, mt.getBaseType().toString()), id);
+      post(term(MAIN_TYPE, mt.getType()), id);
+      post(term(SUBTYPE, mt.getSubtype()), id);
+    }
+    String lang = result.getLanguage();
+    if (lang != null && !lang.isEmpty())
+    {
+      post(term(LANGUAGE, lang), id);
+    }
+    Metadata meta = result.getMetadata();
+    if (meta != null)
+    {
+      for (String name : meta.names())
+      {
+        post(term(KEY, name), id);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bits needed for a file size.
+   * @param size The size of the file.
+   * @return The size class, from 0 to 63.
+   */
+  private static int sizeClass(long size)
+  {
+    return 64 - Long.numberOfLeadingZeros(Math.max(size, 0));
+  }
+
+  /**
+   * Returns the number of a term, adding it to the dictionary if it's new.
+   * @param field The field of the term.
+   * @param value The value of the term.
+   * @return The number of the term.
+   * @throws IOException If the dictionary can't be written.
+   */
+  private int term(int field, String value) throws IOException
+  {
+    Integer t = terms.get(field + ":" + value);
+    if (t != null)
+    {
+      return t;
+    }
+    byte[] b = value.getBytes(UTF8);
+    ByteBuffer entry = ByteBuffer.allocate(5 + b.length);
+    entry.putInt(1 + b.length).put((byte) field).put(b).flip();
+    writeFully(dictionary, entry, dictionaryEnd);
+    dictionaryEnd = dictionaryEnd + entry.limit();
+    return addTerm(field, value);
+  }
+
+  /**
+   * Adds a term to the dictionary held in memory.
+   * @param field The field of the term.
+   * @param value The value of the term.
+   * @return The number of the term.
+   */
+  private int addTerm(int field, String value)
+  {
+    int t = termValues.size();
+    if (t == termFields.length)
+    {
+      termFields = Arrays.copyOf(termFields, t * 2);
+      tails = Arrays.copyOf(tails, t * 2);
+      Arrays.fill(tails, t, t * 2, -1);
+      totals = Arrays.copyOf(totals, t * 2);
+      buffers = Arrays.copyOf(buffers, t * 2);
+      buffered = Arrays.copyOf(buffered, t * 2);
+    }
+    terms.put(field + ":" + value, t);
+    termValues.add(value);
+    termFields[t] = field;
+    return t;
+  }
+
+  /**
+   * Adds a record to the postings of a term, writing a block once it's full.
+   * @param term The number of the term.
+   * @param id The number of the record.
+   * @throws IOException If the block can't be written.
+   */
+  private void post(int term, int id) throws IOException
+  {
+    int[] buffer = buffers[term];
+    if (buffer == null)
+    {
+      buffer = new int[16];
+      buffers[term] = buffer;
+    }
+    else if (buffered[term] == buffer.length)
+    {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      buffers[term] = buffer;
+    }
+    buffer[buffered[term]++] = id;
+    if (buffered[term] == BLOCK)
+    {
+      writeBlock(term);
+    }
+  }
+
+  /**
+   * Writes the postings buffered for a term as a block.
+   * @param term The number of the term.
+   * @throws IOException If the block can't be written.
+   */
+  private void writeBlock(int term) throws IOException
+  {
+    int count = buffered[term];
+    ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER + 4 * count);
+    block.putInt(term).putInt(count).putLong(tails[term]);
+    block.asIntBuffer().put(buffers[term], 0, count);
+    block.rewind();
+    writeFully(postings, block, postingsEnd);
+    tails[term] = postingsEnd;
+    postingsEnd = postingsEnd + block.limit();
+    totals[term] = totals[term] + count;
+    buffered[term] = 0;
+  }
+
+  /**
+   * Returns the numbers of the records containing a term, in order.
+   * @param term The number of the term.
+   * @return The record numbers.
+   * @throws IOException If the postings can't be read.
+   */
+  private int[] postings(int term) throws IOException
+  {
+    int[] list = new int[totals[term] + buffered[term]];
+    System.arraycopy(buffers[term] == null ? new int[0] : buffers[term], 0, list,
+        totals[term], buffered[term]);
+    // The blocks are chained from the latest, so the list is filled from the end
+    int end = totals[term];
+    long position = tails[term];
+    ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+    while (position >= 0)
+    {
+      header.clear();
+      readFully(postings, header, position);
+      int count = header.getInt(4);
+      ByteBuffer block = ByteBuffer.allocate(4 * count);
+      readFully(postings, block, position + BLOCK_HEADER);
+      block.flip();
+      end = end - count;
+      block.asIntBuffer().get(list, end, count);
+      position = header.getLong(8);
+    }
+    return list;
+  }
+
+  /**
+   * Finds the stored results matching a query and writes them to a sink.
+   * @param q The query.
+   * @param out Where the matching results are written.
+   * @return The number of results matched.
+   * @throws IOException If the store can't be read.
+   */
+  public synchronized long query(Query q, ResultSink out) throws IOException
+  {
+    ArrayList<int[]> found = new ArrayList<int[]>();
+    for (int i = 0; i < q.fields.size(); i++)
+    {
+      Integer t = terms.get(q.fields.get(i) + ":" + q.values.get(i));
+      if (t == null)
+      {
+        // No file has ever had the term
+        return 0;
+      }
+      found.add(postings(t));
+    }
+    if (q.minSize > 0 || q.maxSize < Long.MAX_VALUE)
+    {
+      // Only the files in the size classes at either end need their sizes checked
+      int[] sized = new int[0];
+      for (int c = sizeClass(q.minSize); c <= sizeClass(q.maxSize); c++)
+      {
+        Integer t = terms.get(SIZE_CLASS + ":" + c);
+        if (t != null)
+        {
+          int[] list = postings(t);
+          int from = sized.length;
+          sized = Arrays.copyOf(sized, from + list.length);
+          System.arraycopy(list, 0, sized, from, list.length);
+        }
+      }
+      Arrays.sort(sized);
+      found.add(sized);
+    }
+    int[][] lists = found.toArray(new int[found.size()][]);
+    // Intersecting from the shortest list keeps the candidates to a minimum
+    Arrays.sort(lists, new Comparator<int[]>()
+    {
+      public int compare(int[] a, int[] b)
+      {
+        return a.length < b.length ? -1 : (a.length == b.length ? 0 : 1);
+      }
+    });
+    int[] candidates = lists.length == 0 ? null : lists[0];
+    int n = candidates == null ? rowCount : candidates.length;
+    for (int i = 1; i < lists.length && n > 0; i++)
+    {
+      n = intersect(candidates, n, lists[i]);
+    }
+
+    long matched = 0;
+    ByteBuffer batch = ByteBuffer.allocate(ROW * ROW_BATCH);
+    int batchStart = 0;
+    int batchEnd = 0;
+    for (int i = 0; i < n; i++)
+    {
+      int id = candidates == null ? i : candidates[i];
+      if (id >= batchEnd)
+      {
+        // Rows are read from this one up to the last candidate within a batch,
+        // so scattered candidates don't read the rows between them
+        int last = i;
+        while (candidates != null && last + 1 < n && candidates[last + 1] < id + ROW_BATCH)
+        {
+          last++;
+        }
+        batchStart = id;
+        batchEnd = candidates == null ? Math.min(id + ROW_BATCH, rowCount) : candidates[last] + 1;
+        batch.clear();
+        batch.limit(ROW * (batchEnd - batchStart));
+        readFully(rows, batch, (long) id * ROW);
+      }
+      int at = (id - batchStart) * ROW;
+      long offset = batch.getLong(at);
+      long size = batch.getLong(at + 8);
+      if (offset >= 0 && size >= q.minSize && size <= q.maxSize)
+      {
+        out.write(readRecord(offset));
+        matched++;
+      }
+    }
+    return matched;
+  }
+
+  /**
+   * Keeps the record numbers which are also in another list.
+   * @param candidates The record numbers, in order, which are overwritten.
+   * @param n The number of record numbers.
+   * @param list The other list, in order.
+   * @return The number of record numbers kept.
+   */
+  private static int intersect(int[] candidates, int n, int[] list)
+  {
+    int kept = 0;
+    int j = 0;
+    for (int i = 0; i < n && j < list.length; i++)
+    {
+      int id = candidates[i];
+      while (j < list.length && list[j] < id)
+      {
+        j++;
+      }
+      if (j < list.length && list[j] == id)
+      {
+        candidates[kept++] = id;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Reads a record.
+   * @param offset The position of the record.
+   * @return The result stored in the record.
+   * @throws IOException If the record can't be read.
+   */
+  private InvestigationResult readRecord(long offset) throws IOException
+  {
+    // Most records are read whole along with their length
+    ByteBuffer guess = ByteBuffer.allocate((int) Math.min(RECORD_GUESS, recordsEnd - offset));
+    readFully(records, guess, offset);
+    int length = guess.getInt(0);
+    ByteBuffer record;
+    if (length <= guess.limit() - 4)
+    {
+      guess.position(4);
+      guess.limit(4 + length);
+      record = guess.slice();
+    }
+    else
+    {
+      record = ByteBuffer.allocate(length);
+      readFully(records, record, offset + 4);
+      record.flip();
+    }
+    record.get(); // The format version
+    String path = readString(record);
+    String name = readString(record);
+    InvestigationResult result = new InvestigationResult(name, path, readNumber(record) - 1);
+    int media = (int) readNumber(record);
+    if (media > 0)
+    {
+      MediaType mt = mediaTypes.get(media - 1);
+      if (mt == null)
+      {
+        mt = MediaType.parse(termValues.get(media - 1));
+        mediaTypes.put(media - 1, mt);
+      }
+      result.setMediaType(mt);
+    }
+    int lang = (int) readNumber(record);
+    if (lang > 0)
+    {
+      result.setLanguage(termValues.get(lang - 1));
+    }
+    String error = readString(record);
+    result.setError(error.isEmpty() ? null : error);
+    result.setTimedOut(record.get() != 0);
+    int digestLength = (int) readNumber(record);
+    if (digestLength > 0)
+    {
+      byte[] digest = new byte[digestLength];
+      record.get(digest);
+      result.setDigest(digest);
+    }
+    int names = (int) readNumber(record);
+    // Files which couldn't be investigated have no metadata at all
+    if (names > 0 || result.getError() == null)
+    {
+      Metadata meta = new Metadata();
+      for (int i = 0; i < names; i++)
+      {
+        String key = termValues.get((int) readNumber(record));
+        int values = (int) readNumber(record);
+        for (int j = 0; j < values; j++)
+        {
+          meta.add(key, readString(record));
+        }
+      }
+      result.setMetadata(meta);
+    }
+    return result;
+  }
+
+  /**
+   * Passes the flush on, as records are written as soon as they arrive.
+   */
+  public void flush()
+  {
+    if (next != null)
+    {
+      next.flush();
+    }
+  }
+
+  /**
+   * Writes the buffered postings, closes the store and the sink results are
+   * passed on to. If more than half of the records have been superseded the
+   * store is first rewritten with only the latest.
+   */
+  public void close()
+  {
+    try
+    {
+      closeStore();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+    if (next != null)
+    {
+      next.close();
+    }
+  }
+
+  /**
+   * Writes the buffered postings and the state, then closes the files.
+   * @throws IOException If the store can't be written.
+   */
+  private synchronized void closeStore() throws IOException
+  {
+    if (!records.isOpen())
+    {
+      return;
+    }
+    for (int t = 0; t < termValues.size(); t++)
+    {
+      if (buffered[t] > 0)
+      {
+        writeBlock(t);
+      }
+    }
+    for (FileChannel fc : new FileChannel[]{dictionary, records, rows, postings})
+    {
+      fc.force(true);
+    }
+    ByteBuffer state = ByteBuffer.allocate(16);
+    state.putLong(postingsEnd).putInt(rowCount).putInt(superseded).flip();
+    try (FileChannel fc = FileChannel.open(directory.resolve("state.dat"), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+    {
+      writeFully(fc, state, 0);
+      fc.force(true);
+    }
+    if (keys != null && superseded > 0 && superseded * 2L > rowCount)
+    {
+      compact();
+    }
+    else
+    {
+      closeFiles();
+    }
+  }
+
+  /**
+   * Closes the files of the store.
+   * @throws IOException If a file can't be closed.
+   */
+  private void closeFiles() throws IOException
+  {
+    for (FileChannel fc : new FileChannel[]{dictionary, records, rows, postings})
+    {
+      fc.close();
+    }
+  }
+
+  /**
+   * Rewrites the store with only the latest record for each path, by storing
+   * them again in a new directory whose files then replace these, and closes
+   * the store.
+   * @throws IOException If the new store can't be written.
+   */
+  private void compact() throws IOException
+  {
+    Path temp = directory.resolve("compact.tmp");
+    for (String name : FILES)
+    {
+      Files.deleteIfExists(temp.resolve(name));
+    }
+    ResultStore copy = new ResultStore(temp, null);
+    ByteBuffer row = ByteBuffer.allocate(ROW);
+    for (int id = 0; id < rowCount; id++)
+    {
+      row.clear();
+      readFully(rows, row, (long) id * ROW);
+      long offset = row.getLong(0);
+      if (offset >= 0)
+      {
+        copy.store(readRecord(offset));
+      }
+    }
+    copy.closeStore();
+    closeFiles();
+    for (String name : FILES)
+    {
+      Files.move(temp.resolve(name), directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    Files.delete(temp);
+  }
+
+  /**
+   * Returns the number of files in the store.
+   * @return The number of records which haven't been superseded.
+   */
+  public synchronized int size()
+  {
+    return rowCount - superseded;
+  }
+
+  /**
+   * Returns the number of distinct terms of a field, such as the number of
+   * MIME types stored.
+   * @param field The field, e.g. <code>TYPE</code>.
+   * @return The number of terms.
+   */
+  public synchronized int getTerms(int field)
+  {
+    int count = 0;
+    for (int t = 0; t < termValues.size(); t++)
+    {
+      if (termFields[t] == field)
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Builds the table from the hash of each path to its latest record from the
+   * rows, and counts the superseded rows.
+   * @throws IOException If the rows can't be read.
+   */
+  private void loadPaths() throws IOException
+  {
+    keys = new long[1024];
+    ids = new int[1024];
+    superseded = 0;
+    ByteBuffer batch = ByteBuffer.allocate(ROW * ROW_BATCH);
+    for (int start = 0; start < rowCount; start = start + ROW_BATCH)
+    {
+      batch.clear();
+      batch.limit(ROW * Math.min(ROW_BATCH, rowCount - start));
+      readFully(rows, batch, (long) start * ROW);
+      for (int at = 0; at < batch.limit(); at = at + ROW)
+      {
+        if (batch.getLong(at) < 0)
+        {
+          superseded++;
+        }
+        else
+        {
+          // Each path has only one row which hasn't been superseded
+          insert(batch.getLong(at + 16), start + at / ROW);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the place in the table of the latest record for a path. The path
+   * is read from each record with the same hash and compared, so paths whose
+   * hashes collide are kept apart.
+   * @param key The hash of the path.
+   * @param path The path.
+   * @return The position in the table or -1 if the path isn't stored.
+   * @throws IOException If a record can't be read.
+   */
+  private int find(long key, String path) throws IOException
+  {
+    int mask = keys.length - 1;
+    int pos = (int) (key ^ (key >>> 32)) & mask;
+    while (keys[pos] != 0)
+    {
+      if (keys[pos] == key && readPath(ids[pos]).equals(path))
+      {
+        return pos;
+      }
+      pos = (pos + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Adds the latest record for a path which isn't in the table yet.
+   * @param key The hash of the path.
+   * @param id The number of the record.
+   */
+  private void insert(long key, int id)
+  {
+    if (entries * 2 >= keys.length)
+    {
+      long[] oldKeys = keys;
+      int[] oldIds = ids;
+      keys = new long[oldKeys.length * 2];
+      ids = new int[oldIds.length * 2];
+      entries = 0;
+      for (int i = 0; i < oldKeys.length; i++)
+      {
+        if (oldKeys[i] != 0)
+        {
+          insert(oldKeys[i], oldIds[i]);
+        }
+      }
+    }
+    int mask = keys.length - 1;
+    int pos = (int) (key ^ (key >>> 32)) & mask;
+    while (keys[pos] != 0)
+    {
+      pos = (pos + 1) & mask;
+    }
+    keys[pos] = key;
+    ids[pos] = id;
+    entries++;
+  }
+
+  /**
+   * Removes a path from the table, moving back any later entries which would
+   * otherwise no longer be found.
+   * @param pos The position of the path in the table.
+   */
+  private void remove(int pos)
+  {
+    int mask = keys.length - 1;
+    keys[pos] = 0;
+    entries--;
+    for (int i = (pos + 1) & mask; keys[i] != 0; i = (i + 1) & mask)
+    {
+      long k = keys[i];
+      keys[i] = 0;
+      entries--;
+      insert(k, ids[i]);
+    }
+  }
+
+  /**
+   * Reads the path from the record for a row, without reading the rest of
+   * the record unless it is in the same read.
+   * @param id The number of the record.
+   * @return The path.
+   * @throws IOException If the row or record can't be read.
+   */
+  private String readPath(int id) throws IOException
+  {
+    ByteBuffer row = ByteBuffer.allocate(8);
+    readFully(rows, row, (long) id * ROW);
+    long offset = row.getLong(0);
+    ByteBuffer guess = ByteBuffer.allocate((int) Math.min(RECORD_GUESS, recordsEnd - offset));
+    readFully(records, guess, offset);
+    guess.flip();
+    guess.position(5); // The record length and format version
+    int length = (int) readNumber(guess);
+    if (length <= guess.remaining())
+    {
+      return new String(guess.array(), guess.position(), length, UTF8);
+    }
+    ByteBuffer path = ByteBuffer.allocate(length);
+    readFully(records, path, offset + guess.position());
+    return new String(path.array(), UTF8);
+  }
+
+  /**
+   * Returns a 64-bit FNV-1a hash of a path. Zero is reserved to mark an empty
+   * position in the table.
+   * @param path The path.
+   * @return The hash, which is never zero.
+   */
+  private static long hash(String path)
+  {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < path.length(); i++)
+    {
+      h = (h ^ path.charAt(i)) * 0x100000001b3L;
+    }
+    return h == 0 ? 1 : h;
+  }
+
+  /**
+   * Fills a buffer from one of the files.
+   * @param fc The file.
+   * @param buffer The buffer to fill.
+   * @param position The position in the file to read from.
+   * @throws IOException If the end of the file is reached first.
+   */
+  private void readFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      int n = fc.read(buffer, position + buffer.position());
+      if (n < 0)
+      {
+        throw new IOException("Unexpected end of the store " + directory);
+      }
+    }
+  }
+
+  /**
+   * Writes the whole of a buffer to one of the files.
+   * @param fc The file.
+   * @param buffer The buffer to write.
+   * @param position The position in the file to write to.
+   * @throws IOException If the file can't be written.
+   */
+  private static void writeFully(FileChannel fc, ByteBuffer buffer, long position) throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      fc.write(buffer, position + buffer.position());
+    }
+  }
+
+  /**
+   * Writes a number which isn't negative in as few bytes as possible, seven
+   * bits to a byte with the top bit set on all but the last.
+   * @param dos Where the number is written.
+   * @param n The number.
+   * @throws IOException If the number can't be written.
+   */
+  private static void writeNumber(DataOutputStream dos, long n) throws IOException
+  {
+    while ((n & ~0x7fL) != 0)
+    {
+      dos.writeByte((int) (n & 0x7f) | 0x80);
+      n = n >>> 7;
+    }
+    dos.writeByte((int) n);
+  }
+
+  /**
+   * Reads a number written by <code>writeNumber()</code>.
+   * @param buffer The record being read.
+   * @return The number.
+   */
+  private static long readNumber(ByteBuffer buffer)
+  {
+    long n = 0;
+    int shift = 0;
+    byte b;
+    do
+    {
+      b = buffer.get();
+      n = n | ((long) (b & 0x7f) << shift);
+      shift = shift + 7;
+    }
+    while (b < 0);
+    return n;
+  }
+
+  /**
+   * Writes a string as its length in bytes followed by its UTF-8 encoding.
+   * @param dos Where the string is written.
+   * @param s The string, <code>null</code> is written as an empty string.
+   * @throws IOException If the string can't be written.
+   */
+  private static void writeString(DataOutputStream dos, String s) throws IOException
+  {
+    byte[] b = (s == null ? "" : s).getBytes(UTF8);
+    writeNumber(dos, b.length);
+    dos.write(b);
+  }
+
+  /**
+   * Reads a string written by <code>writeString()</code>.
+   * @param buffer The record being read.
+   * @return The string.
+   */
+  private static String readString(ByteBuffer buffer)
+  {
+    byte[] b = new byte[(int) readNumber(buffer)];
+    buffer.get(b);
+    return new String(b, UTF8);
+  }
+
+  /**
+   * This class holds the conditions a stored result must meet to be returned
+   * by <code>ResultStore.query()</code>: a value for any of the indexed fields
+   * and a range of file sizes.
+   */
+  public static class Query
+  {
+    private ArrayList<Integer> fields;
+    private ArrayList<String> values;
+    private long minSize;
+    private long maxSize;
+
+    /**
+     * Instantiate a query which matches every stored result.
+     */
+    public Query()
+    {
+      fields = new ArrayList<Integer>();
+      values = new ArrayList<String>();
+      minSize = 0;
+      maxSize = Long.MAX_VALUE;
+    }
+
+    /**
+     * Only matches results with a value for a field, e.g. the language de.
+     * MIME types and languages are compared without regard to case.
+     * @param field The field, e.g. <code>LANGUAGE</code>.
+     * @param value The value.
+     */
+    public void require(int field, String value)
+    {
+      fields.add(field);
+      values.add(field == KEY ? value : value.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Only matches files of at least a size.
+     * @param bytes The smallest size matched.
+     */
+    public void setMinSize(long bytes)
+    {
+      minSize = bytes;
+    }
+
+    /**
+     * Only matches files of at most a size.
+     * @param bytes The largest size matched.
+     */
+    public void setMaxSize(long bytes)
+    {
+      maxSize = bytes;
+    }
+
+    /**
+     * Reads a query written as conditions separated by spaces, each either
+     * FIELD=VALUE, where FIELD is type, main, subtype, language or key, or a
+     * size comparison such as size&gt;10m. Sizes may end in k, m or g.
+     * <p>For example: <code>type=application/pdf language=de size&gt;10m</code>
+     * @param expression The query.
+     * @return The query.
+     * @throws IllegalArgumentException If a condition isn't recognised.
+     */
+    public static Query parse(String expression)
+    {
+      Query q = new Query();
+      for (String condition : expression.trim().split("\\s+"))
+      {
+        if (condition.isEmpty())
+        {
+          continue;
+        }
+        if (condition.startsWith("size"))
+        {
+          String op = condition.substring(4).replaceAll("[^<>=].*", "");
+          long bytes = parseSize(condition.substring(4 + op.length()));
+          if (op.equals(">"))
+          {
+            q.setMinSize(Math.max(q.minSize, bytes + 1));
+          }
+          else if (op.equals(">="))
+          {
+            q.setMinSize(Math.max(q.minSize, bytes));
+          }
+          else if (op.equals("<"))
+          {
+            q.setMaxSize(Math.min(q.maxSize, bytes - 1));
+          }
+          else if (op.equals("<="))
+          {
+            q.setMaxSize(Math.min(q.maxSize, bytes));
+          }
+          else if (op.equals("="))
+          {
+            q.setMinSize(Math.max(q.minSize, bytes));
+            q.setMaxSize(Math.min(q.maxSize, bytes));
+          }
+          else
+          {
+            throw new IllegalArgumentException("Unknown size comparison: " + condition);
+          }
+          continue;
+        }
+        int eq = condition.indexOf('=');
+        int field = eq <= 0 ? -1 : Arrays.asList(FIELDS).indexOf(condition.substring(0, eq));
+        if (field < 0 || eq == condition.length() - 1)
+        {
+          throw new IllegalArgumentException("Expected FIELD=VALUE or a size: " + condition);
+        }
+        q.require(field, condition.substring(eq + 1));
+      }
+      return q;
+    }
+
+    /**
+     * Reads a size in bytes which may end in k, m or g.
+     * @param s The size.
+     * @return The number of bytes.
+     */
+    private static long parseSize(String s)
+    {
+      String lower = s.toLowerCase(Locale.ENGLISH);
+      long unit = 1;
+      if (lower.endsWith("k"))
+      {
+        unit = 1L << 10;
+      }
+      else if (lower.endsWith("m"))
+      {
+        unit = 1L << 20;
+      }
+      else if (lower.endsWith("g"))
+      {
+        unit = 1L << 30;
+      }
+      if (unit > 1)
+      {
+        lower = lower.substring(0, lower.length() - 1);
+      }
+      return Long.parseLong(lower) * unit;
+    }
+  }
+}
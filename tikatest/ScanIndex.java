@@ -0,0 +1,496 @@
+/* Class name: ScanIndex
+ * File name:  ScanIndex.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Paths with the same hash keep their own records, compared by the path stored in each.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class keeps the results of earlier investigations on disk so that files
+ * which haven't changed don't need to be parsed again.
+ * <p>The index is a single file of binary records, one per file investigated,
+ * holding its path, size, modification time, optional content hash, MIME type,
+ * language and metadata. New records are only ever appended, so a record for
+ * a changed file simply supersedes the earlier one. When the index is opened
+ * the file is read once to build an in-memory table from the hash of each path
+ * to the position of its latest record; the table holds two <code>long</code>
+ * values per file so tens of millions of files can be indexed. Looking up a
+ * file then needs a single read at a known position. The path is kept in each
+ * record and compared, so two paths with the same hash each keep their own
+ * position and a lookup never returns the result of another file.
+ * <p>A record left incomplete by an interrupted run is discarded when the
+ * index is next opened, and the file is rewritten without superseded records
+ * when it is closed if they make up more than half of it.
+ * <p>The methods may be called from several threads at once.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ */
+public class ScanIndex
+{
+  /** The format version written at the start of each record */
+  private static final byte VERSION = 1;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private Path indexFile;
+  private FileChannel channel;
+  /** The position at which the next record will be appended */
+  private long end;
+  /** The hashes of the indexed paths, an open-addressed hash table */
+  private long[] keys;
+  /** The position of the latest record for the path at the same position in keys */
+  private long[] offsets;
+  private int entries;
+  /** The number of records in the file, including superseded ones */
+  private long records;
+  private long hits;
+  private long misses;
+
+  /**
+   * Opens the index, creating the file if it doesn't exist.
+   * @param p The index file.
+   * @throws IOException If the file can't be opened or read.
+   */
+  public ScanIndex(Path p) throws IOException
+  {
+    indexFile = p;
+    keys = new long[1024];
+    offsets = new long[1024];
+    channel = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    load();
+  }
+
+  /**
+   * Reads the record headers from the file to build the table of positions.
+   * An incomplete record at the end of the file is removed.
+   * @throws IOException If the file can't be read.
+   */
+  private void load() throws IOException
+  {
+    long size = channel.size();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(4);
+    while (position + 4 <= size)
+    {
+      header.clear();
+      readFully(header, position);
+      int length = header.getInt(0);
+      if (length <= 0 || position + 4 + length > size)
+      {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate(length);
+      readFully(record, position + 4);
+      record.flip();
+      record.get(); // The format version
+      put(readString(record), position);
+      records++;
+      position = position + 4 + length;
+    }
+    if (position < size)
+    {
+      channel.truncate(position);
+    }
+    end = position;
+  }
+
+  /**
+   * Looks up the result recorded for a file.
+   * @param p The file.
+   * @param size The current size of the file.
+   * @param modified The current modification time of the file in milliseconds.
+   * @return The recorded result, or <code>null</code> if the file isn't in the
+   * index or has changed since it was recorded.
+   */
+  public InvestigationResult lookup(Path p, long size, long modified)
+  {
+    String path = p.toString();
+    try
+    {
+      ByteBuffer record = null;
+      // Usually only one record has the hash of the path
+      for (long offset : get(hash(path)))
+      {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, offset);
+        record = ByteBuffer.allocate(header.getInt(0));
+        readFully(record, offset + 4);
+        record.flip();
+        record.get(); // The format version
+        if (readString(record).equals(path))
+        {
+          break;
+        }
+        record = null;
+      }
+      if (record == null || record.getLong() != size || record.getLong() != modified)
+      {
+        countMiss();
+        return null;
+      }
+      byte[] digest = new byte[record.get()];
+      record.get(digest);
+      InvestigationResult result = new InvestigationResult(p.getFileName().toString(), path, size);
+      result.setMediaType(MediaType.parse(readString(record)));
+      result.setLanguage(readString(record));
+      Metadata meta = new Metadata();
+      int names = record.getInt();
+      for (int i = 0; i < names; i++)
+      {
+        String name = readString(record);
+        int values = record.getInt();
+        for (int j = 0; j < values; j++)
+        {
+          meta.add(name, readString(record));
+        }
+      }
+      result.setMetadata(meta);
+      result.setDigest(digest.length == 0 ? null : digest);
+      countHit();
+      return result;
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+      countMiss();
+      return null;
+    }
+  }
+
+  /**
+   * Appends the result of investigating a file, superseding any earlier record.
+   * Results with an error aren't recorded so the file is tried again next time.
+   * @param result The details found for the file.
+   * @param modified The modification time of the file in milliseconds.
+   * @throws IOException If the record can't be written.
+   */
+  public void append(InvestigationResult result, long modified) throws IOException
+  {
+    if (result.getError() != null || result.getMediaType() == null)
+    {
+      return;
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
+    DataOutputStream dos = new DataOutputStream(baos);
+    dos.writeInt(0); // Replaced with the record length below
+    dos.writeByte(VERSION);
+    writeString(dos, result.getPath());
+    dos.writeLong(result.getSize());
+    dos.writeLong(modified);
+    byte[] digest = result.getDigest();
+    if (digest == null)
+    {
+      dos.writeByte(0);
+    }
+    else
+    {
+      dos.writeByte(digest.length);
+      dos.write(digest);
+    }
+    writeString(dos, result.getMediaType().toString());
+    writeString(dos, result.getLanguage());
+    Metadata meta = result.getMetadata();
+    String[] names = meta == null ? new String[0] : meta.names();
+    dos.writeInt(names.length);
+    for (String name : names)
+    {
+      writeString(dos, name);
+      String[] values = meta.getValues(name);
+      dos.writeInt(values.length);
+      for (String value : values)
+      {
+        writeString(dos, value);
+      }
+    }
+    dos.flush();
+    ByteBuffer record = ByteBuffer.wrap(baos.toByteArray());
+    record.putInt(0, record.limit() - 4);
+    long offset;
+    synchronized (this)
+    {
+      offset = end;
+      end = end + record.limit();
+      records++;
+    }
+    while (record.hasRemaining())
+    {
+      channel.write(record, offset + record.position());
+    }
+    put(result.getPath(), offset);
+  }
+
+  /**
+   * Flushes the index to disk and closes it. If more than half of the records
+   * have been superseded the file is first rewritten with only the latest.
+   * @throws IOException If the index can't be written.
+   */
+  public synchronized void close() throws IOException
+  {
+    if (records > 2L * entries && entries > 0)
+    {
+      compact();
+    }
+    channel.force(true);
+    channel.close();
+  }
+
+  /**
+   * Rewrites the index file with only the latest record for each path.
+   * @throws IOException If the new file can't be written.
+   */
+  private void compact() throws IOException
+  {
+    Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+    long[] live = new long[entries];
+    int n = 0;
+    for (int i = 0; i < keys.length; i++)
+    {
+      if (keys[i] != 0)
+      {
+        live[n++] = offsets[i];
+      }
+    }
+    Arrays.sort(live, 0, n);
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+    {
+      ByteBuffer header = ByteBuffer.allocate(4);
+      for (int i = 0; i < n; i++)
+      {
+        header.clear();
+        readFully(header, live[i]);
+        long length = 4 + header.getInt(0);
+        long copied = 0;
+        while (copied < length)
+        {
+          copied = copied + channel.transferTo(live[i] + copied, length - copied, out);
+        }
+      }
+      out.force(true);
+    }
+    channel.close();
+    Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Returns the number of files in the index.
+   * @return The number of distinct paths.
+   */
+  public synchronized int size()
+  {
+    return entries;
+  }
+
+  /**
+   * Returns the number of lookups which found an unchanged file.
+   * @return The number of hits.
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups for files which were new or had changed.
+   * @return The number of misses.
+   */
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  private synchronized void countHit()
+  {
+    hits++;
+  }
+
+  private synchronized void countMiss()
+  {
+    misses++;
+  }
+
+  /**
+   * Returns the positions of the latest records for the paths with a hash,
+   * which is nearly always a single path.
+   * @param key The hash of the path.
+   * @return The positions in the file, empty if no path has the hash.
+   */
+  private synchronized long[] get(long key)
+  {
+    long[] found = new long[0];
+    int mask = keys.length - 1;
+    int pos = (int) (key ^ (key >>> 32)) & mask;
+    while (keys[pos] != 0)
+    {
+      if (keys[pos] == key)
+      {
+        found = Arrays.copyOf(found, found.length + 1);
+        found[found.length - 1] = offsets[pos];
+      }
+      pos = (pos + 1) & mask;
+    }
+    return found;
+  }
+
+  /**
+   * Stores the position of the latest record for a path. If another path
+   * already has the same hash, the path in its record is compared so that
+   * only a record for the same path is replaced.
+   * @param path The path.
+   * @param offset The position of the record in the file.
+   * @throws IOException If an earlier record can't be read.
+   */
+  private synchronized void put(String path, long offset) throws IOException
+  {
+    if (entries * 2 >= keys.length)
+    {
+      long[] oldKeys = keys;
+      long[] oldOffsets = offsets;
+      keys = new long[oldKeys.length * 2];
+      offsets = new long[oldOffsets.length * 2];
+      for (int i = 0; i < oldKeys.length; i++)
+      {
+        if (oldKeys[i] != 0)
+        {
+          insert(oldKeys[i], oldOffsets[i]);
+        }
+      }
+    }
+    long key = hash(path);
+    int mask = keys.length - 1;
+    int pos = (int) (key ^ (key >>> 32)) & mask;
+    while (keys[pos] != 0)
+    {
+      if (keys[pos] == key && readPath(offsets[pos]).equals(path))
+      {
+        offsets[pos] = offset;
+        return;
+      }
+      pos = (pos + 1) & mask;
+    }
+    keys[pos] = key;
+    offsets[pos] = offset;
+    entries++;
+  }
+
+  /**
+   * Stores a position in the first free place for its hash, when the table
+   * is enlarged and every path is already known to be distinct.
+   * @param key The hash of the path.
+   * @param offset The position of the record in the file.
+   */
+  private void insert(long key, long offset)
+  {
+    int mask = keys.length - 1;
+    int pos = (int) (key ^ (key >>> 32)) & mask;
+    while (keys[pos] != 0)
+    {
+      pos = (pos + 1) & mask;
+    }
+    keys[pos] = key;
+    offsets[pos] = offset;
+  }
+
+  /**
+   * Reads the path from the record at a position in the file.
+   * @param offset The position of the record.
+   * @return The path.
+   * @throws IOException If the record can't be read.
+   */
+  private String readPath(long offset) throws IOException
+  {
+    ByteBuffer header = ByteBuffer.allocate(9);
+    readFully(header, offset);
+    ByteBuffer path = ByteBuffer.allocate(header.getInt(5));
+    readFully(path, offset + 9);
+    return new String(path.array(), UTF8);
+  }
+
+  /**
+   * Returns a 64-bit FNV-1a hash of a path. Zero is reserved to mark an empty
+   * position in the table.
+   * @param path The path.
+   * @return The hash, which is never zero.
+   */
+  private static long hash(String path)
+  {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < path.length(); i++)
+    {
+      h = (h ^ path.charAt(i)) * 0x100000001b3L;
+    }
+    return h == 0 ? 1 : h;
+  }
+
+  /**
+   * Fills a buffer from the index file.
+   * @param buffer The buffer to fill.
+   * @param position The position in the file to read from.
+   * @throws IOException If the end of the file is reached first.
+   */
+  private void readFully(ByteBuffer buffer, long position) throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      int n = channel.read(buffer, position + buffer.position());
+      if (n < 0)
+      {
+        throw new IOException("Unexpected end of index " + indexFile);
+      }
+    }
+  }
+
+  /**
+   * Writes a string as its length in bytes followed by its UTF-8 encoding.
+   * @param dos Where the string is written.
+   * @param s The string, <code>null</code> is written as an empty string.
+   * @throws IOException If the string can't be written.
+   */
+  private static void writeString(DataOutputStream dos, String s) throws IOException
+  {
+    byte[] b = (s == null ? "" : s).getBytes(UTF8);
+    dos.writeInt(b.length);
+    dos.write(b);
+  }
+
+  /**
+   * Reads a string written by <code>writeString()</code>.
+   * @param buffer The record being read.
+   * @return The string.
+   */
+  private static String readString(ByteBuffer buffer)
+  {
+    byte[] b = new byte[buffer.getInt()];
+    buffer.get(b);
+    return new String(b, UTF8);
+  }
+}
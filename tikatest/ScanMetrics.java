@@ -0,0 +1,451 @@
+/* Class name: ScanMetrics
+ * File name:  ScanMetrics.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Added the read stage and the depth of the read queue of a pipeline.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class records how long each stage of an investigation takes and how
+ * long files of each MIME type take, so the cause of a slow scan can be found.
+ * <p>Latencies are recorded in histograms whose buckets double in width, from
+ * under a microsecond to several minutes, so recording a time is just a few
+ * atomic increments and the memory used doesn't grow with the number of files.
+ * Percentiles are reported as the upper bound of their bucket, so are accurate
+ * to within a factor of two. The number of bytes read, errors and timeouts are
+ * also counted, and the depths of the read, parser and output queues are read
+ * when they are reported.
+ * <p>The metrics may be registered as a JMX MBean, and a report is shown by
+ * the GUI and printed at the end of a batch scan. The methods may be called
+ * from several threads at once.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanMetricsMBean
+ */
+public class ScanMetrics implements ScanMetricsMBean
+{
+  /** Opening a file */
+  public static final int OPEN = 0;
+  /** Detecting the MIME type of a file or entry */
+  public static final int DETECT = 1;
+  /** Parsing a document, including identifying its language */
+  public static final int PARSE = 2;
+  /** Expanding an archive, including investigating its entries */
+  public static final int EXPAND = 3;
+  /** Investigating a file from start to finish */
+  public static final int FILE = 4;
+  /** Reading the start of a file ahead of the parsers in a pipeline */
+  public static final int READ = 5;
+  private static final String[] STAGES = {"open", "detect", "parse", "expand", "file", "read"};
+  /** The name the MBean is registered under */
+  public static final String OBJECT_NAME = "tikatest:type=ScanMetrics";
+
+  private Histogram[] stages;
+  private ConcurrentHashMap<MediaType,Histogram> mediaTypes;
+  private AtomicLong files;
+  private AtomicLong entries;
+  private AtomicLong bytesRead;
+  private AtomicLong errors;
+  private AtomicLong timeouts;
+  private volatile Queue<?> readQueue;
+  private volatile Queue<?> parserQueue;
+  private volatile AsyncSink output;
+
+  /**
+   * Instantiate the class with no times recorded.
+   */
+  public ScanMetrics()
+  {
+    stages = new Histogram[STAGES.length];
+    for (int i = 0; i < stages.length; i++)
+    {
+      stages[i] = new Histogram();
+    }
+    mediaTypes = new ConcurrentHashMap<MediaType,Histogram>();
+    files = new AtomicLong(0);
+    entries = new AtomicLong(0);
+    bytesRead = new AtomicLong(0);
+    errors = new AtomicLong(0);
+    timeouts = new AtomicLong(0);
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server, replacing any
+   * metrics registered before. Problems are printed rather than thrown, as
+   * the investigation doesn't depend on them.
+   */
+  public void register()
+  {
+    try
+    {
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      ObjectName on = new ObjectName(OBJECT_NAME);
+      if (mbs.isRegistered(on))
+      {
+        mbs.unregisterMBean(on);
+      }
+      mbs.registerMBean(this, on);
+    }
+    catch (JMException jmX)
+    {
+      jmX.printStackTrace();
+    }
+  }
+
+  /**
+   * Records the time taken by a stage of an investigation.
+   * @param stage The stage, e.g. <code>PARSE</code>.
+   * @param nanos The time taken in nanoseconds.
+   */
+  public void record(int stage, long nanos)
+  {
+    stages[stage].add(nanos);
+  }
+
+  /**
+   * Records the time taken to investigate a file or archive entry of a MIME
+   * type. Parameters such as the character set are ignored.
+   * @param mt The MIME type, or <code>null</code> if it wasn't detected.
+   * @param nanos The time taken in nanoseconds.
+   * @param entry <code>true</code> for an archive entry, <code>false</code> for a file.
+   */
+  public void record(MediaType mt, long nanos, boolean entry)
+  {
+    if (entry)
+    {
+      entries.incrementAndGet();
+    }
+    else
+    {
+      files.incrementAndGet();
+    }
+    MediaType key = mt == null ? MediaType.OCTET_STREAM : mt.getBaseType();
+    Histogram h = mediaTypes.get(key);
+    if (h == null)
+    {
+      Histogram added = new Histogram();
+      h = mediaTypes.putIfAbsent(key, added);
+      if (h == null)
+      {
+        h = added;
+      }
+    }
+    h.add(nanos);
+  }
+
+  /**
+   * Adds to the number of bytes read.
+   * @param n The number of bytes.
+   */
+  public void addBytes(long n)
+  {
+    bytesRead.addAndGet(n);
+  }
+
+  /**
+   * Counts a file or archive entry which couldn't be investigated.
+   * @param timedOut <code>true</code> if it took too long to parse.
+   */
+  public void countError(boolean timedOut)
+  {
+    errors.incrementAndGet();
+    if (timedOut)
+    {
+      timeouts.incrementAndGet();
+    }
+  }
+
+  /**
+   * Sets the queue of files waiting to be read by a pipeline, whose depth is
+   * reported.
+   * @param q The queue, or <code>null</code> if there is none.
+   */
+  public void setReadQueue(Queue<?> q)
+  {
+    readQueue = q;
+  }
+
+  /**
+   * Sets the queue of files waiting for a parser thread, whose depth is
+   * reported.
+   * @param q The queue, or <code>null</code> if there is none.
+   */
+  public void setParserQueue(Queue<?> q)
+  {
+    parserQueue = q;
+  }
+
+  /**
+   * Sets the sink whose queue of results waiting to be written is reported.
+   * @param as The sink, or <code>null</code> if there is none.
+   */
+  public void setOutput(AsyncSink as)
+  {
+    output = as;
+  }
+
+  /**
+   * Returns the number of files investigated.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The number of files.
+   */
+  public long getFiles()
+  {
+    return files.get();
+  }
+
+  /**
+   * Returns the number of archive entries investigated.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The number of entries.
+   */
+  public long getEntries()
+  {
+    return entries.get();
+  }
+
+  /**
+   * Returns the number of bytes in the files investigated.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The number of bytes.
+   */
+  public long getBytesRead()
+  {
+    return bytesRead.get();
+  }
+
+  /**
+   * Returns the number of files and entries which couldn't be investigated.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The number of errors, including timeouts.
+   */
+  public long getErrors()
+  {
+    return errors.get();
+  }
+
+  /**
+   * Returns the number of files and entries which took too long to parse.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The number of timeouts.
+   */
+  public long getTimeouts()
+  {
+    return timeouts.get();
+  }
+
+  /**
+   * Returns the number of files waiting to be read by a pipeline.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The depth of the read queue.
+   */
+  public int getReadQueueDepth()
+  {
+    Queue<?> q = readQueue;
+    return q == null ? 0 : q.size();
+  }
+
+  /**
+   * Returns the number of files waiting for a parser thread.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The depth of the parser queue.
+   */
+  public int getParserQueueDepth()
+  {
+    Queue<?> q = parserQueue;
+    return q == null ? 0 : q.size();
+  }
+
+  /**
+   * Returns the number of results waiting to be written.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return The depth of the output queue.
+   */
+  public int getOutputQueueDepth()
+  {
+    AsyncSink as = output;
+    return as == null ? 0 : as.getQueued();
+  }
+
+  /**
+   * Returns the latency of each stage of an investigation.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return One line for each stage.
+   */
+  public String[] getStageLatencies()
+  {
+    String[] lines = new String[stages.length];
+    for (int i = 0; i < stages.length; i++)
+    {
+      lines[i] = stages[i].describe(STAGES[i]);
+    }
+    return lines;
+  }
+
+  /**
+   * Returns the latency of investigating each MIME type, slowest in total first.
+   * <p><i>Attribute of the ScanMetricsMBean interface.</i></p>
+   * @return One line for each MIME type.
+   */
+  public String[] getMediaTypeLatencies()
+  {
+    ArrayList<Map.Entry<MediaType,Histogram>> types =
+        new ArrayList<Map.Entry<MediaType,Histogram>>(mediaTypes.entrySet());
+    Collections.sort(types, new Comparator<Map.Entry<MediaType,Histogram>>()
+    {
+      public int compare(Map.Entry<MediaType,Histogram> a, Map.Entry<MediaType,Histogram> b)
+      {
+        return Long.compare(b.getValue().sum.get(), a.getValue().sum.get());
+      }
+    });
+    String[] lines = new String[types.size()];
+    for (int i = 0; i < lines.length; i++)
+    {
+      lines[i] = types.get(i).getValue().describe(types.get(i).getKey().toString());
+    }
+    return lines;
+  }
+
+  /**
+   * Clears every count and histogram.
+   * <p><i>Operation of the ScanMetricsMBean interface.</i></p>
+   */
+  public void reset()
+  {
+    for (Histogram h : stages)
+    {
+      h.clear();
+    }
+    mediaTypes.clear();
+    files.set(0);
+    entries.set(0);
+    bytesRead.set(0);
+    errors.set(0);
+    timeouts.set(0);
+  }
+
+  /**
+   * Returns a report of the counts and latencies.
+   * @param maxTypes The number of MIME types to include, slowest in total first.
+   * @return The report, one item per line.
+   */
+  public String getReport(int maxTypes)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%,d files, %,d archive entries, %.1f MB, %,d errors (%,d timeouts),"
+        + " queues: %d read, %d parser, %d output%n", files.get(), entries.get(),
+        bytesRead.get() / (1024.0 * 1024.0), errors.get(), timeouts.get(),
+        getReadQueueDepth(), getParserQueueDepth(), getOutputQueueDepth()));
+    sb.append(String.format("%-32s %9s %10s %10s %10s %10s %9s%n", "Stage / MIME type", "count",
+        "mean ms", "p50 ms", "p99 ms", "max ms", "total s"));
+    for (String line : getStageLatencies())
+    {
+      sb.append(line).append(String.format("%n"));
+    }
+    String[] types = getMediaTypeLatencies();
+    for (int i = 0; i < types.length && i < maxTypes; i++)
+    {
+      sb.append(types[i]).append(String.format("%n"));
+    }
+    if (types.length > maxTypes)
+    {
+      sb.append(String.format("... and %d more MIME types%n", types.length - maxTypes));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A latency histogram whose buckets double in width. Bucket 0 holds times
+   * under a microsecond and bucket b times from 2^(b-1) up to 2^b microseconds.
+   */
+  private static class Histogram
+  {
+    private static final int BUCKETS = 40;
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private AtomicLong count = new AtomicLong(0);
+    private AtomicLong sum = new AtomicLong(0);
+    private AtomicLong max = new AtomicLong(0);
+
+    void add(long nanos)
+    {
+      long micros = Math.max(0, nanos) / 1000L;
+      int b = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+      buckets.incrementAndGet(b);
+      count.incrementAndGet();
+      sum.addAndGet(nanos);
+      long m = max.get();
+      while (nanos > m && !max.compareAndSet(m, nanos))
+      {
+        m = max.get();
+      }
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding a percentile.
+     * @param p The percentile between 0 and 1.
+     * @return The upper bound in milliseconds.
+     */
+    double percentile(double p)
+    {
+      long target = (long) Math.ceil(count.get() * p);
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++)
+      {
+        seen = seen + buckets.get(b);
+        if (seen >= target && seen > 0)
+        {
+          // The largest time recorded is a tighter bound for the last bucket
+          return Math.min((1L << b) / 1000.0, max.get() / 1e6);
+        }
+      }
+      return max.get() / 1e6;
+    }
+
+    String describe(String name)
+    {
+      long n = count.get();
+      return String.format("%-32s %9d %10.2f %10.2f %10.2f %10.2f %9.1f", name, n,
+          n == 0 ? 0.0 : sum.get() / 1e6 / n, percentile(0.5), percentile(0.99),
+          max.get() / 1e6, sum.get() / 1e9);
+    }
+
+    void clear()
+    {
+      for (int b = 0; b < BUCKETS; b++)
+      {
+        buckets.set(b, 0);
+      }
+      count.set(0);
+      sum.set(0);
+      max.set(0);
+    }
+  }
+}
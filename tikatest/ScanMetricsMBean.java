@@ -0,0 +1,97 @@
+/* Class name: ScanMetricsMBean
+ * File name:  ScanMetricsMBean.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Added the depth of the read queue.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+
+/**
+ * This interface lists the attributes and operations of <code>ScanMetrics</code>
+ * which are available through JMX, e.g. in JConsole or VisualVM under
+ * <code>tikatest:type=ScanMetrics</code>.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanMetrics
+ */
+public interface ScanMetricsMBean
+{
+  /**
+   * Returns the number of files investigated.
+   * @return The number of files.
+   */
+  public long getFiles();
+
+  /**
+   * Returns the number of archive entries investigated.
+   * @return The number of entries.
+   */
+  public long getEntries();
+
+  /**
+   * Returns the number of bytes in the files investigated.
+   * @return The number of bytes.
+   */
+  public long getBytesRead();
+
+  /**
+   * Returns the number of files and entries which couldn't be investigated.
+   * @return The number of errors, including timeouts.
+   */
+  public long getErrors();
+
+  /**
+   * Returns the number of files and entries which took too long to parse.
+   * @return The number of timeouts.
+   */
+  public long getTimeouts();
+
+  /**
+   * Returns the number of files waiting to be read by a pipeline.
+   * @return The depth of the read queue.
+   */
+  public int getReadQueueDepth();
+
+  /**
+   * Returns the number of files waiting for a parser thread.
+   * @return The depth of the parser queue.
+   */
+  public int getParserQueueDepth();
+
+  /**
+   * Returns the number of results waiting to be written.
+   * @return The depth of the output queue.
+   */
+  public int getOutputQueueDepth();
+
+  /**
+   * Returns the latency of each stage of an investigation.
+   * @return One line for each stage.
+   */
+  public String[] getStageLatencies();
+
+  /**
+   * Returns the latency of investigating each MIME type, slowest in total first.
+   * @return One line for each MIME type.
+   */
+  public String[] getMediaTypeLatencies();
+
+  /**
+   * Clears every count and histogram.
+   */
+  public void reset();
+}
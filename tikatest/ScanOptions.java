@@ -0,0 +1,722 @@
+/* Class name: ScanOptions
+ * File name:  ScanOptions.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.019  17-Oct-2026 Documented that the index isn't used in detection-only mode.
+ * 0.018  17-Oct-2026 The watched tree is registered before it is walked.
+ * 0.017  17-Oct-2026 Removed the content limit, as text is no longer captured.
+ * 0.016  17-Oct-2026 Added the staged pipeline and its read threads, readahead and read budget.
+ * 0.015  17-Oct-2026 Added the watch mode and its quiet period.
+ * 0.014  17-Oct-2026 Added the order files are scheduled in and the cost model used to order them.
+ * 0.013  17-Oct-2026 Added the size above which files are memory mapped.
+ * 0.012  17-Oct-2026 Added the detection-only mode and the MIME types still parsed in it.
+ * 0.011  17-Oct-2026 Added the metrics recorded during an investigation.
+ * 0.010  17-Oct-2026 Added the pool of parser processes.
+ * 0.009  17-Oct-2026 Added the parse time limits.
+ * 0.008  17-Oct-2026 The log only holds notes about the investigation; details go to a ResultSink.
+ * 0.007  17-Oct-2026 Added the archive nesting depth and expansion ratio.
+ * 0.006  17-Oct-2026 Added the duplicate file cache.
+ * 0.005  17-Oct-2026 Added the scan index.
+ * 0.004  17-Oct-2026 Added the log for per-file details.
+ * 0.003  17-Oct-2026 Added the language detection margin.
+ * 0.002  17-Oct-2026 Added the content and language sample limits.
+ * 0.001  17-Oct-2026 Initial build with the degree of parallelism.
+ */
+
+package tikatest;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * This class holds the settings used by an <code>Investigation</code>.
+ * <p>A new instance is populated with sensible defaults so the GUI can simply
+ * create one and pass it on, while other callers may change individual settings
+ * before the investigation is started.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.019
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.Investigation
+ */
+public class ScanOptions
+{
+  /** Files are investigated in the order they are found */
+  public static final int SCHEDULE_FOUND = 0;
+  /** The files expected to be quickest are investigated first */
+  public static final int SCHEDULE_SHORTEST = 1;
+  /** The files expected to be slowest are investigated first */
+  public static final int SCHEDULE_LONGEST = 2;
+
+  /** The number of threads used to walk directories and parse files */
+  private int parallelism;
+  /** The number of characters used to identify the language of a document */
+  private int languageSample;
+  /** The lead the closest language needs before detection stops early */
+  private double languageMargin;
+  /** Where notes about the investigation are printed, or null for none */
+  private PrintStream log;
+  /** The index of earlier results, or null to investigate every file */
+  private ScanIndex index;
+  /** Whether content hashes are used to confirm a file is unchanged */
+  private boolean indexHash;
+  /** The results of recently parsed files by content, or null to parse every copy */
+  private DedupCache dedupCache;
+  /** The time limit for parsing a document in milliseconds, or 0 for none */
+  private long parseTimeout;
+  /** Time limits for particular MIME types or main types */
+  private HashMap<String,Long> parseTimeouts;
+  /** The number of levels of nested archives whose entries are investigated */
+  private int archiveDepth;
+  /** The number of times its size a file's archive entries may expand to */
+  private double expansionRatio;
+  /** The processes files are investigated in, or null to investigate them here */
+  private ChildParserPool childPool;
+  /** Records the latencies and counts of the investigation */
+  private ScanMetrics metrics;
+  /** Whether only the MIME type of most files is detected */
+  private boolean detectOnly;
+  /** The number of bytes examined to detect the type in detection-only mode */
+  private int detectPrefix;
+  /** The MIME types and main types still parsed in detection-only mode */
+  private HashSet<String> fullParseTypes;
+  /** The size in bytes above which files are memory mapped, or 0 for never */
+  private long mapThreshold;
+  /** The order in which files waiting to be investigated are taken */
+  private int schedule;
+  /** The number of files which may wait to be scheduled, or 0 for no limit */
+  private int scheduleWindow;
+  /** Estimates the time each file will take from earlier investigations */
+  private CostModel costModel;
+  /** Whether the tree is watched for changes once it has been investigated */
+  private boolean watch;
+  /** The time without changes before they are investigated, in milliseconds */
+  private long watchDelay;
+  /** Whether files are read and parsed by separate stages of threads */
+  private boolean pipeline;
+  /** The number of threads reading files in the pipeline */
+  private int readThreads;
+  /** The number of bytes read from the start of each file in the pipeline */
+  private int readahead;
+  /** The number of bytes which may be read ahead of the parsers at once */
+  private long readBudget;
+
+  /**
+   * Instantiate the class with the default settings.
+   * <p>The degree of parallelism defaults to the number of available processors.
+   * The first 10,000 characters of text in each document are used to identify
+   * its language, stopping sooner once the
+   * closest language leads the next by 20%. Notes about the investigation are
+   * printed to <code>System.out</code>. Archives are expanded up to five levels deep
+   * and abandoned if they expand to more than 100 times their size. Parsing
+   * a document is abandoned after a minute. A new <code>ScanMetrics</code> records
+   * the timings. Files over 16 MB are memory mapped. Files are investigated in
+   * the order they are found. Files are read by the thread parsing them
+   * rather than by a pipeline.
+   */
+  public ScanOptions()
+  {
+    parallelism = Runtime.getRuntime().availableProcessors();
+    languageSample = 10000;
+    languageMargin = 0.2;
+    log = System.out;
+    archiveDepth = 5;
+    parseTimeout = 60000;
+    parseTimeouts = new HashMap<String,Long>();
+    expansionRatio = 100.0;
+    metrics = new ScanMetrics();
+    detectOnly = false;
+    detectPrefix = 65536;
+    fullParseTypes = new HashSet<String>();
+    mapThreshold = 16L << 20;
+    schedule = SCHEDULE_FOUND;
+    scheduleWindow = 10000;
+    costModel = new CostModel();
+    watch = false;
+    watchDelay = 500;
+    pipeline = false;
+    readThreads = 64;
+    readahead = 1 << 20;
+    readBudget = 256L << 20;
+  }
+
+  /**
+   * Returns the number of threads used to investigate files.
+   * @return The degree of parallelism, a value of 1 means a sequential scan.
+   */
+  public int getParallelism()
+  {
+    return parallelism;
+  }
+
+  /**
+   * Sets the number of threads used to investigate files. Sub-directories are
+   * walked as fork-join tasks while files are handed to a bounded pool of this
+   * many parser threads. A value of 1 keeps the original sequential scan.
+   * @param threads The degree of parallelism (values below 1 are treated as 1).
+   */
+  public void setParallelism(int threads)
+  {
+    parallelism = Math.max(1, threads);
+  }
+
+  /**
+   * Returns the number of characters used to identify the language.
+   * @return The size of the language sample.
+   */
+  public int getLanguageSample()
+  {
+    return languageSample;
+  }
+
+  /**
+   * Sets the maximum number of characters, from the start of a document, which
+   * are used to identify its language.
+   * @param sample The size of the language sample.
+   */
+  public void setLanguageSample(int sample)
+  {
+    languageSample = Math.max(0, sample);
+  }
+
+  /**
+   * Returns the margin needed before language detection stops early.
+   * @return The relative lead of the closest language over the next.
+   */
+  public double getLanguageMargin()
+  {
+    return languageMargin;
+  }
+
+  /**
+   * Sets the relative lead the closest language must have over the next before
+   * the rest of the language sample is skipped. A margin of 1 or more means
+   * the whole sample is always examined.
+   * @param margin The required lead, e.g. 0.2 for 20%.
+   */
+  public void setLanguageMargin(double margin)
+  {
+    languageMargin = Math.max(0, margin);
+  }
+
+  /**
+   * Returns where notes about the investigation are printed.
+   * @return The log, or <code>null</code> if notes aren't printed.
+   */
+  public PrintStream getLog()
+  {
+    return log;
+  }
+
+  /**
+   * Sets where notes about the investigation are printed, such as files whose
+   * content was truncated or which were unchanged since the last scan. The
+   * details of each file are passed to a <code>ResultSink</code> instead,
+   * which may be a <code>ConsoleSink</code> to list them as text.
+   * @param ps The log, or <code>null</code> to print nothing.
+   */
+  public void setLog(PrintStream ps)
+  {
+    log = ps;
+  }
+
+  /**
+   * Returns the index of results from earlier investigations.
+   * @return The index, or <code>null</code> if every file is investigated.
+   */
+  public ScanIndex getIndex()
+  {
+    return index;
+  }
+
+  /**
+   * Sets the index of results from earlier investigations. Files whose size
+   * and modification time match their record are not parsed again, and the
+   * results of files which are parsed are added to the index. The index is
+   * neither read nor added to in detection-only mode.
+   * @param si The index, or <code>null</code> to investigate every file.
+   */
+  public void setIndex(ScanIndex si)
+  {
+    index = si;
+  }
+
+  /**
+   * Returns whether content hashes are used to confirm a file is unchanged.
+   * @return <code>true</code> if the content hash is checked.
+   */
+  public boolean isIndexHash()
+  {
+    return indexHash;
+  }
+
+  /**
+   * Sets whether a hash of each file's content is stored in the index and
+   * checked before a recorded result is used. This catches changes which keep
+   * the size and modification time, at the cost of reading unchanged files.
+   * @param hash <code>true</code> to check the content hash.
+   */
+  public void setIndexHash(boolean hash)
+  {
+    indexHash = hash;
+  }
+
+  /**
+   * Returns the cache used to recognise copies of files already parsed.
+   * @return The cache, or <code>null</code> if every copy is parsed.
+   */
+  public DedupCache getDedupCache()
+  {
+    return dedupCache;
+  }
+
+  /**
+   * Sets the cache used to recognise copies of files already parsed. A hash
+   * of each file's content is calculated and a file with the same size and
+   * hash as a cached result is given that result's MIME type, metadata and
+   * language without being parsed.
+   * @param dc The cache, or <code>null</code> to parse every copy.
+   */
+  public void setDedupCache(DedupCache dc)
+  {
+    dedupCache = dc;
+  }
+
+  /**
+   * Returns how deeply nested archives are expanded.
+   * @return The number of levels of archives whose entries are investigated.
+   */
+  public int getArchiveDepth()
+  {
+    return archiveDepth;
+  }
+
+  /**
+   * Sets how deeply nested archives are expanded. With a depth of 1 the
+   * entries of an archive are investigated but archives within it are only
+   * detected; a depth of 0 doesn't investigate the entries of any archive.
+   * @param depth The number of levels of archives to expand.
+   */
+  public void setArchiveDepth(int depth)
+  {
+    archiveDepth = Math.max(0, depth);
+  }
+
+  /**
+   * Returns how far an archive may expand before it is abandoned.
+   * @return The ratio of the bytes read from entries to the size of the file.
+   */
+  public double getExpansionRatio()
+  {
+    return expansionRatio;
+  }
+
+  /**
+   * Sets how far an archive may expand before it is abandoned, which protects
+   * against "zip bombs" holding vast amounts of highly compressed data.
+   * @param ratio The ratio of the bytes read from entries to the size of the
+   * file, or 0 for no limit.
+   * @see tikatest.ExpansionGuard
+   */
+  public void setExpansionRatio(double ratio)
+  {
+    expansionRatio = Math.max(0, ratio);
+  }
+
+  /**
+   * Returns the time limit for parsing a document of the given type. A limit
+   * set for the MIME type (without parameters) is used first, then one set for
+   * its main type, then the default.
+   * @param mt The MIME type of the document.
+   * @return The time limit in milliseconds, or 0 for no limit.
+   */
+  public long getParseTimeout(MediaType mt)
+  {
+    Long limit = parseTimeouts.get(mt.getType() + "/" + mt.getSubtype());
+    if (limit == null)
+    {
+      limit = parseTimeouts.get(mt.getType());
+    }
+    return limit == null ? parseTimeout : limit;
+  }
+
+  /**
+   * Sets the default time limit for parsing a document. A document which
+   * takes longer is abandoned and recorded as timed out, so a single
+   * pathological document can't hold up the rest of the investigation.
+   * @param millis The time limit in milliseconds, or 0 for no limit.
+   * @see tikatest.TimedParser
+   */
+  public void setParseTimeout(long millis)
+  {
+    parseTimeout = Math.max(0, millis);
+  }
+
+  /**
+   * Sets the time limit for parsing documents of a particular type, in place
+   * of the default.
+   * @param type A MIME type such as <code>application/pdf</code>, or a main
+   * type such as <code>image</code> for every type within it.
+   * @param millis The time limit in milliseconds, or 0 for no limit.
+   */
+  public void setParseTimeout(String type, long millis)
+  {
+    parseTimeouts.put(type.toLowerCase(), Math.max(0, millis));
+  }
+
+  /**
+   * Returns the default time limit for parsing a document.
+   * @return The time limit in milliseconds, or 0 for no limit.
+   */
+  public long getParseTimeout()
+  {
+    return parseTimeout;
+  }
+
+  /**
+   * Returns the time limits set for particular types.
+   * @return The time limits in milliseconds by MIME type or main type.
+   */
+  public HashMap<String,Long> getParseTimeouts()
+  {
+    return parseTimeouts;
+  }
+
+  /**
+   * Returns the pool of processes files are investigated in.
+   * @return The pool, or <code>null</code> if files are investigated in this process.
+   */
+  public ChildParserPool getChildPool()
+  {
+    return childPool;
+  }
+
+  /**
+   * Sets the pool of processes files are investigated in. Each file is then
+   * parsed in a separate Java process, so a document which exhausts the heap
+   * or crashes the parser can't end the investigation.
+   * @param pool The pool, or <code>null</code> to investigate files in this process.
+   */
+  public void setChildPool(ChildParserPool pool)
+  {
+    childPool = pool;
+  }
+
+  /**
+   * Returns the metrics recorded by investigations using these settings.
+   * @return The metrics.
+   */
+  public ScanMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+  /**
+   * Sets the metrics recorded by investigations using these settings, e.g. to
+   * share them between investigations.
+   * @param sm The metrics, which must not be <code>null</code>.
+   */
+  public void setMetrics(ScanMetrics sm)
+  {
+    metrics = sm;
+  }
+
+  /**
+   * Returns whether only the MIME type of most files is detected.
+   * @return <code>true</code> in detection-only mode.
+   */
+  public boolean isDetectOnly()
+  {
+    return detectOnly;
+  }
+
+  /**
+   * Sets whether only the MIME type of files is detected, from a bounded
+   * prefix of each file, rather than every file being parsed. This makes an
+   * inventory of the types of a large share very much quicker, as little more
+   * than the prefix of each file is read. Types chosen with
+   * <code>addFullParse()</code> are still parsed in full.
+   * <p>Types detected from the content of a container, such as Office
+   * documents in zip files, may only be recognised as the container.
+   * @param detect <code>true</code> for detection-only mode.
+   */
+  public void setDetectOnly(boolean detect)
+  {
+    detectOnly = detect;
+  }
+
+  /**
+   * Returns the number of bytes examined to detect the type in detection-only mode.
+   * @return The size of the prefix in bytes.
+   */
+  public int getDetectPrefix()
+  {
+    return detectPrefix;
+  }
+
+  /**
+   * Sets the number of bytes examined to detect the type in detection-only
+   * mode. The default of 64 KB covers the magic bytes of the types Tika knows.
+   * @param bytes The size of the prefix in bytes.
+   */
+  public void setDetectPrefix(int bytes)
+  {
+    detectPrefix = Math.max(1, bytes);
+  }
+
+  /**
+   * Returns whether documents of the given type are parsed in detection-only
+   * mode. The MIME type (without parameters) is checked, then its main type.
+   * @param mt The MIME type of the document.
+   * @return <code>true</code> if the document should be parsed in full.
+   */
+  public boolean isFullParse(MediaType mt)
+  {
+    return fullParseTypes.contains(mt.getType() + "/" + mt.getSubtype())
+        || fullParseTypes.contains(mt.getType());
+  }
+
+  /**
+   * Chooses a type which is still parsed in full in detection-only mode, with
+   * its language identified and, for archives, its entries investigated.
+   * @param type A MIME type such as <code>application/pdf</code>, or a main
+   * type such as <code>text</code> for every type within it.
+   */
+  public void addFullParse(String type)
+  {
+    fullParseTypes.add(type.toLowerCase());
+  }
+
+  /**
+   * Returns the types which are still parsed in full in detection-only mode.
+   * @return The MIME types and main types.
+   */
+  public HashSet<String> getFullParseTypes()
+  {
+    return fullParseTypes;
+  }
+
+  /**
+   * Returns the size above which files are read through memory mapping.
+   * @return The size in bytes, or 0 if files are never mapped.
+   */
+  public long getMapThreshold()
+  {
+    return mapThreshold;
+  }
+
+  /**
+   * Sets the size above which files are read through memory mapping rather
+   * than a buffered stream. Mapping saves copying large files through small
+   * heap buffers and lets archive readers skip unwanted entries for free, but
+   * costs more than it saves for small files.
+   * @param bytes The size in bytes, or 0 to never map files.
+   * @see tikatest.MappedInputStream
+   */
+  public void setMapThreshold(long bytes)
+  {
+    mapThreshold = Math.max(0, bytes);
+  }
+
+  /**
+   * Returns the order in which files are investigated.
+   * @return One of <code>SCHEDULE_FOUND</code>, <code>SCHEDULE_SHORTEST</code>
+   * or <code>SCHEDULE_LONGEST</code>.
+   */
+  public int getSchedule()
+  {
+    return schedule;
+  }
+
+  /**
+   * Sets the order in which files are investigated. Other than
+   * <code>SCHEDULE_FOUND</code>, files found by the directory walk wait in a
+   * queue ordered by the time the <code>CostModel</code> expects them to take.
+   * <code>SCHEDULE_SHORTEST</code> returns the most results soonest, e.g. for
+   * the GUI, while <code>SCHEDULE_LONGEST</code> starts the largest files
+   * first so they don't hold up the end of a batch scan on a few threads.
+   * @param order One of <code>SCHEDULE_FOUND</code>, <code>SCHEDULE_SHORTEST</code>
+   * or <code>SCHEDULE_LONGEST</code>.
+   */
+  public void setSchedule(int order)
+  {
+    schedule = order;
+  }
+
+  /**
+   * Returns the number of files which may wait to be scheduled.
+   * @return The number of files, or 0 for no limit.
+   */
+  public int getScheduleWindow()
+  {
+    return scheduleWindow;
+  }
+
+  /**
+   * Sets the number of files which may wait to be scheduled. Once this many
+   * are waiting the directory walk investigates the first of them itself
+   * before going on. A larger window orders more of the files, at the cost of
+   * holding their paths in memory.
+   * @param files The number of files, or 0 to walk every directory first.
+   */
+  public void setScheduleWindow(int files)
+  {
+    scheduleWindow = Math.max(0, files);
+  }
+
+  /**
+   * Returns the model of the time taken by each kind of file, which is
+   * learned by investigations using these settings.
+   * @return The cost model.
+   */
+  public CostModel getCostModel()
+  {
+    return costModel;
+  }
+
+  /**
+   * Sets the model of the time taken by each kind of file, e.g. to share
+   * what has been learned between investigations.
+   * @param cm The cost model, which must not be <code>null</code>.
+   */
+  public void setCostModel(CostModel cm)
+  {
+    costModel = cm;
+  }
+
+  /**
+   * Returns whether the tree is watched for changes once it has been investigated.
+   * @return <code>true</code> if the tree is watched.
+   */
+  public boolean isWatch()
+  {
+    return watch;
+  }
+
+  /**
+   * Sets whether the tree is watched for changes once it has been
+   * investigated, in which case files which are created or changed are
+   * investigated again and removed files reported until the investigation
+   * is cancelled. The tree is registered before it is walked, so changes made
+   * during the investigation are included.
+   * @param watching <code>true</code> to watch the tree.
+   * @see tikatest.DirectoryWatcher
+   */
+  public void setWatch(boolean watching)
+  {
+    watch = watching;
+  }
+
+  /**
+   * Returns the time without changes before they are investigated.
+   * @return The time in milliseconds.
+   */
+  public long getWatchDelay()
+  {
+    return watchDelay;
+  }
+
+  /**
+   * Sets the time without changes before they are investigated, so that a
+   * file being written (or a burst of changes) is only investigated once.
+   * @param millis The time in milliseconds.
+   */
+  public void setWatchDelay(long millis)
+  {
+    watchDelay = Math.max(1, millis);
+  }
+
+  /**
+   * Returns whether files are read and parsed by separate stages of threads.
+   * @return <code>true</code> if the investigation is pipelined.
+   */
+  public boolean isPipeline()
+  {
+    return pipeline;
+  }
+
+  /**
+   * Sets whether files are read and parsed by separate stages of threads,
+   * connected by bounded queues. This keeps many reads in flight on slow
+   * network file systems while the parser threads stay busy. Only parallel
+   * investigations are pipelined, and files are then investigated in the
+   * order they are read rather than by the schedule.
+   * @param staged <code>true</code> to pipeline the investigation.
+   * @see tikatest.StagedPipeline
+   */
+  public void setPipeline(boolean staged)
+  {
+    pipeline = staged;
+  }
+
+  /**
+   * Returns the number of threads reading files in the pipeline.
+   * @return The number of threads.
+   */
+  public int getReadThreads()
+  {
+    return readThreads;
+  }
+
+  /**
+   * Sets the number of threads reading files in the pipeline. They are
+   * virtual threads where the Java runtime supports them, so many may be used.
+   * @param threads The number of threads (values below 1 are treated as 1).
+   */
+  public void setReadThreads(int threads)
+  {
+    readThreads = Math.max(1, threads);
+  }
+
+  /**
+   * Returns the number of bytes read from the start of each file in the pipeline.
+   * @return The number of bytes.
+   */
+  public int getReadahead()
+  {
+    return readahead;
+  }
+
+  /**
+   * Sets the number of bytes read from the start of each file by the reading
+   * threads. Smaller files are read whole and closed before they reach a
+   * parser; the rest of a larger file is read by the parser thread. Files
+   * which are memory mapped are only opened.
+   * @param bytes The number of bytes, or 0 to only open each file.
+   */
+  public void setReadahead(int bytes)
+  {
+    readahead = Math.max(0, bytes);
+  }
+
+  /**
+   * Returns the number of bytes which may be read ahead of the parsers at once.
+   * @return The number of bytes.
+   */
+  public long getReadBudget()
+  {
+    return readBudget;
+  }
+
+  /**
+   * Sets the number of bytes which may be read ahead of the parsers at once.
+   * The reading threads wait once this much is held in memory, however many
+   * of them there are.
+   * @param bytes The number of bytes, which is at least the readahead.
+   */
+  public void setReadBudget(long bytes)
+  {
+    readBudget = Math.max(1, bytes);
+  }
+}
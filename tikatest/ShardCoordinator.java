@@ -0,0 +1,578 @@
+/* Class name: ShardCoordinator
+ * File name:  ShardCoordinator.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * This class shares the investigation of a directory tree between several
+ * <code>ShardWorker</code> processes, each with its own heap so that the
+ * garbage collection of one doesn't pause the others. The results are merged
+ * into a single <code>ResultSink</code>.
+ * <p>The coordinator listens on a socket, by default on the loopback address,
+ * and starts the local workers, which connect to it. Further workers may be
+ * started by hand on other machines which see the same files.
+ * <p>The tree is split into shards of one directory each. Every worker has a
+ * queue of shards: the sub-directories of each shard it investigates are added
+ * to the end of its own queue and it takes the most recent next, so a worker
+ * works through a subtree depth first. A worker whose queue is empty steals
+ * the oldest shard from another worker's queue, which is the highest directory
+ * still waiting and so probably the largest subtree. Each worker therefore ends
+ * up with whole subtrees of the root, split further only when others run out.
+ * <p>The results of a shard are held until the worker has finished it, so if a
+ * worker dies the shard is given to another worker without duplicating any
+ * results. Sub-directories are passed on as soon as they are found, and those
+ * found again when a shard is retried are ignored. A shard which ends a
+ * second worker is recorded with an error. A directory with more files than
+ * the results held is written out as it goes and is also recorded with an
+ * error if its worker dies.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.001
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ShardWorker
+ */
+public class ShardCoordinator
+{
+  /** The number of results of a shard held in case its worker dies */
+  private static final int HELD_RESULTS = 10000;
+  /** The time allowed for the workers to connect, in milliseconds */
+  private static final int CONNECT_TIMEOUT = 60000;
+
+  private ScanOptions options;
+  private ResultSink sink;
+  /** Where notes about the investigation are printed, or null for none */
+  private PrintStream log;
+  private ServerSocket server;
+  /** The command which starts a local worker, without the host and port */
+  private ArrayList<String> command;
+  private int localWorkers;
+  private int remoteWorkers;
+  private ArrayList<Process> processes;
+  private ArrayList<Connection> connections;
+  /** The shards waiting to be investigated, one queue for each worker */
+  private ArrayList<ArrayDeque<Shard>> queues;
+  /** The number of shards being investigated */
+  private int busy;
+  private int files;
+  private int errors;
+  private int timeouts;
+  private long bytes;
+  private int shards;
+  private int stolen;
+  private int retried;
+  private int lost;
+
+  /**
+   * Instantiate the class. The socket is opened straight away but the workers
+   * aren't started until the first investigation.
+   * @param so The settings passed on to each worker.
+   * @param rs Where the results from every worker are written.
+   * @param local The number of workers to start on this machine.
+   * @param remote The number of workers started by hand to wait for.
+   * @param maxHeap The maximum heap size of each local worker, such as
+   * "512m", or <code>null</code> for the Java default.
+   * @param address The address to listen on, which is the loopback address
+   * unless workers will connect from other machines.
+   * @throws IOException If the socket can't be opened.
+   */
+  public ShardCoordinator(ScanOptions so, ResultSink rs, int local, int remote,
+      String maxHeap, InetSocketAddress address) throws IOException
+  {
+    options = so;
+    sink = rs;
+    log = so.getLog();
+    localWorkers = Math.max(0, local);
+    remoteWorkers = Math.max(0, remote);
+    server = new ServerSocket();
+    server.bind(address);
+    server.setSoTimeout(CONNECT_TIMEOUT);
+    command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    if (maxHeap != null)
+    {
+      command.add("-Xmx" + maxHeap);
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(ShardWorker.class.getName());
+    processes = new ArrayList<Process>();
+    connections = new ArrayList<Connection>();
+    queues = new ArrayList<ArrayDeque<Shard>>();
+  }
+
+  /**
+   * Returns the address the coordinator is listening on, which workers
+   * started by hand need to connect to.
+   * @return The address and port.
+   */
+  public InetSocketAddress getAddress()
+  {
+    return (InetSocketAddress) server.getLocalSocketAddress();
+  }
+
+  /**
+   * Starts the local workers and waits for every worker to connect.
+   * @throws IOException If a worker can't be started or doesn't connect in time.
+   */
+  private void connect() throws IOException
+  {
+    InetSocketAddress address = getAddress();
+    String host = address.getAddress().isAnyLocalAddress() ? "127.0.0.1"
+        : address.getAddress().getHostAddress();
+    for (int i = 0; i < localWorkers; i++)
+    {
+      ArrayList<String> args = new ArrayList<String>(command);
+      args.add(host);
+      args.add(Integer.toString(address.getPort()));
+      ProcessBuilder pb = new ProcessBuilder(args);
+      pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+      pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+      processes.add(pb.start());
+    }
+    if (log != null && remoteWorkers > 0)
+    {
+      log.println("Waiting for " + remoteWorkers + " workers on " + host + ":" + address.getPort());
+    }
+    ArrayList<String> settings = ParserChild.getArguments(options);
+    for (int i = 0; i < localWorkers + remoteWorkers; i++)
+    {
+      Connection c = new Connection(server.accept(), connections.size());
+      c.toWorker.writeInt(settings.size());
+      for (String setting : settings)
+      {
+        ParserChild.writeString(c.toWorker, setting);
+      }
+      c.toWorker.flush();
+      connections.add(c);
+      queues.add(new ArrayDeque<Shard>());
+    }
+  }
+
+  /**
+   * Investigates a directory tree (or a single file) with the workers and
+   * returns once every shard has been investigated.
+   * @param root The directory or file.
+   * @throws IOException If the workers can't be started.
+   */
+  public void run(File root) throws IOException
+  {
+    if (connections.isEmpty())
+    {
+      connect();
+    }
+    synchronized (this)
+    {
+      queues.get(0).add(new Shard(root.getPath()));
+    }
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (final Connection c : connections)
+    {
+      if (c.alive)
+      {
+        Thread t = new Thread(new Runnable()
+        {
+          public void run()
+          {
+            serve(c);
+          }
+        }, "ShardCoordinator worker " + c.number);
+        t.start();
+        threads.add(t);
+      }
+    }
+    for (Thread t : threads)
+    {
+      try
+      {
+        t.join();
+      }
+      catch (InterruptedException iX)
+      {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    // Anything left had no worker to investigate it
+    synchronized (this)
+    {
+      for (ArrayDeque<Shard> queue : queues)
+      {
+        Shard s = queue.poll();
+        while (s != null)
+        {
+          failed(s, "No worker left to investigate this directory");
+          s = queue.poll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends shards to a worker until there are none left.
+   * @param c The connection to the worker.
+   */
+  private void serve(Connection c)
+  {
+    Shard s = take(c.number);
+    while (s != null)
+    {
+      if (!c.investigate(s))
+      {
+        synchronized (this)
+        {
+          lost++;
+          if (log != null)
+          {
+            log.println("Lost worker " + c.number + " while investigating " + s.path);
+          }
+          if (s.committed || s.attempts > 1)
+          {
+            failed(s, "Worker process ended while investigating this directory");
+          }
+          else
+          {
+            // Another worker will steal it
+            retried++;
+            queues.get(c.number).addFirst(s);
+          }
+          busy--;
+          notifyAll();
+        }
+        return;
+      }
+      finished();
+      s = take(c.number);
+    }
+  }
+
+  /**
+   * Returns the next shard for a worker, waiting while other workers may
+   * still find more.
+   * @param worker The number of the worker.
+   * @return The shard, or null once every shard has been investigated.
+   */
+  private synchronized Shard take(int worker)
+  {
+    while (true)
+    {
+      Shard s = queues.get(worker).pollLast();
+      for (int i = 1; s == null && i < queues.size(); i++)
+      {
+        s = queues.get((worker + i) % queues.size()).pollFirst();
+        if (s != null)
+        {
+          stolen++;
+        }
+      }
+      if (s != null)
+      {
+        busy++;
+        s.attempts++;
+        return s;
+      }
+      if (busy == 0)
+      {
+        notifyAll();
+        return null;
+      }
+      try
+      {
+        wait();
+      }
+      catch (InterruptedException iX)
+      {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Adds a sub-directory found by a worker to the end of its queue, unless it
+   * was already found by an earlier attempt at the same shard.
+   * @param worker The number of the worker.
+   * @param parent The shard being investigated.
+   * @param path The directory.
+   */
+  private synchronized void found(int worker, Shard parent, String path)
+  {
+    if (parent.subdirectories.add(path))
+    {
+      queues.get(worker).addLast(new Shard(path));
+      notifyAll();
+    }
+  }
+
+  /**
+   * Records that a worker has finished a shard.
+   */
+  private synchronized void finished()
+  {
+    shards++;
+    busy--;
+    notifyAll();
+  }
+
+  /**
+   * Records a shard which couldn't be investigated.
+   * @param s The shard.
+   * @param message The error.
+   */
+  private synchronized void failed(Shard s, String message)
+  {
+    File f = new File(s.path);
+    InvestigationResult result = new InvestigationResult(f.getName(), s.path, -1);
+    result.setError(message);
+    sink.write(result);
+    errors++;
+  }
+
+  /**
+   * Adds the counts for a shard to the totals.
+   */
+  private synchronized void count(int shardFiles, int shardErrors, int shardTimeouts,
+      long shardBytes)
+  {
+    files = files + shardFiles;
+    errors = errors + shardErrors;
+    timeouts = timeouts + shardTimeouts;
+    bytes = bytes + shardBytes;
+  }
+
+  /**
+   * Tells the workers to exit and closes the socket.
+   */
+  public void close()
+  {
+    for (Connection c : connections)
+    {
+      c.stop();
+    }
+    try
+    {
+      server.close();
+    }
+    catch (IOException ioX)
+    {
+      ioX.printStackTrace();
+    }
+    for (Process p : processes)
+    {
+      try
+      {
+        p.waitFor();
+      }
+      catch (InterruptedException iX)
+      {
+        p.destroy();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of files investigated by the workers.
+   * @return The number of files.
+   */
+  public synchronized int getFiles()
+  {
+    return files;
+  }
+
+  /**
+   * Returns the number of files and archive entries which couldn't be
+   * investigated, including directories lost with a worker.
+   * @return The number of errors.
+   */
+  public synchronized int getErrors()
+  {
+    return errors;
+  }
+
+  /**
+   * Returns the number of documents which took too long to parse.
+   * @return The number of timeouts.
+   */
+  public synchronized int getTimeouts()
+  {
+    return timeouts;
+  }
+
+  /**
+   * Returns the number of bytes in the files investigated by the workers.
+   * @return The number of bytes.
+   */
+  public synchronized long getBytes()
+  {
+    return bytes;
+  }
+
+  /**
+   * Returns a summary of how the shards were shared out.
+   * @return The number of workers, shards, steals and lost workers.
+   */
+  public synchronized String getSummary()
+  {
+    return String.format("Shards: %d workers, %d directories, %d stolen, %d retried, %d workers lost",
+        connections.size(), shards, stolen, retried, lost);
+  }
+
+  /**
+   * A directory waiting to be investigated.
+   */
+  private static class Shard
+  {
+    private String path;
+    /** The number of workers it has been given to */
+    private int attempts;
+    /** Set once some of its results have been written */
+    private boolean committed;
+    /** The sub-directories already passed on */
+    private HashSet<String> subdirectories;
+
+    Shard(String p)
+    {
+      path = p;
+      subdirectories = new HashSet<String>();
+    }
+  }
+
+  /**
+   * The connection to a single worker.
+   */
+  private class Connection
+  {
+    private Socket socket;
+    private DataOutputStream toWorker;
+    private DataInputStream fromWorker;
+    private int number;
+    private boolean alive;
+
+    Connection(Socket s, int n) throws IOException
+    {
+      socket = s;
+      socket.setTcpNoDelay(true);
+      toWorker = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      fromWorker = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+      number = n;
+      alive = true;
+    }
+
+    /**
+     * Sends a shard to the worker and reads its results.
+     * @param s The shard.
+     * @return <code>false</code> if the worker has gone.
+     */
+    boolean investigate(Shard s)
+    {
+      ArrayList<InvestigationResult> held = new ArrayList<InvestigationResult>();
+      try
+      {
+        toWorker.writeByte(ShardWorker.SHARD);
+        ParserChild.writeString(toWorker, s.path);
+        toWorker.flush();
+        byte marker = fromWorker.readByte();
+        while (marker != ParserChild.DONE)
+        {
+          if (marker == ShardWorker.DIRECTORY)
+          {
+            found(number, s, ParserChild.readString(fromWorker));
+          }
+          else if (marker == ParserChild.RESULT)
+          {
+            held.add(ParserChild.readResult(fromWorker));
+            if (held.size() >= HELD_RESULTS)
+            {
+              s.committed = true;
+              writeAll(held);
+            }
+          }
+          else
+          {
+            throw new IOException("Unexpected message from worker " + number);
+          }
+          marker = fromWorker.readByte();
+        }
+        int shardFiles = fromWorker.readInt();
+        int shardErrors = fromWorker.readInt();
+        int shardTimeouts = fromWorker.readInt();
+        long shardBytes = fromWorker.readLong();
+        writeAll(held);
+        count(shardFiles, shardErrors, shardTimeouts, shardBytes);
+        return true;
+      }
+      catch (IOException ioX)
+      {
+        alive = false;
+        try
+        {
+          socket.close();
+        }
+        catch (IOException closeX)
+        {
+          // Already broken
+        }
+        return false;
+      }
+    }
+
+    /**
+     * Passes the results held to the sink.
+     */
+    private void writeAll(ArrayList<InvestigationResult> held)
+    {
+      for (InvestigationResult r : held)
+      {
+        sink.write(r);
+      }
+      held.clear();
+    }
+
+    /**
+     * Tells the worker to exit and closes the connection.
+     */
+    void stop()
+    {
+      try
+      {
+        if (alive)
+        {
+          toWorker.writeByte(ShardWorker.STOP);
+          toWorker.flush();
+        }
+        socket.close();
+      }
+      catch (IOException ioX)
+      {
+        // The worker has already gone
+      }
+    }
+  }
+}
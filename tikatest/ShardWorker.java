@@ -0,0 +1,233 @@
+/* Class name: ShardWorker
+ * File name:  ShardWorker.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.004  17-Oct-2026 Entries skipped in the walk are noted in the log rather than always printed.
+ * 0.003  17-Oct-2026 Standard output is sent to stderr so nothing printed can mix with the coordinator's records.
+ * 0.002  17-Oct-2026 Entries whose attributes can't be read are skipped without ending the listing.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+
+/**
+ * This class is run in a separate Java process, on the same machine as a
+ * <code>ShardCoordinator</code> or another one which can reach the same files,
+ * and investigates the directories the coordinator sends it.
+ * <p>The worker connects to the coordinator and reads the settings for the
+ * investigation, written by <code>ParserChild.getArguments()</code>. It then
+ * takes one directory at a time: the sub-directories are sent back straight
+ * away, so the coordinator can share them out while the files are investigated,
+ * then the results for the files (and any archive entries) and finally the
+ * counts for the directory. The process exits when the coordinator tells it to
+ * stop or the connection is closed.
+ * <p>To add a worker on another machine, run:
+ * <pre>java -cp CLASSPATH tikatest.ShardWorker HOST PORT</pre>
+ * where the coordinator is listening on HOST and PORT.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.004
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ShardCoordinator
+ */
+public class ShardWorker implements ResultSink
+{
+  /** Marks a directory sent to the worker */
+  static final byte SHARD = 3;
+  /** Marks a sub-directory found by the worker */
+  static final byte DIRECTORY = 4;
+  /** Tells the worker to exit */
+  static final byte STOP = 5;
+
+  private DataOutputStream out;
+  private ScanOptions options;
+
+  /**
+   * Instantiate the class.
+   * @param dos Where the results are written.
+   * @param so The settings for the investigation.
+   */
+  private ShardWorker(DataOutputStream dos, ScanOptions so)
+  {
+    out = dos;
+    options = so;
+  }
+
+  /**
+   * Sends a result to the coordinator.
+   * @param result The details found for the file or archive entry.
+   */
+  public void write(InvestigationResult result)
+  {
+    try
+    {
+      out.writeByte(ParserChild.RESULT);
+      ParserChild.writeResult(out, result);
+    }
+    catch (IOException ioX)
+    {
+      // The coordinator has gone, so there is nobody to report to
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Does nothing, as the output is flushed once a directory is finished.
+   */
+  public void flush()
+  {
+  }
+
+  /**
+   * Does nothing, as the connection stays open for the next directory.
+   */
+  public void close()
+  {
+  }
+
+  /**
+   * Investigates one directory: sends its sub-directories, investigates its
+   * files and sends the counts for the directory. A path which isn't a
+   * directory is investigated as a single file.
+   * @param path The directory.
+   * @throws IOException If the coordinator can't be written to.
+   */
+  private void investigate(String path) throws IOException
+  {
+    Path dir = Paths.get(path);
+    ArrayList<Path> files = new ArrayList<Path>();
+    ArrayList<BasicFileAttributes> attrs = new ArrayList<BasicFileAttributes>();
+    if (Files.isDirectory(dir))
+    {
+      try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir))
+      {
+        for (Path g : ds)
+        {
+          BasicFileAttributes bfa;
+          try
+          {
+            bfa = Files.readAttributes(g, BasicFileAttributes.class);
+          }
+          catch (IOException ioX)
+          {
+            // A dangling link, or a file removed since the directory was listed
+            if (options.getLog() != null)
+            {
+              options.getLog().println("Skipped (" + ioX + "): " + g);
+            }
+            continue;
+          }
+          if (bfa.isDirectory())
+          {
+            out.writeByte(DIRECTORY);
+            ParserChild.writeString(out, g.toString());
+          }
+          else
+          {
+            files.add(g);
+            attrs.add(bfa);
+          }
+        }
+      }
+      catch (IOException ioX)
+      {
+        // The directory can't be read (permissions or it has been removed)
+        ioX.printStackTrace();
+      }
+    }
+    else
+    {
+      try
+      {
+        files.add(dir);
+        attrs.add(Files.readAttributes(dir, BasicFileAttributes.class));
+      }
+      catch (IOException ioX)
+      {
+        files.clear();
+        ioX.printStackTrace();
+      }
+    }
+    // Idle workers can take the sub-directories while the files are investigated
+    out.flush();
+    Investigation inv = new Investigation(dir.toFile(), this, options);
+    inv.run(files, attrs);
+    out.writeByte(ParserChild.DONE);
+    out.writeInt(inv.getProgress());
+    out.writeInt(inv.getErrors());
+    out.writeInt(inv.getTimeouts());
+    out.writeLong(inv.getBytes());
+    out.flush();
+  }
+
+  /**
+   * Connects to a coordinator and investigates the directories it sends.
+   * @param args The host and port the coordinator is listening on.
+   * @throws IOException If the coordinator can't be reached.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length != 2)
+    {
+      System.err.println("Usage: java tikatest.ShardWorker HOST PORT");
+      System.exit(2);
+    }
+    // A local worker shares the coordinator's standard output, which may be
+    // carrying the records, so anything printed by the parsers goes to stderr
+    System.setOut(System.err);
+    try (Socket s = new Socket(args[0], Integer.parseInt(args[1])))
+    {
+      s.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+      DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 65536));
+      String[] settings = new String[in.readInt()];
+      for (int i = 0; i < settings.length; i++)
+      {
+        settings[i] = ParserChild.readString(in);
+      }
+      ShardWorker worker = new ShardWorker(dos, ParserChild.getOptions(settings));
+      ParserRegistry.getInstance();
+      while (true)
+      {
+        byte command;
+        try
+        {
+          command = in.readByte();
+        }
+        catch (EOFException eofX)
+        {
+          // The coordinator has finished
+          break;
+        }
+        if (command != SHARD)
+        {
+          break;
+        }
+        worker.investigate(ParserChild.readString(in));
+      }
+    }
+  }
+}
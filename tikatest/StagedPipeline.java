@@ -0,0 +1,524 @@
+/* Class name: StagedPipeline
+ * File name:  StagedPipeline.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.003  17-Oct-2026 A parser thread records anything thrown for a file and goes on to the next.
+ * 0.002  17-Oct-2026 Memory mapped files take nothing from the read budget.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class investigates a directory tree in three stages connected by
+ * bounded queues, so that on a slow network file system the parser threads
+ * aren't left waiting for files to be opened and read.
+ * <ol>
+ * <li>The directories are walked by a <code>ForkJoinPool</code>, as in any
+ * parallel investigation, and the files found queued to be read.</li>
+ * <li>Many reading threads open each file and read its start, or the whole
+ * of a small file, into memory. Where the Java runtime has virtual threads
+ * (Java 21 onwards) they are used, found by reflection, so a large number of
+ * reads can be in flight cheaply; otherwise ordinary daemon threads are used.
+ * Files which are memory mapped are only opened. The bytes held are limited
+ * by the read budget, so a fast file system can't fill the heap.</li>
+ * <li>One parser thread for each processor detects the type of each file,
+ * parses it and identifies its language from the bytes already read, reading
+ * the rest of a large file itself. Results go to the <code>ResultSink</code>,
+ * usually an <code>AsyncSink</code> with its own queue.</li>
+ * </ol>
+ * <p>Detection, parsing and language identification stay in one stage: the
+ * language is identified while the text streams out of the parser and
+ * detection reads the same buffered stream, so separating them would only add
+ * copies. The depths of the read and parser queues are reported by the
+ * <code>ScanMetrics</code>, and the time each stage spends waiting for the
+ * next (or the previous) is summarised at the end to show where the
+ * bottleneck lies.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.003
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanOptions#setPipeline(boolean)
+ */
+public class StagedPipeline
+{
+  /** Marks the end of the files passed to a stage */
+  private static final ReadFile END = new ReadFile(null, null);
+
+  private Investigation owner;
+  private ScanOptions options;
+  private ScanMetrics metrics;
+  /** The files found by the walk, waiting to be read */
+  private ArrayBlockingQueue<ReadFile> unread;
+  /** The files whose start has been read, waiting for a parser thread */
+  private ArrayBlockingQueue<ReadFile> read;
+  /** The bytes which may still be read ahead of the parsers */
+  private Semaphore budget;
+  private int budgetLimit;
+  private int readers;
+  private int parsers;
+  /** Whether the reading threads are virtual threads */
+  private boolean virtual;
+  /** The time the walk waited for a reading thread, in nanoseconds */
+  private AtomicLong walkWaits;
+  /** The time the reading threads waited for files to read */
+  private AtomicLong readerIdle;
+  /** The time the reading threads waited for the budget or a parser thread */
+  private AtomicLong readerWaits;
+  /** The time the parser threads waited for files to be read */
+  private AtomicLong parserIdle;
+
+  /**
+   * Instantiate the class.
+   * @param inv The investigation the files belong to.
+   * @param so The settings for the investigation.
+   */
+  public StagedPipeline(Investigation inv, ScanOptions so)
+  {
+    owner = inv;
+    options = so;
+    metrics = so.getMetrics();
+    readers = so.getReadThreads();
+    parsers = so.getParallelism();
+    unread = new ArrayBlockingQueue<ReadFile>(readers * 4);
+    read = new ArrayBlockingQueue<ReadFile>(Math.max(readers, parsers * 4));
+    budgetLimit = (int) Math.min(Integer.MAX_VALUE, so.getReadBudget());
+    budget = new Semaphore(budgetLimit);
+    walkWaits = new AtomicLong(0);
+    readerIdle = new AtomicLong(0);
+    readerWaits = new AtomicLong(0);
+    parserIdle = new AtomicLong(0);
+  }
+
+  /**
+   * Investigates the files in a directory tree, returning once every file
+   * has been investigated or the investigation is cancelled.
+   * @param root The directory at the top of the tree.
+   */
+  public void run(Path root)
+  {
+    metrics.setReadQueue(unread);
+    metrics.setParserQueue(read);
+    final CountDownLatch readersDone = new CountDownLatch(readers);
+    ThreadFactory tf = newReaderFactory();
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < readers; i++)
+    {
+      Thread t = tf.newThread(new Runnable()
+      {
+        public void run()
+        {
+          try
+          {
+            readFiles();
+          }
+          finally
+          {
+            readersDone.countDown();
+          }
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+    for (int i = 0; i < parsers; i++)
+    {
+      Thread t = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          parseFiles();
+        }
+      }, "Parser " + i);
+      t.setDaemon(true);
+      threads.add(t);
+      t.start();
+    }
+    ForkJoinPool walkers = new ForkJoinPool(parsers);
+    try
+    {
+      walkers.invoke(new InvestigationTask(root, owner));
+      for (int i = 0; i < readers; i++)
+      {
+        unread.put(END);
+      }
+      readersDone.await();
+      for (int i = 0; i < parsers; i++)
+      {
+        read.put(END);
+      }
+      for (Thread t : threads)
+      {
+        t.join();
+      }
+    }
+    catch (InterruptedException iX)
+    {
+      // The investigation has been cancelled so stop every stage
+      for (Thread t : threads)
+      {
+        t.interrupt();
+      }
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      walkers.shutdown();
+      metrics.setReadQueue(null);
+      metrics.setParserQueue(null);
+    }
+  }
+
+  /**
+   * Queues a file to be read. This is called by each
+   * <code>InvestigationTask</code> as it walks a directory, and waits while
+   * the queue is full so the walk can't race ahead of the reading threads.
+   * @param g The file.
+   * @param attrs The attributes read when the file was found.
+   */
+  void submit(Path g, BasicFileAttributes attrs)
+  {
+    ReadFile rf = new ReadFile(g, attrs);
+    if (unread.offer(rf))
+    {
+      return;
+    }
+    long waiting = System.nanoTime();
+    try
+    {
+      unread.put(rf);
+    }
+    catch (InterruptedException iX)
+    {
+      Thread.currentThread().interrupt();
+    }
+    walkWaits.addAndGet(System.nanoTime() - waiting);
+  }
+
+  /**
+   * Run by each reading thread: reads the start of each file queued and
+   * passes it on to the parser threads, until the end of the files is reached.
+   * Files whose results are taken from the <code>ScanIndex</code> go no further.
+   */
+  private void readFiles()
+  {
+    try
+    {
+      while (true)
+      {
+        long waiting = System.nanoTime();
+        ReadFile rf = unread.take();
+        readerIdle.addAndGet(System.nanoTime() - waiting);
+        if (rf == END)
+        {
+          return;
+        }
+        if (owner.isCancelled() || !owner.begin(rf.path, rf.attrs))
+        {
+          continue;
+        }
+        if (options.getChildPool() == null)
+        {
+          // Files investigated in another process are read there instead
+          boolean mapped = owner.isMapped(rf.attrs.size());
+          // A mapped file is only opened, so holds nothing on the heap
+          if (!mapped)
+          {
+            waiting = System.nanoTime();
+            rf.held = Math.min(budgetLimit, (int) Math.min(options.getReadahead(), rf.attrs.size()));
+            budget.acquire(rf.held);
+            readerWaits.addAndGet(System.nanoTime() - waiting);
+          }
+          try
+          {
+            rf.readStart(options.getReadahead(), mapped, metrics);
+          }
+          catch (IOException ioX)
+          {
+            // Reported when the file is investigated, like any other error
+            rf.failure = ioX;
+          }
+        }
+        waiting = System.nanoTime();
+        read.put(rf);
+        readerWaits.addAndGet(System.nanoTime() - waiting);
+      }
+    }
+    catch (InterruptedException iX)
+    {
+      // The investigation has been cancelled
+    }
+  }
+
+  /**
+   * Run by each parser thread: investigates the files which have been read
+   * until the end of the files is reached.
+   */
+  private void parseFiles()
+  {
+    try
+    {
+      while (true)
+      {
+        long waiting = System.nanoTime();
+        ReadFile rf = read.take();
+        parserIdle.addAndGet(System.nanoTime() - waiting);
+        if (rf == END)
+        {
+          return;
+        }
+        try
+        {
+          if (!owner.isCancelled())
+          {
+            owner.investigate(rf.path, rf.attrs, rf);
+          }
+        }
+        catch (Throwable t)
+        {
+          // One bad file mustn't stop this thread taking the rest, or the
+          // walk would wait for a parser which never comes
+          owner.failed(rf.path, rf.attrs, t);
+        }
+        finally
+        {
+          rf.close();
+          budget.release(rf.held);
+        }
+      }
+    }
+    catch (InterruptedException iX)
+    {
+      // The investigation has been cancelled
+    }
+  }
+
+  /**
+   * Returns a summary of the threads in each stage and how long they waited,
+   * in total. Parser threads waiting for files to be read mean the reads are
+   * the bottleneck; reading threads waiting for the parsers mean the parsing is.
+   * @return The summary.
+   */
+  public String getSummary()
+  {
+    return String.format("Pipeline: %d %s reading threads, %d parser threads; thread time"
+        + " waiting: walk for readers %.1f s, readers for files %.1f s, readers for parsers"
+        + " %.1f s, parsers for reads %.1f s", readers, virtual ? "virtual" : "platform", parsers,
+        walkWaits.get() / 1e9, readerIdle.get() / 1e9, readerWaits.get() / 1e9,
+        parserIdle.get() / 1e9);
+  }
+
+  /**
+   * Returns a factory for the reading threads: virtual threads if the Java
+   * runtime has them, otherwise daemon threads.
+   * @return The factory.
+   */
+  private ThreadFactory newReaderFactory()
+  {
+    try
+    {
+      // Thread.ofVirtual().name("Reader ", 0).factory() is only in Java 21
+      // onwards, so it is found by reflection
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+      builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, "Reader ", 0L);
+      ThreadFactory tf = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+          .getMethod("factory").invoke(builder);
+      virtual = true;
+      return tf;
+    }
+    catch (ReflectiveOperationException roX)
+    {
+      virtual = false;
+      return new ThreadFactory()
+      {
+        private AtomicInteger count = new AtomicInteger(0);
+
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "Reader " + count.getAndIncrement());
+          t.setDaemon(true);
+          return t;
+        }
+      };
+    }
+  }
+
+  /**
+   * A file passed between the stages, with whatever has been read of it.
+   */
+  static class ReadFile
+  {
+    private Path path;
+    private BasicFileAttributes attrs;
+    /** The bytes read from the start of the file, or null if it wasn't read */
+    private byte[] head;
+    /** The rest of the file, or null if the head holds all of it */
+    private InputStream rest;
+    /** The file if it is memory mapped */
+    private MappedInputStream mapped;
+    /** Why the file couldn't be read, or null */
+    private IOException failure;
+    /** The number of bytes of the read budget taken by the file */
+    private int held;
+
+    ReadFile(Path p, BasicFileAttributes bfa)
+    {
+      path = p;
+      attrs = bfa;
+    }
+
+    /**
+     * Opens the file and reads its start. A file no larger than the readahead
+     * is read whole and closed.
+     * @param readahead The number of bytes to read.
+     * @param map <code>true</code> to memory map the file rather than read it.
+     * @param metrics Records the time taken to open and read the file.
+     * @throws IOException If the file can't be opened or read.
+     */
+    void readStart(int readahead, boolean map, ScanMetrics metrics) throws IOException
+    {
+      long start = System.nanoTime();
+      if (map)
+      {
+        mapped = new MappedInputStream(path);
+        metrics.record(ScanMetrics.OPEN, System.nanoTime() - start);
+        return;
+      }
+      InputStream is = Files.newInputStream(path);
+      long opened = System.nanoTime();
+      metrics.record(ScanMetrics.OPEN, opened - start);
+      try
+      {
+        // One more byte than a small file holds shows whether it has grown
+        long size = attrs.size();
+        int wanted = size < readahead ? (int) size + 1 : readahead;
+        byte[] b = new byte[wanted];
+        int n = 0;
+        while (n < wanted)
+        {
+          int r = is.read(b, n, wanted - n);
+          if (r < 0)
+          {
+            break;
+          }
+          n = n + r;
+        }
+        head = n == wanted ? b : Arrays.copyOf(b, n);
+        if (n < wanted)
+        {
+          is.close();
+        }
+        else
+        {
+          rest = is;
+        }
+      }
+      catch (IOException ioX)
+      {
+        is.close();
+        throw ioX;
+      }
+      metrics.record(ScanMetrics.READ, System.nanoTime() - opened);
+    }
+
+    /**
+     * Returns whether the whole of the file has been read.
+     * @return <code>true</code> if <code>getContent()</code> holds the file.
+     */
+    boolean isComplete()
+    {
+      return head != null && rest == null;
+    }
+
+    /**
+     * Returns the bytes read from the start of the file.
+     * @return The bytes, or <code>null</code> if the file wasn't read.
+     */
+    byte[] getContent()
+    {
+      return head;
+    }
+
+    /**
+     * Returns the file if it has been memory mapped.
+     * @return The mapped file, or <code>null</code>.
+     */
+    MappedInputStream getMapped()
+    {
+      return mapped;
+    }
+
+    /**
+     * Returns the content of the file, continuing from the bytes already read.
+     * @return The content, or <code>null</code> if the file wasn't opened.
+     * @throws IOException If the file couldn't be opened or read.
+     */
+    InputStream open() throws IOException
+    {
+      if (failure != null)
+      {
+        throw failure;
+      }
+      if (mapped != null)
+      {
+        return mapped;
+      }
+      if (head == null)
+      {
+        return null;
+      }
+      InputStream start = new ByteArrayInputStream(head);
+      return rest == null ? start : new SequenceInputStream(start, rest);
+    }
+
+    /**
+     * Closes the file if it was left open, and lets go of the bytes read.
+     */
+    void close()
+    {
+      try
+      {
+        if (rest != null)
+        {
+          rest.close();
+        }
+        if (mapped != null)
+        {
+          mapped.close();
+        }
+      }
+      catch (IOException ioX)
+      {
+        ioX.printStackTrace();
+      }
+      head = null;
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/* Class name: TimedParser
+ * File name:  TimedParser.java
+ * Project:    TikaTest
+ * Copyright:  © 2007-2012 Alexander J. Harris, released under Creative Commons
+ * License:    Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License
+ * Created:    17-Oct-2026
+ * Modified:   17-Oct-2026
+ *
+ * Version History:
+ * ~ ~ ~ ~ ~ ~ ~ ~ ~
+ * 0.002  17-Oct-2026 Removed the unused count of abandoned documents.
+ * 0.001  17-Oct-2026 Initial build
+ */
+
+package tikatest;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * This class parses documents with a time limit, so that a single malformed or
+ * very complex document can't hold up the rest of an investigation.
+ * <p>Each document with a time limit is parsed on a separate thread while the
+ * calling thread waits for it. If the limit is reached the parsing thread is
+ * interrupted and abandoned, and the caller receives a
+ * <code>TimedParser.TimeoutException</code> straight away. The stream being
+ * parsed throws an <code>IOException</code> the next time the abandoned
+ * thread reads it, which stops most parsers soon afterwards; a parser which
+ * never reads again keeps its thread until it finishes, but the investigation
+ * doesn't wait for it. Threads are created as they are needed and reused.
+ * <p>Documents without a time limit are parsed on the calling thread.
+ * <p><a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">
+ * <img alt="Creative Commons Licence" style="border-width:0" src="http://i.creativecommons.org/l/by-nc-sa/3.0/88x31.png" />
+ * </a>
+ * <br />
+ * This work is licensed under a
+ * <a rel="license" href="http://creativecommons.org/licenses/by-nc-sa/3.0/">Creative Commons Attribution-NonCommercial-ShareAlike 3.0 Unported License</a>.
+ * @version 0.002
+ * @author Alexander J. Harris (email: alexander.j.harris(at)btinternet.com)
+ * @see tikatest.ScanOptions#setParseTimeout(long)
+ */
+public class TimedParser
+{
+  private ExecutorService executor;
+
+  /**
+   * Instantiate the class.
+   */
+  public TimedParser()
+  {
+    final AtomicInteger threads = new AtomicInteger(0);
+    executor = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        // Daemon threads so an abandoned parser can't stop the program exiting
+        Thread t = new Thread(r, "TimedParser " + threads.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Parses a document, giving up if it takes longer than the time limit.
+   * @param parser The parser to use.
+   * @param in The document.
+   * @param handler Receives the content of the document.
+   * @param meta Receives the metadata of the document.
+   * @param pc The context for the parser.
+   * @param limit The time limit in milliseconds, or 0 for no limit.
+   * @throws IOException If the document can't be read.
+   * @throws SAXException If the document can't be parsed.
+   * @throws TikaException If the document can't be parsed.
+   * @throws TimedParser.TimeoutException If the time limit was reached.
+   */
+  public void parse(final Parser parser, InputStream in, final ContentHandler handler,
+      final Metadata meta, final ParseContext pc, long limit)
+      throws IOException, SAXException, TikaException
+  {
+    if (limit <= 0)
+    {
+      parser.parse(in, handler, meta, pc);
+      return;
+    }
+    final AbandonableInputStream stream = new AbandonableInputStream(in);
+    Future<Void> parse = executor.submit(new Callable<Void>()
+    {
+      public Void call() throws Exception
+      {
+        parser.parse(stream, handler, meta, pc);
+        return null;
+      }
+    });
+    try
+    {
+      parse.get(limit, TimeUnit.MILLISECONDS);
+    }
+    catch (java.util.concurrent.TimeoutException tX)
+    {
+      stream.abandon();
+      parse.cancel(true);
+      throw new TimeoutException(limit);
+    }
+    catch (InterruptedException iX)
+    {
+      stream.abandon();
+      parse.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing");
+    }
+    catch (ExecutionException eX)
+    {
+      Throwable cause = eX.getCause();
+      if (cause instanceof IOException)
+      {
+        throw (IOException) cause;
+      }
+      else if (cause instanceof SAXException)
+      {
+        throw (SAXException) cause;
+      }
+      else if (cause instanceof TikaException)
+      {
+        throw (TikaException) cause;
+      }
+      else if (cause instanceof RuntimeException)
+      {
+        throw (RuntimeException) cause;
+      }
+      else if (cause instanceof Error)
+      {
+        throw (Error) cause;
+      }
+      throw new TikaException("Unable to parse: " + cause);
+    }
+  }
+
+  /**
+   * Stops the threads once they are no longer needed. Any abandoned parsers
+   * are left to finish on their own.
+   */
+  public void shutdown()
+  {
+    executor.shutdown();
+  }
+
+  /**
+   * Thrown when a document takes longer to parse than its time limit.
+   */
+  public static class TimeoutException extends IOException
+  {
+    private long limit;
+
+    /**
+     * Instantiate the exception.
+     * @param millis The time limit which was reached, in milliseconds.
+     */
+    public TimeoutException(long millis)
+    {
+      super("Parsing took longer than " + millis + " ms");
+      limit = millis;
+    }
+
+    /**
+     * Returns the time limit which was reached.
+     * @return The time limit in milliseconds.
+     */
+    public long getLimit()
+    {
+      return limit;
+    }
+  }
+
+  /**
+   * A stream which fails every read once its parser has been abandoned.
+   */
+  private static class AbandonableInputStream extends FilterInputStream
+  {
+    private volatile boolean abandoned;
+
+    AbandonableInputStream(InputStream in)
+    {
+      super(in);
+    }
+
+    void abandon()
+    {
+      abandoned = true;
+    }
+
+    private void check() throws IOException
+    {
+      if (abandoned)
+      {
+        throw new IOException("Parsing abandoned");
+      }
+    }
+
+    public int read() throws IOException
+    {
+      check();
+      return in.read();
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      check();
+      return in.read(b, off, len);
+    }
+
+    public long skip(long n) throws IOException
+    {
+      check();
+      return in.skip(n);
+    }
+
+    public int available() throws IOException
+    {
+      check();
+      return in.available();
+    }
+  }
+}